@@ -0,0 +1,45 @@
+/*
+	Copyright 2026 agent <agent@local>
+	This file is part of LDraw3D
+
+	LDraw3D is free software: you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	LDraw3D is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with LDraw3D.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+
+
+package bricksnspace.ldraw3d;
+
+
+/**
+ * Part selection handling with selections of many parts as a single event
+ * <p>
+ * Window selection and programmatic selection call {@link #pickedAll(int[], PickMode)}
+ * once for all parts, instead of {@link HandlingListener#picked(int, bricksnspace.j3dgeom.Point3D, bricksnspace.j3dgeom.Point3D, PickMode)}
+ * for every part, so application updates its selection model only once.
+ * 
+ * @author agent
+ *
+ */
+public interface BatchHandlingListener extends HandlingListener {
+
+	
+	/**
+	 * Callback for selection of many parts at once
+	 * @param ids selected parts, never empty
+	 * @param mode picking mode, same for all parts
+	 */
+	public void pickedAll(int[] ids, PickMode mode);
+	
+}
@@ -0,0 +1,235 @@
+/*
+	Copyright 2026 agent <agent@local>
+	This file is part of LDraw3D
+
+	LDraw3D is free software: you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	LDraw3D is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with LDraw3D.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+
+package bricksnspace.ldraw3d;
+
+import java.util.Arrays;
+
+
+/**
+ * Bounding volume hierarchy of axis aligned boxes, for ray casting
+ * <p>
+ * Tree is built once over primitive boxes, splitting at median of
+ * largest axis, and stored in flat arrays in depth-first order (left
+ * child follows its parent). Subclasses define primitives and
+ * ray-primitive intersection.
+ *
+ * @author agent
+ *
+ */
+abstract class BoundingVolumeHierarchy {
+
+	private static final int LEAF_SIZE = 4;
+	private static final int MAX_DEPTH = 64;
+
+	// node bounds: xmin, ymin, zmin, xmax, ymax, zmax
+	private float[] nodeBounds;
+	// leaf: first primitive in order, inner: right child
+	private int[] nodeIndex;
+	// leaf: primitive count, inner: 0
+	private int[] nodeCount;
+	private int nodes = 0;
+	// primitives in leaf order
+	protected int[] order;
+	private float[] centers;
+	private int[] stack = new int[MAX_DEPTH*2];
+
+
+
+	/**
+	 * Builds tree
+	 * @param bounds primitive boxes, 6 floats each as node bounds
+	 * @param n primitive count
+	 */
+	protected void build(float[] bounds, int n) {
+
+		order = new int[n];
+		centers = new float[n*3];
+		for (int i=0;i<n;i++) {
+			order[i] = i;
+			for (int a=0;a<3;a++)
+				centers[i*3+a] = (bounds[i*6+a] + bounds[i*6+3+a]) / 2;
+		}
+		int max = Math.max(1, 2*n);
+		nodeBounds = new float[max*6];
+		nodeIndex = new int[max];
+		nodeCount = new int[max];
+		nodes = 0;
+		if (n > 0)
+			buildNode(bounds, 0, n, 0);
+		centers = null;
+	}
+
+
+
+	private int buildNode(float[] bounds, int start, int end, int depth) {
+
+		int node = nodes++;
+		float[] b = nodeBounds;
+		Arrays.fill(b, node*6, node*6+3, Float.MAX_VALUE);
+		Arrays.fill(b, node*6+3, node*6+6, -Float.MAX_VALUE);
+		float[] cmin = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE};
+		float[] cmax = {-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+		for (int i=start;i<end;i++) {
+			int p = order[i];
+			for (int a=0;a<3;a++) {
+				b[node*6+a] = Math.min(b[node*6+a], bounds[p*6+a]);
+				b[node*6+3+a] = Math.max(b[node*6+3+a], bounds[p*6+3+a]);
+				cmin[a] = Math.min(cmin[a], centers[p*3+a]);
+				cmax[a] = Math.max(cmax[a], centers[p*3+a]);
+			}
+		}
+		int axis = 0;
+		for (int a=1;a<3;a++) {
+			if (cmax[a]-cmin[a] > cmax[axis]-cmin[axis])
+				axis = a;
+		}
+		if (end - start <= LEAF_SIZE || depth >= MAX_DEPTH-1 || cmax[axis] == cmin[axis]) {
+			nodeIndex[node] = start;
+			nodeCount[node] = end - start;
+			return node;
+		}
+		int mid = (start + end) / 2;
+		select(start, end - 1, mid, axis);
+		nodeCount[node] = 0;
+		buildNode(bounds, start, mid, depth+1);
+		nodeIndex[node] = buildNode(bounds, mid, end, depth+1);
+		return node;
+	}
+
+
+
+	/**
+	 * Partial sort of order[lo..hi] so that k-th primitive by center on axis is in place
+	 */
+	private void select(int lo, int hi, int k, int axis) {
+
+		while (hi > lo) {
+			float pivot = centers[order[(lo+hi)>>>1]*3+axis];
+			int i = lo, j = hi;
+			while (i <= j) {
+				while (centers[order[i]*3+axis] < pivot) i++;
+				while (centers[order[j]*3+axis] > pivot) j--;
+				if (i <= j) {
+					int t = order[i];
+					order[i] = order[j];
+					order[j] = t;
+					i++;
+					j--;
+				}
+			}
+			if (k <= j)
+				hi = j;
+			else if (k >= i)
+				lo = i;
+			else
+				return;
+		}
+	}
+
+
+
+	/**
+	 * Finds nearest primitive hit by a ray
+	 * @param o ray origin
+	 * @param d ray direction, not normalized
+	 * @param tmax max ray parameter
+	 * @return ray parameter of nearest hit, tmax if none
+	 */
+	protected float traverse(float[] o, float[] d, float tmax) {
+
+		if (nodes == 0)
+			return tmax;
+		float ix = 1/d[0], iy = 1/d[1], iz = 1/d[2];
+		int sp = 0;
+		if (entry(0, o, ix, iy, iz, tmax) == Float.MAX_VALUE)
+			return tmax;
+		stack[sp++] = 0;
+		while (sp > 0) {
+			int node = stack[--sp];
+			// node can be farther than a hit found after it was pushed
+			if (entry(node, o, ix, iy, iz, tmax) == Float.MAX_VALUE)
+				continue;
+			if (nodeCount[node] > 0) {
+				for (int i=nodeIndex[node],e=i+nodeCount[node];i<e;i++) {
+					tmax = intersect(order[i], o, d, tmax);
+				}
+				continue;
+			}
+			int left = node+1;
+			int right = nodeIndex[node];
+			float tl = entry(left, o, ix, iy, iz, tmax);
+			float tr = entry(right, o, ix, iy, iz, tmax);
+			// nearest child on top of stack
+			if (tl <= tr) {
+				if (tr != Float.MAX_VALUE)
+					stack[sp++] = right;
+				if (tl != Float.MAX_VALUE)
+					stack[sp++] = left;
+			}
+			else {
+				if (tl != Float.MAX_VALUE)
+					stack[sp++] = left;
+				stack[sp++] = right;
+			}
+		}
+		return tmax;
+	}
+
+
+
+	/**
+	 * Ray-box slab test
+	 * @return ray parameter entering node box, Float.MAX_VALUE if missed
+	 */
+	private float entry(int node, float[] o, float ix, float iy, float iz, float tmax) {
+
+		int b = node*6;
+		float t1 = (nodeBounds[b] - o[0]) * ix;
+		float t2 = (nodeBounds[b+3] - o[0]) * ix;
+		float tmin = Math.min(t1, t2);
+		float tfar = Math.max(t1, t2);
+		t1 = (nodeBounds[b+1] - o[1]) * iy;
+		t2 = (nodeBounds[b+4] - o[1]) * iy;
+		tmin = Math.max(tmin, Math.min(t1, t2));
+		tfar = Math.min(tfar, Math.max(t1, t2));
+		t1 = (nodeBounds[b+2] - o[2]) * iz;
+		t2 = (nodeBounds[b+5] - o[2]) * iz;
+		tmin = Math.max(tmin, Math.min(t1, t2));
+		tfar = Math.min(tfar, Math.max(t1, t2));
+		// NaN from 0*inf on a box face fails comparisons and counts as a hit
+		if (tfar < tmin || tfar < 0 || tmin > tmax)
+			return Float.MAX_VALUE;
+		return tmin;
+	}
+
+
+
+	/**
+	 * Intersects a primitive
+	 * @param prim primitive index
+	 * @param o ray origin
+	 * @param d ray direction
+	 * @param tmax current nearest hit
+	 * @return ray parameter of hit if nearer than tmax, tmax otherwise
+	 */
+	protected abstract float intersect(int prim, float[] o, float[] d, float tmax);
+
+}
@@ -0,0 +1,111 @@
+/*
+	Copyright 2026 agent <agent@local>
+	This file is part of LDraw3D
+
+	LDraw3D is free software: you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	LDraw3D is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with LDraw3D.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+
+package bricksnspace.ldraw3d;
+
+
+/**
+ * Projects part bounding boxes to window coordinates
+ * <p>
+ * Projection and model view matrices are multiplied once, so a box costs
+ * eight matrix-vector products and no GLU call.
+ *
+ * @author agent
+ *
+ */
+class BoxProjector {
+
+	private float[] mvp = new float[16];
+	private float vx, vy, vw, vh;
+
+
+
+	/**
+	 * Sets matrices and viewport used for projection
+	 * @param proj projection matrix, column major
+	 * @param mv model view matrix, column major
+	 * @param viewport x, y, width, height
+	 */
+	void set(float[] proj, float[] mv, int[] viewport) {
+
+		for (int c=0;c<4;c++) {
+			for (int r=0;r<4;r++) {
+				mvp[c*4+r] = proj[r]*mv[c*4] + proj[4+r]*mv[c*4+1] +
+						proj[8+r]*mv[c*4+2] + proj[12+r]*mv[c*4+3];
+			}
+		}
+		vx = viewport[0];
+		vy = viewport[1];
+		vw = viewport[2];
+		vh = viewport[3];
+	}
+
+
+
+	/**
+	 * Window rectangle enclosing a part bounding box
+	 * @param bbox bounding box vertices, as in {@link LDRenderedPart#getBboxVBO()}
+	 * @param rect xmin, ymin, xmax, ymax in window coordinates, from bottom left
+	 * @return false if box crosses near plane, so it can't be projected
+	 */
+	boolean project(float[] bbox, float[] rect) {
+
+		float xmin = Float.MAX_VALUE, ymin = Float.MAX_VALUE;
+		float xmax = -Float.MAX_VALUE, ymax = -Float.MAX_VALUE;
+		// bounding box line VBO has 8 corners, 3 coordinates + 3 color each
+		for (int i=0;i<48;i+=6) {
+			float x = bbox[i], y = bbox[i+1], z = bbox[i+2];
+			float w = mvp[3]*x + mvp[7]*y + mvp[11]*z + mvp[15];
+			if (w <= 0)
+				return false;
+			float sx = vx + vw * ((mvp[0]*x + mvp[4]*y + mvp[8]*z + mvp[12]) / w + 1) / 2;
+			float sy = vy + vh * ((mvp[1]*x + mvp[5]*y + mvp[9]*z + mvp[13]) / w + 1) / 2;
+			xmin = Math.min(xmin, sx);
+			xmax = Math.max(xmax, sx);
+			ymin = Math.min(ymin, sy);
+			ymax = Math.max(ymax, sy);
+		}
+		rect[0] = xmin;
+		rect[1] = ymin;
+		rect[2] = xmax;
+		rect[3] = ymax;
+		return true;
+	}
+
+
+
+	/**
+	 * Checks if a part bounding box can cover a window region
+	 * @param bbox bounding box vertices
+	 * @param x0 region left
+	 * @param y0 region bottom
+	 * @param x1 region right, exclusive
+	 * @param y1 region top, exclusive
+	 * @param rect work array of 4 floats
+	 * @return true if box overlaps region or can't be projected
+	 */
+	boolean intersects(float[] bbox, int x0, int y0, int x1, int y1, float[] rect) {
+
+		if (bbox == null || bbox.length < 48 || !project(bbox, rect))
+			return true;
+		return rect[2] >= x0 && rect[0] <= x1 && rect[3] >= y0 && rect[1] <= y1;
+	}
+
+}
@@ -0,0 +1,220 @@
+/*
+	Copyright 2026 agent <agent@local>
+	This file is part of LDraw3D
+
+	LDraw3D is free software: you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	LDraw3D is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with LDraw3D.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+
+package bricksnspace.ldraw3d;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import javax.media.opengl.GL;
+
+
+/**
+ * Pool of GL buffer objects, bucketed by capacity
+ * <p>
+ * Released buffers are kept and reused for new data that fits in,
+ * so a stream of part edits doesn't generate and delete buffer names
+ * and storage on every change. Capacity is rounded up to a quarter
+ * of a power of two, so a buffer wastes at most 25% of its storage.
+ * <p>
+ * Not thread safe: a pool must be used only by thread owning its GL context.
+ *
+ * @author agent
+ *
+ */
+class BufferPool {
+
+	private static final long MIN_CAPACITY = 256;
+
+	// capacity of every buffer allocated by this pool
+	private Map<Integer,Long> capacity = new HashMap<Integer,Long>();
+	// free buffers by capacity
+	private Map<Long,ArrayDeque<Integer>> free = new HashMap<Long,ArrayDeque<Integer>>();
+	private long freeBytes = 0;
+	private long maxFreeBytes;
+	private int[] names = new int[1];
+
+
+	/**
+	 * @param maxFreeBytes max storage kept in pool for reuse, exceeding buffers are deleted
+	 */
+	BufferPool(long maxFreeBytes) {
+
+		this.maxFreeBytes = maxFreeBytes;
+	}
+
+
+
+	/**
+	 * Rounds up a requested size to a bucket capacity
+	 */
+	static long bucketSize(long bytes) {
+
+		if (bytes <= MIN_CAPACITY)
+			return MIN_CAPACITY;
+		long base = Long.highestOneBit(bytes-1);
+		long step = base / 4;
+		return (bytes + step - 1) / step * step;
+	}
+
+
+
+	/**
+	 * Gets a buffer with at least requested capacity.
+	 * Buffer storage is defined by caller, with a glBufferData of {@link #capacity(int)} bytes
+	 * @param gl GL context
+	 * @param bytes requested capacity
+	 * @return buffer name
+	 */
+	int acquire(GL gl, long bytes) {
+
+		long size = bucketSize(bytes);
+		ArrayDeque<Integer> bucket = free.get(size);
+		if (bucket != null && !bucket.isEmpty()) {
+			freeBytes -= size;
+			return bucket.pop();
+		}
+		gl.glGenBuffers(1, names, 0);
+		capacity.put(names[0], size);
+		return names[0];
+	}
+
+
+
+	/**
+	 * Reuses a buffer in place if requested size fits, otherwise
+	 * releases it and gets a new one
+	 * @param gl GL context
+	 * @param name buffer to reuse, 0 if none
+	 * @param bytes requested capacity
+	 * @return buffer name, can be the same
+	 */
+	int reuse(GL gl, int name, long bytes) {
+
+		if (name != 0) {
+			if (capacity(name) >= bytes)
+				return name;
+			release(gl, name);
+		}
+		return acquire(gl, bytes);
+	}
+
+
+
+	/**
+	 * Capacity of a buffer allocated by this pool
+	 * @param name buffer name
+	 * @return capacity in bytes, 0 if buffer isn't from this pool
+	 */
+	long capacity(int name) {
+
+		Long c = capacity.get(name);
+		return c == null ? 0 : c;
+	}
+
+
+
+	/**
+	 * Returns a buffer to pool. Buffers not from this pool, or that exceed
+	 * pool size, are deleted.
+	 * @param gl GL context
+	 * @param name buffer name, 0 is ignored
+	 */
+	void release(GL gl, int name) {
+
+		if (name == 0)
+			return;
+		long size = capacity(name);
+		if (size == 0 || freeBytes + size > maxFreeBytes) {
+			capacity.remove(name);
+			gl.glDeleteBuffers(1, new int[] {name}, 0);
+			return;
+		}
+		ArrayDeque<Integer> bucket = free.get(size);
+		if (bucket == null) {
+			bucket = new ArrayDeque<Integer>();
+			free.put(size, bucket);
+		}
+		bucket.push(name);
+		freeBytes += size;
+	}
+
+
+
+	/**
+	 * Deletes all free buffers in pool
+	 * @param gl GL context
+	 */
+	void clear(GL gl) {
+
+		for (Iterator<ArrayDeque<Integer>> i = free.values().iterator(); i.hasNext();) {
+			ArrayDeque<Integer> bucket = i.next();
+			for (int name : bucket) {
+				capacity.remove(name);
+				gl.glDeleteBuffers(1, new int[] {name}, 0);
+			}
+			i.remove();
+		}
+		freeBytes = 0;
+	}
+
+
+
+	/**
+	 * Hands all buffers allocated by this pool to another pool, i.e. buffers
+	 * filled by a thread and used by another one. Free buffers are handed too.
+	 * @return capacity by buffer name, to {@link #adopt(Map)} in new pool
+	 */
+	Map<Integer,Long> handOff() {
+
+		Map<Integer,Long> c = capacity;
+		capacity = new HashMap<Integer,Long>();
+		free.clear();
+		freeBytes = 0;
+		return c;
+	}
+
+
+
+	/**
+	 * Adopts buffers of another pool, so they are reused when released.
+	 * Pools must be in GL contexts sharing buffers.
+	 * @param buffers capacity by buffer name, from {@link #handOff()}
+	 */
+	void adopt(Map<Integer,Long> buffers) {
+
+		capacity.putAll(buffers);
+	}
+
+
+
+	/**
+	 * Forgets all buffers, i.e. when GL context is destroyed
+	 */
+	void reset() {
+
+		free.clear();
+		capacity.clear();
+		freeBytes = 0;
+	}
+
+}
@@ -0,0 +1,346 @@
+/*
+	Copyright 2026 agent <agent@local>
+	This file is part of LDraw3D
+
+	LDraw3D is free software: you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	LDraw3D is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with LDraw3D.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+
+package bricksnspace.ldraw3d;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+
+
+/**
+ * Precomputed draw lists for display render passes
+ * <p>
+ * Parts are sorted in buckets by their visual state (normal, selected, highlighted...)
+ * so a render pass walks only parts it really draws. Lists are rebuilt only
+ * when model or part state changes, and every list is sorted by VBO name
+ * to improve locality in GL driver.
+ *
+ * @author agent
+ *
+ */
+class DrawLists {
+
+	// buckets
+	static final int POLYGON = 0;		// parts with visible, non dimmed triangles
+	static final int EDGE = 1;			// parts with normal edges
+	static final int HIGHLIGHT = 2;		// highlighted parts
+	static final int CONNECTED = 3;		// parts marked as connected
+	static final int SELECTED = 4;		// selected (and not connected) parts
+	static final int DIMMED = 5;		// dimmed parts, drawn last
+	static final int PICK = 6;			// parts drawn in color pick buffer
+	static final int VISIBLE = 7;		// all non hidden parts
+	private static final int BUCKETS = 8;
+
+	private LDRenderedPart[][] lists = new LDRenderedPart[BUCKETS][];
+	private int[] counts = new int[BUCKETS];
+	private final PartStateLog stateLog;
+	private int stateSerial = -1;
+	private boolean dirty = true;
+	// changes every time lists are rebuilt
+	private int listSerial = 0;
+	// all model parts by slot, independent from part state
+	private LDRenderedPart[] slots = new LDRenderedPart[16];
+	private int slotCount = 0;
+	private boolean slotsDirty = true;
+	private int slotSerial = 0;
+	private int modelSerial = 0;
+	// changes every time a part is replaced in place
+	private int editSerial = 0;
+	// sort order of every bucket
+	@SuppressWarnings("unchecked")
+	private Comparator<LDRenderedPart>[] order = new Comparator[BUCKETS];
+
+
+	private static final Comparator<LDRenderedPart> byTriangleName = new Comparator<LDRenderedPart>() {
+		@Override
+		public int compare(LDRenderedPart o1, LDRenderedPart o2) {
+			return Integer.compare(o1.getTriangleName(), o2.getTriangleName());
+		}
+	};
+
+	private static final Comparator<LDRenderedPart> byLineName = new Comparator<LDRenderedPart>() {
+		@Override
+		public int compare(LDRenderedPart o1, LDRenderedPart o2) {
+			return Integer.compare(o1.getLineName(), o2.getLineName());
+		}
+	};
+
+	private static final Comparator<LDRenderedPart> byBboxName = new Comparator<LDRenderedPart>() {
+		@Override
+		public int compare(LDRenderedPart o1, LDRenderedPart o2) {
+			return Integer.compare(o1.getBboxName(), o2.getBboxName());
+		}
+	};
+
+
+	/**
+	 * @param log state changes of display parts
+	 */
+	DrawLists(PartStateLog log) {
+
+		stateLog = log;
+
+		for (int i=0;i<BUCKETS;i++) {
+			lists[i] = new LDRenderedPart[16];
+		}
+	}
+
+
+	/**
+	 * Marks lists as invalid, i.e. when a part is added or removed from model
+	 */
+	void invalidate() {
+		dirty = true;
+		slotsDirty = true;
+		modelSerial++;
+	}
+
+
+	/**
+	 * Changes every time model changes
+	 */
+	int getModelSerial() {
+		return modelSerial;
+	}
+
+
+	/**
+	 * Changes every time a part is replaced in place, without changes in lists or slots
+	 */
+	int getEditSerial() {
+		return editSerial;
+	}
+
+
+	/**
+	 * Checks if lists must be rebuilt
+	 * @return true if model or any part state changed since last rebuild
+	 */
+	boolean isValid() {
+		return !dirty && stateSerial == stateLog.getSerial();
+	}
+
+
+	/**
+	 * Changes every time lists are rebuilt, so any user of lists can tell
+	 * if they changed since its last use
+	 */
+	int getListSerial() {
+		return listSerial;
+	}
+
+
+	/**
+	 * Rebuilds lists if model or part state changed
+	 * @param parts current model parts
+	 * @return true if lists was rebuilt
+	 */
+	boolean update(Collection<LDRenderedPart> parts) {
+
+		if (isValid())
+			return false;
+		// read serial before scanning, a change during scan forces another rebuild
+		stateSerial = stateLog.getSerial();
+		dirty = false;
+		listSerial++;
+		Arrays.fill(counts, 0);
+		boolean bounding = LDRenderedPart.isBoundingSelect();
+		for (LDRenderedPart p : parts) {
+			if (p.isHidden())
+				continue;
+			add(VISIBLE, p);
+			if (p.getTriangleVertexCount() > 0) {
+				add(PICK, p);
+				if (p.isDimmed())
+					add(DIMMED, p);
+				else
+					add(POLYGON, p);
+			}
+			if (!p.isDimmed() && !p.isHighLighted() && (bounding || !p.isSelected()))
+				add(EDGE, p);
+			if (p.isHighLighted())
+				add(HIGHLIGHT, p);
+			if (p.isConnected())
+				add(CONNECTED, p);
+			else if (p.isSelected())
+				add(SELECTED, p);
+		}
+		// drop stale references beyond list end
+		for (int i=0;i<BUCKETS;i++) {
+			Arrays.fill(lists[i], counts[i], lists[i].length, null);
+		}
+		order[POLYGON] = byTriangleName;
+		order[DIMMED] = byTriangleName;
+		order[PICK] = byTriangleName;
+		order[EDGE] = byLineName;
+		order[SELECTED] = bounding ? byBboxName : byLineName;
+		order[HIGHLIGHT] = bounding ? byLineName : byBboxName;
+		order[CONNECTED] = byBboxName;
+		order[VISIBLE] = byTriangleName;
+		for (int i=0;i<BUCKETS;i++) {
+			Arrays.sort(lists[i], 0, counts[i], order[i]);
+		}
+		return true;
+	}
+
+
+
+	/**
+	 * Replaces a part with a new one that uses same VBOs, i.e. after a color 
+	 * or vertex update. Lists and slots keep their order, so nothing is rebuilt.
+	 * Caller must report a state change if new part has a different state.
+	 * @param old part in lists
+	 * @param p new part, with same VBO names of old one
+	 * @return slot of new part, or -1 if slots must be rebuilt
+	 */
+	int replace(LDRenderedPart old, LDRenderedPart p) {
+
+		editSerial++;
+		if (!dirty) {
+			for (int i=0;i<BUCKETS;i++) {
+				int k = indexOf(lists[i], counts[i], old, order[i]);
+				if (k >= 0)
+					lists[i][k] = p;
+			}
+		}
+		if (slotsDirty)
+			return -1;
+		int k = indexOf(slots, slotCount, old, byTriangleName);
+		if (k >= 0)
+			slots[k] = p;
+		return k;
+	}
+
+
+
+	/**
+	 * Slot of a part
+	 * @param p part to look for
+	 * @return slot index, or -1 if part has no slot or slots must be rebuilt
+	 */
+	int slotOf(LDRenderedPart p) {
+
+		if (slotsDirty)
+			return -1;
+		return indexOf(slots, slotCount, p, byTriangleName);
+	}
+
+
+
+	/**
+	 * Finds a part in a sorted list, looking among parts with same sort key 
+	 * @param c list order
+	 * @return index or -1 if not found
+	 */
+	private static int indexOf(LDRenderedPart[] list, int n, LDRenderedPart p, Comparator<LDRenderedPart> c) {
+
+		int k = Arrays.binarySearch(list, 0, n, p, c);
+		if (k < 0)
+			return -1;
+		for (int i=k;i>=0 && c.compare(list[i], p) == 0;i--) {
+			if (list[i] == p)
+				return i;
+		}
+		for (int i=k+1;i<n && c.compare(list[i], p) == 0;i++) {
+			if (list[i] == p)
+				return i;
+		}
+		return -1;
+	}
+
+
+
+	/**
+	 * Rebuilds slot table if model changed. Every part gets a slot, its index in table.
+	 * Part state changes don't change slots, so state can be kept in GPU by slot.
+	 * @param parts current model parts
+	 * @return true if slots was rebuilt
+	 */
+	boolean updateSlots(Collection<LDRenderedPart> parts) {
+		
+		if (!slotsDirty)
+			return false;
+		slotsDirty = false;
+		if (slots.length < parts.size()) {
+			slots = new LDRenderedPart[Math.max(parts.size(), slots.length*2)];
+		}
+		slotCount = 0;
+		for (LDRenderedPart p : parts) {
+			slots[slotCount++] = p;
+		}
+		Arrays.fill(slots, slotCount, slots.length, null);
+		Arrays.sort(slots, 0, slotCount, byTriangleName);
+		slotSerial++;
+		return true;
+	}
+	
+	
+	/**
+	 * Parts by slot. Only first {@link #slotCount()} elements are valid
+	 */
+	LDRenderedPart[] getSlots() {
+		return slots;
+	}
+	
+	
+	int slotCount() {
+		return slotCount;
+	}
+	
+	
+	/**
+	 * Changes every time slots are rebuilt
+	 */
+	int getSlotSerial() {
+		return slotSerial;
+	}
+	
+	
+	
+	private void add(int bucket, LDRenderedPart p) {
+
+		if (counts[bucket] == lists[bucket].length) {
+			lists[bucket] = Arrays.copyOf(lists[bucket], lists[bucket].length*2);
+		}
+		lists[bucket][counts[bucket]++] = p;
+	}
+
+
+	/**
+	 * Parts in a bucket. Only first {@link #count(int)} elements are valid
+	 * @param bucket bucket constant
+	 * @return array of parts
+	 */
+	LDRenderedPart[] get(int bucket) {
+		return lists[bucket];
+	}
+
+
+	/**
+	 * Count of parts in a bucket
+	 * @param bucket bucket constant
+	 * @return part count
+	 */
+	int count(int bucket) {
+		return counts[bucket];
+	}
+
+}
@@ -0,0 +1,174 @@
+/*
+	Copyright 2026 agent <agent@local>
+	This file is part of LDraw3D
+
+	LDraw3D is free software: you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	LDraw3D is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with LDraw3D.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+
+package bricksnspace.ldraw3d;
+
+
+/**
+ * Coalesces redraw requests for a GL display
+ * <p>
+ * Any number of requests between two frames produces only one frame.
+ * A new frame is started only when previous one is completed (so with
+ * vsync enabled there is at most one frame per vsync) and no sooner than
+ * allowed by FPS cap. When there are no requests scheduler thread sleeps.
+ * Scheduler thread runs from {@link #start()} to {@link #stop()}, and can 
+ * be started again. Requests before start are served when it starts.
+ *
+ * @author agent
+ *
+ */
+class FrameScheduler implements Runnable {
+
+	// max time to wait for a frame to complete, in case a repaint is lost
+	private static final long FRAME_TIMEOUT_MS = 500;
+
+	private final Runnable frame;
+	private final String name;
+	// current scheduler thread, null if stopped
+	private Thread thread = null;
+	private volatile long minFrameNanos = 0;
+	private boolean pending = false;
+	private boolean inProgress = false;
+	private long lastFrame = 0;
+	private long frameStart = 0;
+
+
+	/**
+	 * @param frame action that starts a new frame (i.e. a canvas repaint)
+	 * @param name name for scheduler thread
+	 */
+	FrameScheduler(Runnable frame, String name) {
+
+		this.frame = frame;
+		this.name = name;
+	}
+
+
+	/**
+	 * Starts scheduler thread, if stopped
+	 */
+	synchronized void start() {
+
+		if (thread != null)
+			return;
+		thread = new Thread(this, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+
+	/**
+	 * Stops scheduler thread. Never blocks, a frame in progress is completed.
+	 * Requests while stopped are kept and served when scheduler starts again.
+	 */
+	synchronized void stop() {
+
+		thread = null;
+		inProgress = false;
+		notifyAll();
+	}
+
+
+	/**
+	 * Sets FPS cap
+	 * @param fps max frames per second, 0 means no cap
+	 */
+	void setMaxFps(int fps) {
+
+		if (fps < 0)
+			throw new IllegalArgumentException("[FrameScheduler] FPS cap cannot be negative");
+		minFrameNanos = fps == 0 ? 0 : 1000000000L / fps;
+	}
+
+
+	int getMaxFps() {
+
+		long n = minFrameNanos;
+		return n == 0 ? 0 : (int) (1000000000L / n);
+	}
+
+
+	/**
+	 * Asks for a new frame. Never blocks.
+	 */
+	synchronized void request() {
+
+		if (!pending) {
+			pending = true;
+			notifyAll();
+		}
+	}
+
+
+	/**
+	 * Called by display when a frame is completed
+	 */
+	synchronized void frameDone() {
+
+		inProgress = false;
+		notifyAll();
+	}
+
+
+
+	@Override
+	public void run() {
+
+		try {
+			while (true) {
+				synchronized (this) {
+					// idle until someone asks for a frame and previous frame is done
+					while (true) {
+						if (thread != Thread.currentThread())
+							return;
+						long left = FRAME_TIMEOUT_MS - (System.currentTimeMillis() - frameStart);
+						if (!pending) {
+							wait();
+						}
+						else if (inProgress && left > 0) {
+							wait(left);
+						}
+						else {
+							break;
+						}
+					}
+				}
+				long wait = lastFrame + minFrameNanos - System.nanoTime();
+				if (wait > 0) {
+					// requests arriving meanwhile are merged in this frame
+					Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+				}
+				synchronized (this) {
+					if (thread != Thread.currentThread())
+						return;
+					pending = false;
+					inProgress = true;
+					frameStart = System.currentTimeMillis();
+				}
+				lastFrame = System.nanoTime();
+				frame.run();
+			}
+		}
+		catch (InterruptedException ex) {
+			// scheduler stopped
+		}
+	}
+
+}
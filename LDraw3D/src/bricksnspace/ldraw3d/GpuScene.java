@@ -0,0 +1,608 @@
+/*
+	Copyright 2026 agent <agent@local>
+	This file is part of LDraw3D
+
+	LDraw3D is free software: you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	LDraw3D is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with LDraw3D.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+
+package bricksnspace.ldraw3d;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.media.opengl.GL4;
+
+import com.jogamp.common.nio.Buffers;
+
+
+/**
+ * GPU driven scene for shader renderer, needs OpenGL 4.3
+ * <p>
+ * All part vertex are copied, GPU side, in a few large "arena" buffers, and every
+ * part gets a slot with a record (bounding box, vertex ranges) in a shader
+ * storage buffer. Part state is read from part state buffer, by slot. Every frame a compute shader culls parts against view
+ * frustum and minimum screen size, and writes a draw command per slot, so a
+ * whole pass is a single glMultiDrawArraysIndirect. Culled parts get a command
+ * with zero instances. Commands are computed again only when view, slots or 
+ * part state change, otherwise last commands are drawn as they are.
+ * <p>
+ * Slot is passed to vertex shader as an instanced attribute, selected by
+ * draw command base instance.
+ *
+ * @author agent
+ *
+ */
+class GpuScene {
+
+	// vertex attribute locations, same as ShaderRenderer
+	private static final int POSITION = ShaderRenderer.POSITION;
+	private static final int NORMAL = ShaderRenderer.NORMAL;
+	private static final int COLOR = ShaderRenderer.COLOR;
+	private static final int SLOT = 3;
+
+	// part record: bbox min (vec4), bbox max (vec4), 8 uint
+	private static final int RECORD_SIZE = 64;
+	// DrawArraysIndirectCommand
+	private static final int COMMAND_SIZE = 16;
+	private static final int WORKGROUP = 64;
+
+	private static final String PART_STRUCT =
+			"struct Part {\n" +
+			"	vec4 bmin;\n" +
+			"	vec4 bmax;\n" +
+			"	uint triFirst;\n" +
+			"	uint triCount;\n" +
+			"	uint lineFirst;\n" +
+			"	uint lineCount;\n" +
+			"	uint id;\n" +
+			"	uint pad0;\n" +
+			"	uint pad1;\n" +
+			"	uint pad2;\n" +
+			"};\n" +
+			"layout(std430, binding = 0) readonly buffer Parts { Part parts[]; };\n" +
+			PartStateBuffer.GLSL_FLAGS +
+			"uniform usamplerBuffer partState;\n";
+
+	private static final String CULL_SHADER =
+			"#version 430\n" +
+			"layout(local_size_x = " + WORKGROUP + ") in;\n" +
+			PART_STRUCT +
+			"struct Cmd { uint count; uint instanceCount; uint first; uint baseInstance; };\n" +
+			"layout(std430, binding = 1) writeonly buffer Cmds { Cmd cmds[]; };\n" +
+			"uniform mat4 mvp;\n" +
+			"uniform uint partCount;\n" +
+			"uniform vec2 viewport;\n" +
+			"uniform float minPixels;\n" +
+			"vec3 corner(Part p, int c) {\n" +
+			"	return vec3((c & 1) != 0 ? p.bmax.x : p.bmin.x,\n" +
+			"			(c & 2) != 0 ? p.bmax.y : p.bmin.y,\n" +
+			"			(c & 4) != 0 ? p.bmax.z : p.bmin.z);\n" +
+			"}\n" +
+			"bool visible(Part p) {\n" +
+			"	mat4 t = transpose(mvp);\n" +
+			"	vec4 planes[6] = vec4[6](t[3]+t[0], t[3]-t[0], t[3]+t[1], t[3]-t[1], t[3]+t[2], t[3]-t[2]);\n" +
+			"	for (int i = 0; i < 6; i++) {\n" +
+			"		vec3 n = planes[i].xyz;\n" +
+			"		vec3 v = vec3(n.x >= 0.0 ? p.bmax.x : p.bmin.x,\n" +
+			"				n.y >= 0.0 ? p.bmax.y : p.bmin.y,\n" +
+			"				n.z >= 0.0 ? p.bmax.z : p.bmin.z);\n" +
+			"		if (dot(n, v) + planes[i].w < 0.0)\n" +
+			"			return false;\n" +
+			"	}\n" +
+			"	if (minPixels > 0.0) {\n" +
+			"		vec2 lo = vec2(1e30);\n" +
+			"		vec2 hi = vec2(-1e30);\n" +
+			"		for (int c = 0; c < 8; c++) {\n" +
+			"			vec4 q = mvp * vec4(corner(p, c), 1.0);\n" +
+			"			if (q.w <= 0.0)\n" +
+			"				return true;\n" +
+			"			lo = min(lo, q.xy / q.w);\n" +
+			"			hi = max(hi, q.xy / q.w);\n" +
+			"		}\n" +
+			"		vec2 size = (hi - lo) * 0.5 * viewport;\n" +
+			"		if (max(size.x, size.y) < minPixels)\n" +
+			"			return false;\n" +
+			"	}\n" +
+			"	return true;\n" +
+			"}\n" +
+			"void main() {\n" +
+			"	uint i = gl_GlobalInvocationID.x;\n" +
+			"	if (i >= partCount)\n" +
+			"		return;\n" +
+			"	Part p = parts[i];\n" +
+			"	uint flags = texelFetch(partState, int(i)).r;\n" +
+			"	bool show = (flags & HIDDEN) == 0u && visible(p);\n" +
+			"	bool dim = (flags & DIMMED) != 0u;\n" +
+			"	cmds[i] = Cmd(p.triCount, show && !dim ? 1u : 0u, p.triFirst, i);\n" +
+			"	cmds[partCount + i] = Cmd(p.triCount, show && dim ? 1u : 0u, p.triFirst, i);\n" +
+			"	cmds[2u * partCount + i] = Cmd(p.lineCount, show && !dim ? 1u : 0u, p.lineFirst, i);\n" +
+			"}\n";
+
+	private static final String VERTEX_SHADER =
+			"#version 430\n" +
+			"layout(std140) uniform Frame {\n" +
+			"	mat4 projection;\n" +
+			"	mat4 modelView;\n" +
+			"	vec4 lightDir;\n" +
+			"};\n" +
+			PART_STRUCT +
+			"layout(location = 0) in vec3 position;\n" +
+			"layout(location = 1) in vec3 normal;\n" +
+			"layout(location = 2) in vec4 color;\n" +
+			"layout(location = 3) in uint slot;\n" +
+			"uniform bool lit;\n" +
+			"uniform bool edges;\n" +
+			"out vec4 vColor;\n" +
+			"void main() {\n" +
+			"	uint flags = texelFetch(partState, int(slot)).r;\n" +
+			"	vec4 c = (flags & DIMMED) != 0u ? vec4(0.9, 0.9, 0.9, 0.2) : color;\n" +
+			"	if (lit) {\n" +
+			"		vec3 n = normalize(mat3(modelView) * normal);\n" +
+			"		c.rgb *= min(0.4 + 0.8 * max(dot(n, lightDir.xyz), 0.0), 1.0);\n" +
+			"	}\n" +
+			"	float a = edges ? 1.0 : 0.4;\n" +
+			"	vec4 tint = vec4(0.0);\n" +
+			"	if ((flags & HIGHLIGHT) != 0u)\n" +
+			"		tint = vec4(0.95, 0.4, 0.4, a);\n" +
+			"	else if ((flags & CONNECTED) != 0u)\n" +
+			"		tint = vec4(1.0, 0.7, 0.6, a);\n" +
+			"	else if ((flags & SELECTED) != 0u)\n" +
+			"		tint = vec4(0.6, 1.0, 0.5, a);\n" +
+			"	vColor = vec4(mix(c.rgb, tint.rgb, tint.a), c.a);\n" +
+			"	gl_Position = projection * modelView * vec4(position, 1.0);\n" +
+			"}\n";
+
+	private static final String FRAGMENT_SHADER =
+			"#version 430\n" +
+			"in vec4 vColor;\n" +
+			"layout(location = 0) out vec4 fragColor;\n" +
+			"void main() {\n" +
+			"	fragColor = vColor;\n" +
+			"}\n";
+
+	// buffers
+	private static final int TRI_ARENA = 0;
+	private static final int TRI_COLOR_ARENA = 1;
+	private static final int LINE_ARENA = 2;
+	private static final int LINE_COLOR_ARENA = 3;
+	private static final int SLOTS = 4;
+	private static final int RECORDS = 5;
+	private static final int COMMANDS = 6;
+	private static final int BUFFERS = 7;
+
+	private int[] buffers = new int[BUFFERS];
+	private int[] vao = new int[2];
+	private int cullProgram = 0;
+	private int drawProgram = 0;
+	private int mvpLoc, partCountLoc, viewportLoc, minPixelsLoc;
+	private int litLoc, edgesLoc;
+	private float minPixels = 0;
+
+	private int partCount = 0;
+	private ByteBuffer records = null;
+	private float[] mvp = new float[16];
+	// culling inputs of commands in command buffer
+	private boolean commandsValid = false;
+	private float[] culledMvp = new float[16];
+	private int culledWidth, culledHeight;
+	private float culledMinPixels;
+	private int culledState;
+
+
+
+	/**
+	 * Compiles programs and allocates GL objects
+	 * @param gl GL context, must be current and at least 4.3
+	 * @return false if GPU driven scene can't be used in this context
+	 */
+	boolean init(GL4 gl) {
+
+		cullProgram = link(gl, compile(gl, GL4.GL_COMPUTE_SHADER, CULL_SHADER));
+		drawProgram = link(gl, compile(gl, GL4.GL_VERTEX_SHADER, VERTEX_SHADER),
+				compile(gl, GL4.GL_FRAGMENT_SHADER, FRAGMENT_SHADER));
+		if (cullProgram == 0 || drawProgram == 0) {
+			gl.glDeleteProgram(cullProgram);
+			gl.glDeleteProgram(drawProgram);
+			cullProgram = 0;
+			drawProgram = 0;
+			return false;
+		}
+		mvpLoc = gl.glGetUniformLocation(cullProgram, "mvp");
+		partCountLoc = gl.glGetUniformLocation(cullProgram, "partCount");
+		viewportLoc = gl.glGetUniformLocation(cullProgram, "viewport");
+		minPixelsLoc = gl.glGetUniformLocation(cullProgram, "minPixels");
+		litLoc = gl.glGetUniformLocation(drawProgram, "lit");
+		edgesLoc = gl.glGetUniformLocation(drawProgram, "edges");
+		// frame data and part state from ShaderRenderer
+		gl.glUniformBlockBinding(drawProgram, gl.glGetUniformBlockIndex(drawProgram, "Frame"), 0);
+		gl.glUseProgram(cullProgram);
+		gl.glUniform1i(gl.glGetUniformLocation(cullProgram, "partState"), ShaderRenderer.STATE_UNIT);
+		gl.glUseProgram(drawProgram);
+		gl.glUniform1i(gl.glGetUniformLocation(drawProgram, "partState"), ShaderRenderer.STATE_UNIT);
+		gl.glUseProgram(0);
+		gl.glGenBuffers(BUFFERS, buffers, 0);
+		gl.glGenVertexArrays(2, vao, 0);
+		return true;
+	}
+
+
+
+	boolean isReady() {
+		return drawProgram != 0;
+	}
+
+
+
+	void dispose(GL4 gl) {
+
+		if (drawProgram == 0)
+			return;
+		gl.glDeleteProgram(cullProgram);
+		gl.glDeleteProgram(drawProgram);
+		gl.glDeleteBuffers(BUFFERS, buffers, 0);
+		gl.glDeleteVertexArrays(2, vao, 0);
+		cullProgram = 0;
+		drawProgram = 0;
+		partCount = 0;
+		commandsValid = false;
+	}
+
+
+
+	/**
+	 * Minimum size of a part on screen, smaller parts are culled
+	 * @param pixels size in pixel, 0 disables size culling
+	 */
+	void setMinPixels(float pixels) {
+		minPixels = pixels;
+	}
+
+
+
+	private static int compile(GL4 gl, int type, String source) {
+
+		int shader = gl.glCreateShader(type);
+		gl.glShaderSource(shader, 1, new String[] {source}, new int[] {source.length()}, 0);
+		gl.glCompileShader(shader);
+		int[] status = new int[1];
+		gl.glGetShaderiv(shader, GL4.GL_COMPILE_STATUS, status, 0);
+		if (status[0] == 0) {
+			int[] len = new int[1];
+			gl.glGetShaderiv(shader, GL4.GL_INFO_LOG_LENGTH, len, 0);
+			byte[] log = new byte[Math.max(len[0], 1)];
+			gl.glGetShaderInfoLog(shader, log.length, len, 0, log, 0);
+			Logger.getGlobal().log(Level.WARNING, "[GpuScene] Unable to compile shader:\n"+new String(log, 0, len[0]));
+			gl.glDeleteShader(shader);
+			return 0;
+		}
+		return shader;
+	}
+
+
+
+	private static int link(GL4 gl, int... shaders) {
+
+		boolean ok = true;
+		for (int s : shaders) {
+			ok &= s != 0;
+		}
+		if (!ok) {
+			for (int s : shaders) {
+				gl.glDeleteShader(s);
+			}
+			return 0;
+		}
+		int program = gl.glCreateProgram();
+		for (int s : shaders) {
+			gl.glAttachShader(program, s);
+		}
+		gl.glLinkProgram(program);
+		for (int s : shaders) {
+			gl.glDeleteShader(s);
+		}
+		int[] status = new int[1];
+		gl.glGetProgramiv(program, GL4.GL_LINK_STATUS, status, 0);
+		if (status[0] == 0) {
+			Logger.getGlobal().log(Level.WARNING, "[GpuScene] Unable to link program");
+			gl.glDeleteProgram(program);
+			return 0;
+		}
+		return program;
+	}
+
+
+
+	/**
+	 * Rebuilds arenas and part records from model parts.
+	 * Vertex data are copied from part VBOs GPU side, with glCopyBufferSubData
+	 * @param gl GL context, must be current
+	 * @param slots all model parts by slot, already uploaded
+	 * @param n slot count
+	 */
+	void rebuild(GL4 gl, LDRenderedPart[] slots, int n) {
+
+		partCount = n;
+		commandsValid = false;
+		long triVertex = 0, lineVertex = 0;
+		int i;
+		for (i=0;i<n;i++) {
+			triVertex += slots[i].getTriangleVertexCount();
+			lineVertex += slots[i].getLineVertexCount();
+		}
+		allocate(gl, TRI_ARENA, triVertex * 6 * Buffers.SIZEOF_FLOAT);
+		allocate(gl, TRI_COLOR_ARENA, triVertex * 4);
+		allocate(gl, LINE_ARENA, lineVertex * 3 * Buffers.SIZEOF_FLOAT);
+		allocate(gl, LINE_COLOR_ARENA, lineVertex * 4);
+		allocate(gl, COMMANDS, (long) partCount * 3 * COMMAND_SIZE);
+		records = Buffers.newDirectByteBuffer(Math.max(partCount, 1) * RECORD_SIZE).order(ByteOrder.nativeOrder());
+		IntBuffer slotIds = Buffers.newDirectIntBuffer(Math.max(partCount, 1));
+		int triFirst = 0, lineFirst = 0;
+		for (i=0;i<partCount;i++) {
+			LDRenderedPart p = slots[i];
+			int tc = p.getTriangleVertexCount();
+			int lc = p.getLineVertexCount();
+			if (tc > 0) {
+				copy(gl, p.getTriangleName(), TRI_ARENA, triFirst * 6L * Buffers.SIZEOF_FLOAT, tc * 6L * Buffers.SIZEOF_FLOAT);
+				copy(gl, p.getTriangleColorName(), TRI_COLOR_ARENA, triFirst * 4L, tc * 4L);
+			}
+			if (lc > 0) {
+				copy(gl, p.getLineName(), LINE_ARENA, lineFirst * 3L * Buffers.SIZEOF_FLOAT, lc * 3L * Buffers.SIZEOF_FLOAT);
+				copy(gl, p.getLineColorName(), LINE_COLOR_ARENA, lineFirst * 4L, lc * 4L);
+			}
+			writeRecord(i, p, triFirst, lineFirst);
+			slotIds.put(i);
+			triFirst += tc;
+			lineFirst += lc;
+		}
+		slotIds.rewind();
+		records.rewind();
+		gl.glBindBuffer(GL4.GL_ARRAY_BUFFER, buffers[SLOTS]);
+		gl.glBufferData(GL4.GL_ARRAY_BUFFER, slotIds.capacity() * Buffers.SIZEOF_INT, slotIds, GL4.GL_STATIC_DRAW);
+		gl.glBindBuffer(GL4.GL_SHADER_STORAGE_BUFFER, buffers[RECORDS]);
+		gl.glBufferData(GL4.GL_SHADER_STORAGE_BUFFER, records.capacity(), records, GL4.GL_DYNAMIC_DRAW);
+		gl.glBindBuffer(GL4.GL_SHADER_STORAGE_BUFFER, 0);
+		gl.glBindBuffer(GL4.GL_COPY_READ_BUFFER, 0);
+		gl.glBindBuffer(GL4.GL_COPY_WRITE_BUFFER, 0);
+		setupArrays(gl);
+	}
+
+
+
+	/**
+	 * Updates arenas and record of a part changed in place, with same vertex counts.
+	 * Only changed arrays are copied again, as in display partial updates.
+	 * @param gl GL context, must be current
+	 * @param slot part slot
+	 * @param p changed part, with VBOs already updated
+	 * @param colors if true only colors changed
+	 * @param first first changed triangle vertex
+	 * @param count changed triangle vertex, or -1 if whole part changed
+	 */
+	void update(GL4 gl, int slot, LDRenderedPart p, boolean colors, int first, int count) {
+
+		if (slot >= partCount)
+			return;
+		int triFirst = records.getInt(slot * RECORD_SIZE + 32);
+		int lineFirst = records.getInt(slot * RECORD_SIZE + 40);
+		int tc = p.getTriangleVertexCount();
+		int lc = p.getLineVertexCount();
+		if (count >= 0) {
+			if (count > 0) {
+				copy(gl, p.getTriangleName(), first * 6L * Buffers.SIZEOF_FLOAT, TRI_ARENA, 
+						(triFirst + first) * 6L * Buffers.SIZEOF_FLOAT, count * 6L * Buffers.SIZEOF_FLOAT);
+				copy(gl, p.getTriangleColorName(), first * 4L, TRI_COLOR_ARENA, (triFirst + first) * 4L, count * 4L);
+			}
+		}
+		else if (colors) {
+			if (tc > 0)
+				copy(gl, p.getTriangleColorName(), TRI_COLOR_ARENA, triFirst * 4L, tc * 4L);
+			if (lc > 0)
+				copy(gl, p.getLineColorName(), LINE_COLOR_ARENA, lineFirst * 4L, lc * 4L);
+		}
+		else {
+			if (tc > 0)
+				copy(gl, p.getTriangleName(), TRI_ARENA, triFirst * 6L * Buffers.SIZEOF_FLOAT, tc * 6L * Buffers.SIZEOF_FLOAT);
+			if (lc > 0)
+				copy(gl, p.getLineName(), LINE_ARENA, lineFirst * 3L * Buffers.SIZEOF_FLOAT, lc * 3L * Buffers.SIZEOF_FLOAT);
+			// bounding box moved with part, culling must run again
+			writeRecord(slot, p, triFirst, lineFirst);
+			records.position(slot * RECORD_SIZE);
+			gl.glBindBuffer(GL4.GL_SHADER_STORAGE_BUFFER, buffers[RECORDS]);
+			gl.glBufferSubData(GL4.GL_SHADER_STORAGE_BUFFER, slot * RECORD_SIZE, RECORD_SIZE, records);
+			gl.glBindBuffer(GL4.GL_SHADER_STORAGE_BUFFER, 0);
+			records.rewind();
+			commandsValid = false;
+		}
+		gl.glBindBuffer(GL4.GL_COPY_READ_BUFFER, 0);
+		gl.glBindBuffer(GL4.GL_COPY_WRITE_BUFFER, 0);
+	}
+
+
+
+	private void allocate(GL4 gl, int buffer, long bytes) {
+
+		gl.glBindBuffer(GL4.GL_COPY_WRITE_BUFFER, buffers[buffer]);
+		gl.glBufferData(GL4.GL_COPY_WRITE_BUFFER, Math.max(bytes, 4), null, GL4.GL_STATIC_DRAW);
+	}
+
+
+
+	private void copy(GL4 gl, int from, int buffer, long offset, long bytes) {
+
+		copy(gl, from, 0, buffer, offset, bytes);
+	}
+
+
+
+	private void copy(GL4 gl, int from, long readOffset, int buffer, long offset, long bytes) {
+
+		gl.glBindBuffer(GL4.GL_COPY_READ_BUFFER, from);
+		gl.glBindBuffer(GL4.GL_COPY_WRITE_BUFFER, buffers[buffer]);
+		gl.glCopyBufferSubData(GL4.GL_COPY_READ_BUFFER, GL4.GL_COPY_WRITE_BUFFER, readOffset, offset, bytes);
+	}
+
+
+
+	private void writeRecord(int slot, LDRenderedPart p, int triFirst, int lineFirst) {
+
+		float[] bb = p.getBboxVBO();
+		float xmin = Float.MAX_VALUE, ymin = Float.MAX_VALUE, zmin = Float.MAX_VALUE;
+		float xmax = -Float.MAX_VALUE, ymax = -Float.MAX_VALUE, zmax = -Float.MAX_VALUE;
+		for (int i=0;i<p.getBboxCount()*3;i+=3) {
+			xmin = Math.min(xmin, bb[i]);
+			xmax = Math.max(xmax, bb[i]);
+			ymin = Math.min(ymin, bb[i+1]);
+			ymax = Math.max(ymax, bb[i+1]);
+			zmin = Math.min(zmin, bb[i+2]);
+			zmax = Math.max(zmax, bb[i+2]);
+		}
+		records.position(slot * RECORD_SIZE);
+		records.putFloat(xmin).putFloat(ymin).putFloat(zmin).putFloat(1f);
+		records.putFloat(xmax).putFloat(ymax).putFloat(zmax).putFloat(1f);
+		records.putInt(triFirst).putInt(p.getTriangleVertexCount());
+		records.putInt(lineFirst).putInt(p.getLineVertexCount());
+		records.putInt(p.getId()).putInt(0);
+		records.putInt(0).putInt(0);
+	}
+
+
+
+	private void setupArrays(GL4 gl) {
+
+		gl.glBindVertexArray(vao[0]);
+		gl.glBindBuffer(GL4.GL_ARRAY_BUFFER, buffers[TRI_ARENA]);
+		gl.glEnableVertexAttribArray(POSITION);
+		gl.glVertexAttribPointer(POSITION, 3, GL4.GL_FLOAT, false, 6 * Buffers.SIZEOF_FLOAT, 0);
+		gl.glEnableVertexAttribArray(NORMAL);
+		gl.glVertexAttribPointer(NORMAL, 3, GL4.GL_FLOAT, false, 6 * Buffers.SIZEOF_FLOAT, 3 * Buffers.SIZEOF_FLOAT);
+		gl.glBindBuffer(GL4.GL_ARRAY_BUFFER, buffers[TRI_COLOR_ARENA]);
+		gl.glEnableVertexAttribArray(COLOR);
+		gl.glVertexAttribPointer(COLOR, 4, GL4.GL_UNSIGNED_BYTE, true, 4, 0);
+		slotArray(gl);
+
+		gl.glBindVertexArray(vao[1]);
+		gl.glBindBuffer(GL4.GL_ARRAY_BUFFER, buffers[LINE_ARENA]);
+		gl.glEnableVertexAttribArray(POSITION);
+		gl.glVertexAttribPointer(POSITION, 3, GL4.GL_FLOAT, false, 3 * Buffers.SIZEOF_FLOAT, 0);
+		gl.glDisableVertexAttribArray(NORMAL);
+		gl.glBindBuffer(GL4.GL_ARRAY_BUFFER, buffers[LINE_COLOR_ARENA]);
+		gl.glEnableVertexAttribArray(COLOR);
+		gl.glVertexAttribPointer(COLOR, 4, GL4.GL_UNSIGNED_BYTE, true, 4, 0);
+		slotArray(gl);
+
+		gl.glBindVertexArray(0);
+		gl.glBindBuffer(GL4.GL_ARRAY_BUFFER, 0);
+	}
+
+
+
+	private void slotArray(GL4 gl) {
+
+		gl.glBindBuffer(GL4.GL_ARRAY_BUFFER, buffers[SLOTS]);
+		gl.glEnableVertexAttribArray(SLOT);
+		gl.glVertexAttribIPointer(SLOT, 1, GL4.GL_UNSIGNED_INT, Buffers.SIZEOF_INT, 0);
+		gl.glVertexAttribDivisor(SLOT, 1);
+	}
+
+
+
+	/**
+	 * Culls parts and draws polygons and edges of visible, non dimmed parts.
+	 * Culling runs only if view, slots or part state changed since last call.
+	 * Frame uniform buffer must be already bound by shader renderer
+	 * @param projection projection matrix
+	 * @param modelView model-view matrix
+	 * @param stateSerial change serial of part state buffer
+	 */
+	void drawParts(GL4 gl, float[] projection, float[] modelView, int width, int height,
+			int stateSerial, boolean polygons, boolean edges, boolean lighting) {
+
+		if (partCount == 0)
+			return;
+		multiply(projection, modelView, mvp);
+		if (!commandsValid || stateSerial != culledState || width != culledWidth || 
+				height != culledHeight || minPixels != culledMinPixels || !Arrays.equals(mvp, culledMvp)) {
+			gl.glUseProgram(cullProgram);
+			gl.glUniformMatrix4fv(mvpLoc, 1, false, mvp, 0);
+			gl.glUniform1ui(partCountLoc, partCount);
+			gl.glUniform2f(viewportLoc, width, height);
+			gl.glUniform1f(minPixelsLoc, minPixels);
+			gl.glBindBufferBase(GL4.GL_SHADER_STORAGE_BUFFER, 0, buffers[RECORDS]);
+			gl.glBindBufferBase(GL4.GL_SHADER_STORAGE_BUFFER, 1, buffers[COMMANDS]);
+			gl.glDispatchCompute((partCount + WORKGROUP - 1) / WORKGROUP, 1, 1);
+			gl.glMemoryBarrier(GL4.GL_COMMAND_BARRIER_BIT);
+			System.arraycopy(mvp, 0, culledMvp, 0, 16);
+			culledWidth = width;
+			culledHeight = height;
+			culledMinPixels = minPixels;
+			culledState = stateSerial;
+			commandsValid = true;
+		}
+
+		gl.glUseProgram(drawProgram);
+		gl.glBindBuffer(GL4.GL_DRAW_INDIRECT_BUFFER, buffers[COMMANDS]);
+		if (polygons) {
+			gl.glUniform1i(litLoc, lighting ? 1 : 0);
+			gl.glUniform1i(edgesLoc, 0);
+			gl.glBindVertexArray(vao[0]);
+			gl.glMultiDrawArraysIndirect(GL4.GL_TRIANGLES, 0, partCount, COMMAND_SIZE);
+		}
+		if (edges) {
+			gl.glUniform1i(litLoc, 0);
+			gl.glUniform1i(edgesLoc, 1);
+			gl.glBindVertexArray(vao[1]);
+			gl.glMultiDrawArraysIndirect(GL4.GL_LINES, 2L * partCount * COMMAND_SIZE, partCount, COMMAND_SIZE);
+		}
+		gl.glBindBuffer(GL4.GL_DRAW_INDIRECT_BUFFER, 0);
+		gl.glBindVertexArray(0);
+	}
+
+
+
+	/**
+	 * Draws dimmed parts culled in last {@link #drawParts}
+	 */
+	void drawDimmed(GL4 gl, boolean lighting) {
+
+		if (partCount == 0)
+			return;
+		gl.glUseProgram(drawProgram);
+		gl.glUniform1i(litLoc, lighting ? 1 : 0);
+		gl.glUniform1i(edgesLoc, 0);
+		gl.glBindVertexArray(vao[0]);
+		gl.glBindBuffer(GL4.GL_DRAW_INDIRECT_BUFFER, buffers[COMMANDS]);
+		gl.glMultiDrawArraysIndirect(GL4.GL_TRIANGLES, (long) partCount * COMMAND_SIZE, partCount, COMMAND_SIZE);
+		gl.glBindBuffer(GL4.GL_DRAW_INDIRECT_BUFFER, 0);
+		gl.glBindVertexArray(0);
+	}
+
+
+
+	// r = a * b, column major
+	private static void multiply(float[] a, float[] b, float[] r) {
+
+		for (int c=0;c<4;c++) {
+			for (int row=0;row<4;row++) {
+				r[c*4+row] = a[row]*b[c*4] + a[4+row]*b[c*4+1] + a[8+row]*b[c*4+2] + a[12+row]*b[c*4+3];
+			}
+		}
+	}
+
+}
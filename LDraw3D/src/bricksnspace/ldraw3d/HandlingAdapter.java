@@ -0,0 +1,75 @@
+/*
+	Copyright 2026 agent <agent@local>
+	This file is part of LDraw3D
+
+	LDraw3D is free software: you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	LDraw3D is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with LDraw3D.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+
+
+package bricksnspace.ldraw3d;
+
+import bricksnspace.j3dgeom.Point3D;
+
+
+/**
+ * Empty implementation of {@link BatchHandlingListener}, to override only needed callbacks
+ * <p>
+ * {@link #pickedAll(int[], PickMode)} calls {@link #picked(int, Point3D, Point3D, PickMode)}
+ * for every part, so listeners written for single picks work unchanged.
+ * 
+ * @author agent
+ *
+ */
+public abstract class HandlingAdapter implements BatchHandlingListener {
+
+	
+	@Override
+	public void picked(int partId, Point3D eyeNear, Point3D eyeFar, PickMode mode) {
+		
+	}
+	
+	
+	
+	@Override
+	public void pickedAll(int[] ids, PickMode mode) {
+		
+		for (int id : ids) {
+			picked(id, null, null, mode);
+		}
+	}
+	
+	
+	
+	@Override
+	public void moved(int partId, Point3D eyeNear, Point3D eyeFar) {
+		
+	}
+	
+	
+	
+	@Override
+	public void endDragSelectionWindow() {
+		
+	}
+	
+	
+	
+	@Override
+	public void startDragParts(int partId) {
+		
+	}
+	
+}
@@ -0,0 +1,49 @@
+/*
+	Copyright 2026 agent <agent@local>
+	This file is part of LDraw3D
+
+	LDraw3D is free software: you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	LDraw3D is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with LDraw3D.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+
+
+package bricksnspace.ldraw3d;
+
+import bricksnspace.j3dgeom.Point3D;
+
+/**
+ * Part selection handling with point of model under cursor
+ * <p>
+ * Display reads depth with part id under cursor and sends to listener
+ * the point of model surface where cursor is, so application doesn't need
+ * its own ray intersection (i.e. for part placement).
+ * 
+ * @author agent
+ *
+ */
+public interface HitPointListener extends HandlingListener {
+
+	
+	/**
+	 * Callback for user moving mouse cursor on GL window, after 
+	 * {@link HandlingListener#moved(int, Point3D, Point3D)}
+	 * @param partId part under cursor, 0 if none
+	 * @param point point of model surface under cursor, null if no part is under cursor
+	 * @param normal unit normal of surface facing user, estimated from near depths, 
+	 * null if no part is under cursor or it can't be estimated
+	 */
+	public void hitPoint(int partId, Point3D point, Point3D normal);
+	
+}
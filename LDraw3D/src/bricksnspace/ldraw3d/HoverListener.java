@@ -0,0 +1,51 @@
+/*
+	Copyright 2026 agent <agent@local>
+	This file is part of LDraw3D
+
+	LDraw3D is free software: you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	LDraw3D is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with LDraw3D.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+
+
+package bricksnspace.ldraw3d;
+
+
+/**
+ * Part hover handling with notifications only when part under cursor changes
+ * <p>
+ * Cursor moving on same part doesn't call listener, so application can 
+ * highlight parts or show tooltips without checking every mouse movement.
+ * 
+ * @author agent
+ *
+ */
+public interface HoverListener extends HandlingListener {
+
+	
+	/**
+	 * Callback when cursor enters a part, after exit from previous one
+	 * @param partId part now under cursor
+	 */
+	public void hoverEnter(int partId);
+	
+	
+	
+	/**
+	 * Callback when cursor leaves a part
+	 * @param partId part that was under cursor
+	 */
+	public void hoverExit(int partId);
+	
+}
@@ -0,0 +1,130 @@
+/*
+	Copyright 2026 agent <agent@local>
+	This file is part of LDraw3D
+
+	LDraw3D is free software: you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	LDraw3D is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with LDraw3D.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+
+
+package bricksnspace.ldraw3d;
+
+import java.util.Arrays;
+
+
+/**
+ * Set of int values with open addressing, without boxing
+ * <p>
+ * Value 0 is used as empty slot, so it can't be added (it is background
+ * in pick buffer).
+ *
+ * @author agent
+ *
+ */
+class IntHashSet {
+
+	private int[] keys = new int[16];
+	private int size = 0;
+
+
+
+	/**
+	 * Adds a value
+	 * @param k value, not 0
+	 * @return true if value wasn't in set
+	 */
+	boolean add(int k) {
+
+		int mask = keys.length - 1;
+		int i = hash(k) & mask;
+		while (keys[i] != 0) {
+			if (keys[i] == k)
+				return false;
+			i = (i + 1) & mask;
+		}
+		keys[i] = k;
+		size++;
+		// load factor 1/2
+		if (size * 2 > keys.length)
+			grow();
+		return true;
+	}
+
+
+
+	boolean contains(int k) {
+
+		int mask = keys.length - 1;
+		int i = hash(k) & mask;
+		while (keys[i] != 0) {
+			if (keys[i] == k)
+				return true;
+			i = (i + 1) & mask;
+		}
+		return false;
+	}
+
+
+
+	private void grow() {
+
+		int[] old = keys;
+		keys = new int[old.length*2];
+		size = 0;
+		for (int k : old) {
+			if (k != 0)
+				add(k);
+		}
+	}
+
+
+
+	private static int hash(int k) {
+
+		int h = k * 0x9e3779b9;
+		return h ^ (h >>> 16);
+	}
+
+
+
+	void clear() {
+
+		Arrays.fill(keys, 0);
+		size = 0;
+	}
+
+
+
+	int size() {
+		return size;
+	}
+
+
+
+	/**
+	 * Values in set, in no particular order
+	 */
+	int[] toArray() {
+
+		int[] a = new int[size];
+		int n = 0;
+		for (int k : keys) {
+			if (k != 0)
+				a[n++] = k;
+		}
+		return a;
+	}
+
+}
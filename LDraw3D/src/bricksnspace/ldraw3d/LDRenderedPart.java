@@ -23,6 +23,8 @@ package bricksnspace.ldraw3d;
 import java.awt.Color;
 import java.io.IOException;
 import java.util.Collection;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -77,6 +79,7 @@ public class LDRenderedPart {
 	private int lineVertexCount = 0;
 	private int auxLineVertexCount = 0;
 	private int bboxCount = 0; 
+	private int pickIndex = 0;			// dense index in display pick buffer
 	private boolean selected = false;
 	private boolean connected = false;
 	private boolean hidden = false;
@@ -92,6 +95,12 @@ public class LDRenderedPart {
 	private float xmax,xmin,ymax,ymin,zmax,zmin;
 	private static boolean useBounding = false;
 	private static boolean auxLines = true;
+	// incremented on every selection mode change, that changes state of all parts
+	private static final AtomicInteger modeSerial = new AtomicInteger();
+	// log of display showing this part, gets part state changes
+	private volatile PartStateLog stateLog = null;
+	// true while part is in changed queue of a log
+	private final AtomicBoolean stateQueued = new AtomicBoolean();
 	
 	
 	private LDRenderedPart(LDPrimitive p) {
@@ -741,14 +750,20 @@ public class LDRenderedPart {
 	
 	public void select() {
 		
-		selected = true;
+		if (!selected) {
+			selected = true;
+			stateChanged();
+		}
 	}
 	
 	
 	
 	public void unSelect() {
 		
-		selected = false;
+		if (selected) {
+			selected = false;
+			stateChanged();
+		}
 	}
 	
 
@@ -760,13 +775,19 @@ public class LDRenderedPart {
 	
 	public void hide() {
 		
-		hidden = true;
+		if (!hidden) {
+			hidden = true;
+			stateChanged();
+		}
 	}
 	
 	
 	public void show() {
 		
-		hidden = false;
+		if (hidden) {
+			hidden = false;
+			stateChanged();
+		}
 	}
 
 	
@@ -828,6 +849,21 @@ public class LDRenderedPart {
 
 
 
+	/**
+	 * Index written in pick buffer for this part, assigned by display
+	 */
+	int getPickIndex() {
+		return pickIndex;
+	}
+
+
+
+	void setPickIndex(int pickIndex) {
+		this.pickIndex = pickIndex;
+	}
+
+
+
 	public void setTriangleName(int triangleName) {
 		this.triangleName = triangleName;
 	}
@@ -942,12 +978,14 @@ public class LDRenderedPart {
 	public static void useBoundingSelect() {
 		
 		useBounding = true;
+		modeSerial.incrementAndGet();
 	}
 	
 	
 	public static void useLineSelect() {
 		
 		useBounding = false;
+		modeSerial.incrementAndGet();
 	}
 	
 	
@@ -963,12 +1001,18 @@ public class LDRenderedPart {
 
 
 	public void highLight() {
-		highLighted = true;
+		if (!highLighted) {
+			highLighted = true;
+			stateChanged();
+		}
 	}
 
 
 	public void highLightOff() {
-		highLighted = false;
+		if (highLighted) {
+			highLighted = false;
+			stateChanged();
+		}
 	}
 
 
@@ -978,12 +1022,18 @@ public class LDRenderedPart {
 
 
 	public void dimOn() {
-		dimmed = true;
+		if (!dimmed) {
+			dimmed = true;
+			stateChanged();
+		}
 	}
 
 
 	public void dimOff() {
-		dimmed = false;
+		if (dimmed) {
+			dimmed = false;
+			stateChanged();
+		}
 	}
 
 
@@ -993,12 +1043,74 @@ public class LDRenderedPart {
 
 
 	public void connected() {
-		this.connected = true;
+		if (!connected) {
+			connected = true;
+			stateChanged();
+		}
 	}
 	
 	
 	public void unConnect() {
-		connected = false;
+		if (connected) {
+			connected = false;
+			stateChanged();
+		}
+	}
+
+
+	/**
+	 * Serial number of selection mode (bounding box or lines), that changes 
+	 * visual state of every part in every display
+	 * @return current mode serial
+	 */
+	static int getModeSerial() {
+		return modeSerial.get();
+	}
+
+
+
+	/**
+	 * Reports a visual state change (selected, hidden, dimmed...) to display of this part
+	 */
+	private void stateChanged() {
+		
+		PartStateLog log = stateLog;
+		if (log != null)
+			log.changed(this);
+	}
+
+
+
+	PartStateLog getStateLog() {
+		return stateLog;
+	}
+
+
+
+	/**
+	 * Sets log of display showing this part, null if none
+	 */
+	void setStateLog(PartStateLog log) {
+		stateLog = log;
+	}
+
+
+
+	/**
+	 * Marks part as queued in a changed parts queue
+	 * @return true if part wasn't already queued
+	 */
+	boolean setStateQueued() {
+		return stateQueued.compareAndSet(false, true);
+	}
+
+
+
+	/**
+	 * Part taken from changed parts queue, next change queues it again
+	 */
+	void clearStateQueued() {
+		stateQueued.set(false);
 	}
 
 
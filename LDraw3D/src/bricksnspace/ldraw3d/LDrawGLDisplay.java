@@ -21,6 +21,10 @@
 package bricksnspace.ldraw3d;
 
 import java.awt.Component;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
@@ -34,16 +38,26 @@ import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.BlockingDeque;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.media.opengl.GL2;
+import javax.media.opengl.GL3;
+import javax.media.opengl.GL3ES3;
+import javax.media.opengl.GL4;
 import javax.media.opengl.GLAutoDrawable;
 import javax.media.opengl.GLCapabilities;
 import javax.media.opengl.GLContext;
@@ -53,13 +67,18 @@ import javax.media.opengl.GLException;
 import javax.media.opengl.GLOffscreenAutoDrawable;
 import javax.media.opengl.GLProfile;
 import javax.media.opengl.awt.GLCanvas;
+import javax.media.opengl.fixedfunc.GLMatrixFunc;
 import javax.media.opengl.glu.GLU;
+import javax.swing.Timer;
 
 import bricksnspace.j3dgeom.JSimpleGeom;
 import bricksnspace.j3dgeom.Matrix3D;
 import bricksnspace.j3dgeom.Point3D;
 
 import com.jogamp.common.nio.Buffers;
+import com.jogamp.newt.awt.NewtCanvasAWT;
+import com.jogamp.newt.opengl.GLWindow;
+import com.jogamp.opengl.util.PMVMatrix;
 
 
 /**
@@ -70,7 +89,13 @@ public class LDrawGLDisplay implements GLEventListener, MouseListener, MouseMoti
 
 	static { GLProfile.initSingleton(); }
 		
-	private GLCanvas canvas;
+	// AWT component with GL surface: a GLCanvas, or a NEWT window in render thread mode
+	private Component canvas;
+	private GLAutoDrawable glDrawable;
+	// render thread mode only
+	private GLWindow glWindow = null;
+	private NewtMouseForwarder newtMouse = null;
+	private final ConcurrentLinkedQueue<MouseEvent> inputQueue = new ConcurrentLinkedQueue<MouseEvent>();
 	private GL2 currentGL2;
 	
 	private boolean wireframe = true;
@@ -80,13 +105,51 @@ public class LDrawGLDisplay implements GLEventListener, MouseListener, MouseMoti
 	private volatile boolean bufferOk = false;
 	private boolean selection = false; 
 	private boolean autoRedraw = true;
-	private float zoomFactor = 1.0f;
+	private boolean vsync = true;
+	// redraw requests coalescing
+	private FrameScheduler scheduler;
+	private final Object batchLock = new Object();
+	private volatile int batchDepth = 0;
+	private boolean batchRedraw = false;
+	// view is changed only by GL thread, other threads queue changes
+	private volatile float zoomFactor = 1.0f;
 	private float offsetx = 0f;
 	private float offsety = 0f;
 	private float offsetz = 0f;
-	private Matrix3D viewMatrix = new Matrix3D();
+	private volatile Matrix3D viewMatrix = new Matrix3D();
+	private final MpscQueue<Runnable> viewChanges = new MpscQueue<Runnable>();
+	// canvas size, updated by AWT event thread and read by render thread
+	private volatile int canvasWidth = 0;
+	private volatile int canvasHeight = 0;
 	private float[] projectionMatrix = new float[16];
+	private float[] modelViewMatrix = new float[16];
 	private int[] viewPort = new int[4];
+	// view of last frame, for picks from threads other than GL thread
+	private volatile FrameView frameView = null;
+	// unprojects CPU picks, guarded by ray picker lock
+	private final GLU pickGlu = new GLU();
+	// shader based renderer, null if fixed function pipeline is used
+	private boolean useShaders = false;
+	private ShaderRenderer shaders = null;
+	private PartStateBuffer partState = null;
+	private PMVMatrix pmv = new PMVMatrix();
+	// GPU driven rendering, with shader renderer only
+	private boolean gpuDriven = false;
+	private boolean gpuSceneFailed = false;
+	private GpuScene gpuScene = null;
+	private float minPartPixels = 0;
+	// slots used to build GPU scene
+	private int gpuSlotSerial = -1;
+	// parts changed in place, copied again in GPU scene arenas at next frame
+	private List<QueueAction<LDRenderedPart>> gpuEdits = new ArrayList<QueueAction<LDRenderedPart>>();
+	// part ids written in main pass with a second color attachment
+	private boolean mrtPick = false;
+	private boolean mrtPickFailed = false;
+	private boolean mrtPickFrame = false;
+	private int[] sceneFbo = new int[1];
+	private int[] sceneRbo = new int[1];
+	private int sceneFboWidth = 0;
+	private int sceneFboHeight = 0;
 	
 	public static final int VERTEX = 0;
 	public static final int VERTEX_COLOR = 1;
@@ -98,11 +161,48 @@ public class LDrawGLDisplay implements GLEventListener, MouseListener, MouseMoti
 	
 	private int rotMode = ROT_LDD;
 
-	private Map<Integer,LDRenderedPart> model = new HashMap<Integer,LDRenderedPart>();
+	// persistent maps, every change makes a new version and snapshots share them
+	private PersistentIntMap<LDRenderedPart> model = PersistentIntMap.empty();
+	private PersistentIntMap<Integer> partStates = PersistentIntMap.empty();
 	private Map<Integer,Gadget3D> gadgets = new HashMap<Integer,Gadget3D>();
+	// model and gadgets maps are used by GL thread only, other threads read published snapshot
+	private volatile SceneSnapshot scene = SceneSnapshot.EMPTY;
+	private long scenePartEpoch = 0;
+	private PersistentIntMap<LDRenderedPart> sceneModel = model;
+	private PersistentIntMap<Integer> sceneStates = partStates;
+	// parts added since last snapshot, meaningful only if no part was removed or moved
+	private List<LDRenderedPart> sceneAdded = new ArrayList<LDRenderedPart>();
+	private boolean sceneShrunk = false;
+	private boolean gadgetsChanged = false;
+	// per-frame upload budget, 0 means unlimited
+	private long uploadBudgetMs = 20;
+	private long uploadBudgetBytes = 0;
+	// progress of parts upload
+	private ProgressUpdater uploadProgress = null;
+	private int uploadTotal = 0;
+	private int uploadDone = 0;
+	// state changes of displayed parts, reported by parts themselves
+	private final PartStateLog stateLog = new PartStateLog();
+	// parts sorted by render pass, rebuilt only on model or state changes
+	private DrawLists drawLists = new DrawLists(stateLog);
+	// recycled VBOs for display GL context
+	private BufferPool bufferPool = new BufferPool(BUFFER_POOL_SIZE);
+	// static scene cache in display lists
+	private boolean sceneCache = false;
+	// scene lists are recorded again when draw lists or display settings change
+	private volatile int sceneSettings = 0;
+	private int sceneListSettings = -1;
+	private int sceneListSerial = -1;
+	private int sceneList = 0;
+	private int dimmedList = 0;
+	// display lists of single parts, called by scene lists
+	private PartLists partLists = new PartLists();
 	private GLContext glcontext = null;
 	private GLU glu = null;
-	private LinkedList<HandlingListener> handlingListeners = new LinkedList<HandlingListener>();
+	// listeners can be called from dispatcher thread
+	private CopyOnWriteArrayList<HandlingListener> handlingListeners = new CopyOnWriteArrayList<HandlingListener>();
+	// null if listeners are called synchronously
+	private volatile ListenerDispatcher dispatcher = null;
 	private long drawingTime;
 	private int centerx;
 	private int centery;
@@ -110,6 +210,35 @@ public class LDrawGLDisplay implements GLEventListener, MouseListener, MouseMoti
 	private boolean partHover = false;
 	private static boolean antialias = false;
 	private int partHoverId = 0;
+	// mouse motion waiting for next frame, latest event only
+	private MouseEvent pendingMove = null;
+	private MouseEvent pendingDrag = null;
+	private long hoverThrottleNanos = 0;
+	private long lastMoveTime = 0;
+	private Timer hoverTimer = null;
+	// true while input is handled by display(), with GL context already current
+	private boolean inFrame = false;
+	// asynchronous hover pick, null if fences aren't available
+	private PickReadback<HoverRequest> hoverReadback = null;
+	private final AtomicReference<HoverRequest> hoverPending = new AtomicReference<HoverRequest>();
+	private ByteBuffer pickPixel = Buffers.newDirectByteBuffer(4);
+	private FloatBuffer pickDepth = Buffers.newDirectFloatBuffer(PickReadback.DEPTH_SIDE*PickReadback.DEPTH_SIDE);
+	private static final int HOVER_READBACKS = 3;
+	// pick buffer is valid if drawn with current view serial
+	private int viewSerial = 0;
+	private int pickSerial = -1;
+	// frame counter, pick indexes of removed parts are reused when frame readbacks are done
+	private int frameSerial = 0;
+	// region drawn in pick buffer: xmin, ymin, xmax, ymax (exclusive)
+	private int[] pickRegion = new int[4];
+	private BoxProjector boxProjector = new BoxProjector();
+	// side of pick region around cursor, in pixels
+	private static final int PICK_REGION = 32;
+	private float[] pickSignature = new float[23];
+	private float[] lastPickSignature = new float[23];
+	private int pickModelSerial = -1;
+	private int pickEditSerial = -1;
+	private int pickStateSerial = -1;
 
 	// FBO for OpenGL color selection/pick
 	// framebuffer
@@ -117,20 +246,58 @@ public class LDrawGLDisplay implements GLEventListener, MouseListener, MouseMoti
 	// render buffer
 	private int[] rbo = new int[2];
 	private static final int COLOR_RB = 0;
+	// pick buffer holds pick indexes as R32UI with shaders, as RGB otherwise
+	private boolean pickInteger = false;
+	private PickIdMap pickIds = new PickIdMap();
+	// CPU ray picking instead of pick buffer
+	private boolean cpuPick = false;
+	private RayPicker rayPicker = new RayPicker();
 	private static final int DEPTH_RB = 1;
+	// scratch buffer for partial VBO updates, used by GL thread only
+	private ByteBuffer subDataBytes = Buffers.newDirectByteBuffer(4096);
+	private FloatBuffer subDataFloats = subDataBytes.asFloatBuffer();
+	// max storage kept in pool of free VBOs
+	private static final long BUFFER_POOL_SIZE = 32*1024*1024;
+	// wait step for worker upload fences when frame has no upload budget
+	private static final long SYNC_WAIT_NS = 100000000L;
 	
 	// selection by window
 	int selcorner1x,  selcorner1y, selcorner2x, selcorner2y;
+	// window of last selection, to skip drag events with same window
+	private int[] selWindowRect = new int[4];
+	private WindowSelector windowSelector = new WindowSelector();
+	// window selection on parts visible in pick buffer
+	private boolean visibleWindowSelect = false;
+	private PickRegionReadback windowReadback = null;
+	// pending window: x0, y0, x1, y1, selection serial
+	private final AtomicReference<int[]> windowPending = new AtomicReference<int[]>();
+	private IntHashSet windowIndexes = new IntHashSet();
+	private ByteBuffer windowPixels = null;
+	// changes at every new selection window, discards late readbacks
+	private int windowSerial = 0;
+	// frame of window readback in flight
+	private int windowReadFrame = 0;
 	private volatile Gadget3D selWindow = null;
 	
 
-	private enum QActions { ADD,DEL };
+	private enum QActions { ADD,DEL,COLOR,VERTEX,CLEAR };
 	
 	private class QueueAction<T> {
 		
 		QActions action;
 		T part;
 		int id;
+		// part VBOs already uploaded by upload worker
+		boolean resident = false;
+		// fence for worker upload, 0 if none
+		long sync = 0;
+		// capacity of buffers allocated by worker, adopted by display pool
+		Map<Integer,Long> buffers = null;
+		// triangle vertex range for partial updates, count < 0 means whole part
+		int first = 0;
+		int count = -1;
+		// slot of part changed in place, -1 if slots must be rebuilt
+		int slot = -1;
 		
 		private QueueAction(T p) {
 			action = QActions.ADD;
@@ -139,29 +306,270 @@ public class LDrawGLDisplay implements GLEventListener, MouseListener, MouseMoti
 		}
 		
 		
+		private QueueAction(T p, QActions act, int f, int c) {
+			action = act;
+			part = p;
+			id = 0;
+			first = f;
+			count = c;
+		}
+		
+		
 		private QueueAction(int i) {
 			action = QActions.DEL;
 			part = null;
 			id = i;
 		}
 		
+		
+		private QueueAction(QActions act) {
+			action = act;
+			part = null;
+			id = 0;
+		}
+		
+	}
+	
+	
+	/**
+	 * Cursor position and eye ray for a hover pick, id is filled when pick is resolved
+	 */
+	private static class HoverRequest {
+		
+		int x,y;
+		Point3D eyeNear,eyeFar;
+		int id = 0;
+		// frame when read was started
+		int frame;
+		// depth block read with id, cursor offset in block and view of pick frame
+		boolean depth = false;
+		int dx,dy;
+		float[] depths;
+		float[] proj,mv;
+		int[] view;
+		
+		private HoverRequest(int x, int y, Point3D near, Point3D far) {
+			this.x = x;
+			this.y = y;
+			eyeNear = near;
+			eyeFar = far;
+		}
+	}
+	
+	
+	/**
+	 * Immutable copy of matrices and viewport of a displayed frame
+	 */
+	private static final class FrameView {
+		
+		final float[] proj,mv;
+		// view matrix only, without pan offset
+		final float[] view;
+		final int[] viewport;
+		// canvas height, to flip cursor y
+		final int height;
+		
+		private FrameView(float[] proj, float[] mv, float[] view, int[] viewport, int height) {
+			this.proj = proj.clone();
+			this.mv = mv.clone();
+			this.view = view;
+			this.viewport = viewport.clone();
+			this.height = height;
+		}
+		
+		private boolean isSame(float[] p, float[] m, float[] v, int[] vp, int h) {
+			return height == h && Arrays.equals(proj, p) && Arrays.equals(mv, m) &&
+					Arrays.equals(view, v) && Arrays.equals(viewport, vp);
+		}
 	}
 	
 	
-	// insert/remove queue operation
-	BlockingDeque<QueueAction<Gadget3D>> gadgetAddQueue = 
-			new LinkedBlockingDeque<QueueAction<Gadget3D>>();
-	BlockingDeque<QueueAction<LDRenderedPart>> partAddQueue = 
-			new LinkedBlockingDeque<QueueAction<LDRenderedPart>>();
+	// insert/remove queue operation, from any thread, taken by GL thread in bulk every frame
+	MpscQueue<QueueAction<Gadget3D>> gadgetAddQueue = 
+			new MpscQueue<QueueAction<Gadget3D>>();
+	MpscQueue<QueueAction<LDRenderedPart>> partAddQueue = 
+			new MpscQueue<QueueAction<LDRenderedPart>>();
+	// part actions taken from queue and not yet applied, with last action for every part id
+	private ArrayDeque<QueueAction<LDRenderedPart>> pendingParts = 
+			new ArrayDeque<QueueAction<LDRenderedPart>>();
+	private Map<Integer,QueueAction<LDRenderedPart>> pendingById = 
+			new HashMap<Integer,QueueAction<LDRenderedPart>>();
+	private volatile int pendingPartCount = 0;
+	// gadget actions taken in a frame, with index of last action for every gadget id
+	private List<QueueAction<Gadget3D>> gadgetActions = new ArrayList<QueueAction<Gadget3D>>();
+	private Map<Integer,Integer> lastGadgetAction = new HashMap<Integer,Integer>();
 //	BlockingDeque<Integer> gadgetRemoveQueue = new LinkedBlockingDeque<Integer>();
 //	BlockingDeque<Integer> partRemoveQueue = new LinkedBlockingDeque<Integer>();
+	
+	// background part upload
+	private boolean uploadThread = false;
+	private volatile UploadWorker uploader = null;
+	
+	
+	/**
+	 * Uploads part VBOs in a separate thread, with a GL context shared with canvas.
+	 * <p>
+	 * Part actions pass through worker queue to keep order between additions and removals.
+	 * Uploaded parts are fenced and handed to display through part queue, 
+	 * so GL thread only swaps in parts when GPU has completed upload.
+	 */
+	private class UploadWorker implements Runnable {
+		
+		private BlockingQueue<QueueAction<LDRenderedPart>> queue = 
+				new LinkedBlockingQueue<QueueAction<LDRenderedPart>>();
+		private GLOffscreenAutoDrawable buf;
+		private GLContext context;
+		private Thread thread;
+		private boolean running = true;
+		// worker buffers are never reused by worker itself, display takes care of them
+		private BufferPool pool = new BufferPool(0);
+		
+		
+		private UploadWorker(GLContext share) {
+			
+			GLProfile glp = share.getGLDrawable().getGLProfile();
+			GLDrawableFactory fac = GLDrawableFactory.getFactory(glp);
+			GLCapabilities glCap = new GLCapabilities(glp);
+			glCap.setDoubleBuffered(false);
+			buf = fac.createOffscreenAutoDrawable(null, glCap, null, 1, 1);
+			context = buf.createContext(share);
+			thread = new Thread(this, "LDrawGLDisplay upload worker");
+			thread.setDaemon(true);
+			thread.start();
+		}
+		
+		
+		/**
+		 * Queue an action for worker 
+		 * @return false if worker is stopped, action must be queued directly to display
+		 */
+		private synchronized boolean add(QueueAction<LDRenderedPart> a) {
+			
+			if (!running)
+				return false;
+			queue.add(a);
+			return true;
+		}
+		
+		
+		private int size() {
+			return queue.size();
+		}
+		
+		
+		/**
+		 * Stops worker. Actions not yet processed are forwarded to display
+		 */
+		private void stop() {
+			
+			synchronized (this) {
+				running = false;
+			}
+			thread.interrupt();
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		
+		
+		@Override
+		public void run() {
+			
+			try {
+				if (context.makeCurrent() == GLContext.CONTEXT_NOT_CURRENT) {
+					Logger.getGlobal().log(Level.WARNING, "[LDrawGLDisplay] Unable to use shared context, upload worker disabled");
+					synchronized (this) {
+						running = false;
+					}
+					return;
+				}
+				GL2 gl2 = context.getGL().getGL2();
+				boolean fences = gl2.isGL3ES3();
+				while (running) {
+					QueueAction<LDRenderedPart> a = queue.take();
+					if (a.action == QActions.ADD) {
+						addRenderedPartVA(a.part, null, gl2, pool);
+						if (fences) {
+							a.sync = gl2.getGL3ES3().glFenceSync(GL3ES3.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+							gl2.glFlush();
+						}
+						else {
+							gl2.glFinish();
+						}
+						a.resident = true;
+						// buffers belong to display from now on
+						a.buffers = pool.handOff();
+					}
+					partAddQueue.offer(a);
+					// a finished upload is applied even if auto redraw is disabled
+					scheduler.request();
+				}
+			}
+			catch (InterruptedException ex) {
+				// stopped
+			}
+			finally {
+				// display uploads actions left in queue by itself
+				List<QueueAction<LDRenderedPart>> left = new ArrayList<QueueAction<LDRenderedPart>>();
+				queue.drainTo(left);
+				for (QueueAction<LDRenderedPart> a : left) {
+					partAddQueue.offer(a);
+				}
+				if (!left.isEmpty())
+					scheduler.request();
+				if (context.isCurrent())
+					context.release();
+				context.destroy();
+				buf.destroy();
+				pool.reset();
+			}
+		}
+	}
 
 	
 	
 	
 	public LDrawGLDisplay() throws GLException
+	{
+		this(false);
+	}
+	
+	
+	
+	/**
+	 * Creates a display with selected renderer
+	 * <p>
+	 * Shader renderer needs OpenGL 3.2 or better, uses GLSL programs, vertex array
+	 * objects and a uniform buffer instead of fixed function pipeline. If it 
+	 * isn't available display falls back to fixed function pipeline.
+	 * @param shaders true to use shader based renderer
+	 * @throws GLException if OpenGL is not usable
+	 */
+	public LDrawGLDisplay(boolean shaders) throws GLException
+	{
+		this(shaders, false);
+	}
+	
+	
+	
+	/**
+	 * Creates a display with selected renderer and threading
+	 * <p>
+	 * In render thread mode display draws in a NEWT window inside an AWT 
+	 * component, from its own thread: big frames don't block Swing painting
+	 * and input. Mouse events are queued and handled by render thread before
+	 * every frame, so listeners are called from render thread, not from 
+	 * AWT event thread (see {@link #setListenerExecutor(Executor)}).
+	 * @param shaders true to use shader based renderer
+	 * @param renderThread true to draw from a dedicated thread
+	 * @throws GLException if OpenGL is not usable
+	 */
+	public LDrawGLDisplay(boolean shaders, boolean renderThread) throws GLException
 	{
 
+		useShaders = shaders;
 		GLProfile glp = GLProfile.getDefault();
 		if (!glp.isGL2()) {
 			GLException ex = new GLException("Your graphic card doesn't support requested OpenGL level.\nYour GL is:"+glp.getName());
@@ -173,43 +581,86 @@ public class LDrawGLDisplay implements GLEventListener, MouseListener, MouseMoti
 			caps.setSampleBuffers(true);
 			caps.setNumSamples(8);
 		}
-		canvas = new GLCanvas(caps);
-		canvas.setAutoSwapBufferMode(false);
-		canvas.addGLEventListener(this);
+		if (renderThread) {
+			glWindow = GLWindow.create(caps);
+			canvas = new NewtCanvasAWT(glWindow);
+			glDrawable = glWindow;
+			// scheduler thread is render thread
+			scheduler = new FrameScheduler(new Runnable() {
+				@Override
+				public void run() {
+					glWindow.display();
+				}
+			}, "LDrawGLDisplay render thread");
+			newtMouse = new NewtMouseForwarder(canvas, inputQueue, new Runnable() {
+				@Override
+				public void run() {
+					scheduler.request();
+				}
+			});
+		}
+		else {
+			GLCanvas c = new GLCanvas(caps);
+			canvas = c;
+			glDrawable = c;
+			scheduler = new FrameScheduler(new Runnable() {
+				@Override
+				public void run() {
+					canvas.repaint();
+				}
+			}, "LDrawGLDisplay frame scheduler");
+		}
+		glDrawable.setAutoSwapBufferMode(false);
+		glDrawable.addGLEventListener(this);
+		canvas.addComponentListener(new ComponentAdapter() {
+			@Override
+			public void componentResized(ComponentEvent e) {
+				canvasWidth = canvas.getWidth();
+				canvasHeight = canvas.getHeight();
+			}
+		});
 	}
 
 	
 	public Component getCanvas() {
 		return canvas;
 	}
+	
+	
+	
+	/**
+	 * Checks if display draws and handles input from its own thread
+	 */
+	public boolean isRenderThread() {
+		return glWindow != null;
+	}
 
 	
 	public void setWireframe(boolean wireframe) {
 
 		this.wireframe = wireframe;
-		if (autoRedraw)
-			canvas.repaint();	
+		sceneSettings++;
+		requestRedraw();
 	}
 
 
 	public void setPolygon(boolean polygon) {
 		this.polygon = polygon;
-		if (autoRedraw)
-			canvas.repaint();	
+		sceneSettings++;
+		requestRedraw();
 	}
 
 
 	public void setLighting(boolean lighting) {
 		this.lighting = lighting;
-		if (autoRedraw)
-			canvas.repaint();	
+		sceneSettings++;
+		requestRedraw();
 	}
 
 
 	public void setPerspective(boolean perspective) {
 		this.perspective = perspective;
-		if (autoRedraw)
-			canvas.repaint();	
+		requestRedraw();
 	}
 	
 	
@@ -236,29 +687,38 @@ public class LDrawGLDisplay implements GLEventListener, MouseListener, MouseMoti
 	}
 
 
-	public void setZoomFactor(float zoom) {
+	public void setZoomFactor(final float zoom) {
 		if (zoom <= 0.001) {
 			throw new IllegalArgumentException("Zoom multiplier cannot be too low or negative");
 		}
-		zoomFactor *= zoom;
-		if (autoRedraw)
-			canvas.repaint();	
+		changeView(new Runnable() {
+			@Override
+			public void run() {
+				zoomFactor *= zoom;
+			}
+		});
 	}
 	
 	
-	public void setZoom(float zoom) {
+	public void setZoom(final float zoom) {
 		
-		zoomFactor = zoom;
-		if (autoRedraw)
-			canvas.repaint();	
+		changeView(new Runnable() {
+			@Override
+			public void run() {
+				zoomFactor = zoom;
+			}
+		});
 	}
 	
 	
 	public void resetZoom() {
 		
-		zoomFactor = 1f;
-		if (autoRedraw)
-			canvas.repaint();	
+		changeView(new Runnable() {
+			@Override
+			public void run() {
+				zoomFactor = 1f;
+			}
+		});
 	}
 
 	
@@ -276,27 +736,70 @@ public class LDrawGLDisplay implements GLEventListener, MouseListener, MouseMoti
 	}
 	
 
-	public void setOffsetx(float offsetx) {
-		viewMatrix = viewMatrix.moveTo(-offsetx, 0, 0);
-		if (autoRedraw)
-			canvas.repaint();	
+	public void setOffsetx(final float offsetx) {
+		changeView(new Runnable() {
+			@Override
+			public void run() {
+				viewMatrix = viewMatrix.moveTo(-offsetx, 0, 0);
+			}
+		});
 	}
 
 
-	public void setOffsety(float offsety) {
-		viewMatrix = viewMatrix.moveTo(0,-offsety, 0);
-		if (autoRedraw)
-			canvas.repaint();	
+	public void setOffsety(final float offsety) {
+		changeView(new Runnable() {
+			@Override
+			public void run() {
+				viewMatrix = viewMatrix.moveTo(0,-offsety, 0);
+			}
+		});
 	}
 
 
 
-	public void setOrigin(float x, float y, float z) {
+	public void setOrigin(final float x, final float y, final float z) {
+		
+		changeView(new Runnable() {
+			@Override
+			public void run() {
+				float f[] = viewMatrix.transformPoint(x, y, z);
+				viewMatrix = viewMatrix.moveTo(-f[0], -f[1], -f[2]);
+			}
+		});
+	}
+	
+	
+	
+	/**
+	 * Changes view from GL thread. In render thread mode change is queued
+	 * and done by render thread before next frame, so view getters return
+	 * new values after that frame; otherwise it is done now.
+	 * @param change view change, reads and writes view fields
+	 */
+	private void changeView(Runnable change) {
+		
+		if (isRenderThread()) {
+			viewChanges.offer(change);
+			// change must be done even if auto redraw is disabled
+			scheduler.request();
+		}
+		else {
+			change.run();
+			requestRedraw();
+		}
+	}
+	
+	
+	
+	/**
+	 * Does view changes queued by other threads, in render thread mode
+	 */
+	private void processViewChanges() {
 		
-		float f[] = viewMatrix.transformPoint(x, y, z);
-		viewMatrix = viewMatrix.moveTo(-f[0], -f[1], -f[2]);
-		if (autoRedraw)
-			canvas.repaint();	
+		Runnable r;
+		while ((r = viewChanges.poll()) != null) {
+			r.run();
+		}
 	}
 
 	
@@ -313,635 +816,1322 @@ public class LDrawGLDisplay implements GLEventListener, MouseListener, MouseMoti
 	public void disableAutoRedraw() {
 		autoRedraw = false;
 	}
-
 	
-	public void enableHover() {
-		partHover = true;
-	}
 	
-
-	public void disableHover() {
-		partHover = false;
+	/**
+	 * Asks for a redraw if auto redraw is enabled.
+	 * Requests are coalesced by frame scheduler, and delayed until end of 
+	 * current batch, if any.
+	 */
+	private void requestRedraw() {
+		
+		if (!autoRedraw)
+			return;
+		synchronized (batchLock) {
+			if (batchDepth > 0) {
+				batchRedraw = true;
+				return;
+			}
+		}
+		scheduler.request();
 	}
 	
-
-	public static boolean isAntialias() {
-		return antialias;
-	}
-
-
-	public static void setAntialias(boolean enable) {
-		LDrawGLDisplay.antialias = enable;
-	}
-
-
-	public void enableMouseTracking() {
-
-		mouseTracking  = true;
-		canvas.addMouseMotionListener(this);
-		canvas.addMouseListener(this);
-		canvas.addMouseWheelListener(this);
-	}
-
 	
-	public void disableMouseTracking() {
+	/**
+	 * Starts a batch of changes (parts, gadgets, view...)
+	 * <p>
+	 * Until matching {@link #endBatch()} no redraw is requested and queued 
+	 * parts and gadgets are not applied to scene, so all changes in a batch
+	 * are displayed together in a single frame. Batches can be nested.
+	 */
+	public void beginBatch() {
 		
-		mouseTracking = false;
-		canvas.removeMouseMotionListener(this);
-		canvas.removeMouseListener(this);
-		canvas.removeMouseWheelListener(this);
+		synchronized (batchLock) {
+			batchDepth++;
+		}
 	}
-
 	
-	public boolean isMouseTracking() {
+	
+	/**
+	 * Ends a batch of changes started with {@link #beginBatch()}
+	 * If it is the outermost batch, a single redraw is requested 
+	 * for all changes done in batch.
+	 */
+	public void endBatch() {
 		
-		return mouseTracking;
+		boolean redraw;
+		synchronized (batchLock) {
+			if (batchDepth == 0)
+				throw new IllegalStateException("[LDrawGLDisplay] endBatch() without beginBatch()");
+			batchDepth--;
+			redraw = batchDepth == 0 && batchRedraw;
+			if (batchDepth == 0)
+				batchRedraw = false;
+		}
+		if (redraw)
+			scheduler.request();
 	}
 	
 	
+	public boolean isInBatch() {
+		return batchDepth > 0;
+	}
+	
 	
 	/**
-	 * Rotate view around view X axis
-	 * @param anglex angle in degree
+	 * Limits frame rate
+	 * @param fps max frames per second, 0 for no limit (only vsync, if enabled)
 	 */
-	public void rotateX(float anglex) {
-		viewMatrix = viewMatrix.rotateX((float)(anglex*Math.PI/180));
-		if (autoRedraw)
-			canvas.repaint();	
+	public void setMaxFps(int fps) {
+		scheduler.setMaxFps(fps);
 	}
-
-
+	
+	
+	public int getMaxFps() {
+		return scheduler.getMaxFps();
+	}
+	
+	
+	public boolean isVSync() {
+		return vsync;
+	}
+	
+	
 	/**
-	 * Rotate view around view Y axis
-	 * @param angley angle in degree
+	 * Enable or disable sync of buffer swap with display refresh.
+	 * Must be set before GL canvas is realized
+	 * @param enable true to sync with display refresh (default)
 	 */
-	public void rotateY(float angley) {
-		if (rotMode == ROT_LDD) {
-			Point3D o = new Point3D(viewMatrix.transformPoint(0, 0, 0));
-			Point3D y1 = new Point3D(viewMatrix.transformPoint(0, 1, 0));
-			viewMatrix = viewMatrix.transform(JSimpleGeom.axisRotMatrix(o, y1, angley));
-		}
-		else {
-			viewMatrix = viewMatrix.rotateY((float)(angley*Math.PI/180));
-		}
-		if (autoRedraw)
-			canvas.repaint();	
+	public void setVSync(boolean enable) {
+		vsync = enable;
 	}
 
-
-	public void resetView() {
-		
-		viewMatrix = new Matrix3D();	
-		if (autoRedraw)
-			canvas.repaint();	
-	}
-	
 	
+	/**
+	 * Static scene cache status
+	 * @return true if static scene is recorded in display lists
+	 */
+	public boolean isSceneCacheEnabled() {
+		return sceneCache;
+	}
 
 
 	/**
-	 * Add or replace a rendered part from a model
-	 * Updates GL context VA buffers
-	 * @param p rendered part to add (or replace if ID is the same)
+	 * Enable or disable static scene cache.
+	 * <p>
+	 * With cache enabled parts are recorded once in GL display lists and replayed
+	 * on every frame with current view matrix, so a camera orbit doesn't re-issue 
+	 * all binds and draws. Every part is compiled in its own lists, so a changed
+	 * part is compiled again alone, and scene lists, that only call part lists, 
+	 * are recorded again when parts are added, removed or change state. Uses more 
+	 * video memory, because display lists keep their own copy of geometry. 
+	 * Shader renderer doesn't use cache.
+	 * @param enable true to enable static scene cache
 	 */
-	public void addRenderedPart(LDRenderedPart p) {
-		partAddQueue.add(new QueueAction<LDRenderedPart>(p));
-		if (autoRedraw)
-			canvas.repaint();
+	public void enableSceneCache(boolean enable) {
+		sceneCache = enable;
+		sceneSettings++;
+		requestRedraw();
 	}
 	
 	
 	/**
-	 * Remove a rendered part from a model
-	 * Updates GL context VA buffers
-	 * @param p part to remove
+	 * Checks if display uses shader based renderer
+	 * @return true if shader renderer was requested and is available on this GL
 	 */
-	public void delRenderedPart(int id) {
-		
-		//System.out.println("d:"+id);
-		partAddQueue.add(new QueueAction<LDRenderedPart>(id));
-		if (autoRedraw)
-			canvas.repaint();
+	public boolean isShaderRenderer() {
+		return shaders != null;
 	}
 	
 	
-	public synchronized void clearAllParts() {
-		
-		for (int i:model.keySet()) {
-			partAddQueue.add(new QueueAction<LDRenderedPart>(i));
-		}
+	/**
+	 * Checks if GPU driven rendering is in use
+	 * @return true if enabled and available on this GL
+	 */
+	public boolean isGpuDriven() {
+		return gpuScene != null;
 	}
 	
-
 	
-	public LDRenderedPart getPart(int id) {
-		
-		return model.get(id);
+	/**
+	 * Enable or disable GPU driven rendering.
+	 * <p>
+	 * Only with shader renderer and OpenGL 4.3 or better, otherwise parts are drawn
+	 * one by one from CPU. All parts are kept in GPU with their bounding box and 
+	 * state, a compute shader culls parts outside view or too small and writes
+	 * draw commands, so every render pass is a single indirect draw call. 
+	 * Useful for very large models.
+	 * @param enable true to enable GPU driven rendering
+	 */
+	public void enableGpuDriven(boolean enable) {
+		gpuDriven = enable;
+		requestRedraw();
 	}
 	
 	
-
-
-	/////////////////////////////////
-	// Gadgets
-	/////////////////////////////////
-
-	public synchronized void addGadget(Gadget3D g) {
-		
-		gadgetAddQueue.add(new QueueAction<Gadget3D>(g));
-		if (autoRedraw)
-			canvas.repaint();
-		
+	/**
+	 * Parts smaller than this size on screen are not drawn, with GPU driven rendering only
+	 * @param pixels minimum part size in pixel, 0 to draw all parts
+	 */
+	public void setMinPartPixels(float pixels) {
+		minPartPixels = pixels;
+		requestRedraw();
 	}
 	
 	
-	public synchronized void removeGadget(Integer g) {
-		gadgetAddQueue.add(new QueueAction<Gadget3D>(g));
-		if (autoRedraw)
-			canvas.repaint();
+	public float getMinPartPixels() {
+		return minPartPixels;
 	}
 	
 	
 	
 	/**
-	 * removes all gadgets where ID >= 0 
-	 * excluding drawing helper gadgets (grid, axis, pointer...)
+	 * Checks if main pass writes part ids, without a separate pick pass
 	 */
-	public synchronized void clearGadgets() {
-
-		for (Integer g : gadgets.keySet()) {
-			if (g >= 0)
-				gadgetAddQueue.add(new QueueAction<Gadget3D>(g));
-		}
-		// removes adding gadgets in queue not already added
-		Iterator<QueueAction<Gadget3D>> c = gadgetAddQueue.iterator();
-		while (c.hasNext()) {
-			QueueAction<Gadget3D> a = c.next();
-			if (a.action == QActions.ADD && a.part.getId() >= 0) {
-				c.remove();
-			}
-		}
+	public boolean isMrtPick() {
+		
+		return mrtPick && !mrtPickFailed && shaders != null && !antialias;
 	}
 	
 	
 	
-	public Gadget3D getGadget(int id) {
-		return gadgets.get(id);
-	}
-	
-	
-	public void hideGadget(Gadget3D g) {
+	/**
+	 * Enables part ids written by main pass in a second color attachment (MRT), 
+	 * so hover and click picking never need a separate draw of model.
+	 * <p>
+	 * Works only with shader renderer without antialias, while polygons are displayed
+	 * and GPU driven rendering isn't used. Otherwise pick pass is used as usual.
+	 * @param enable true to write part ids in main pass
+	 */
+	public void enableMrtPick(boolean enable) {
 		
-		Gadget3D p = gadgets.get(g.getId());
-		if (p != null) {
-			p.hide();
-			if (autoRedraw)
-				canvas.repaint();
-		}
+		mrtPick = enable;
+		requestRedraw();
 	}
 	
 	
-
-	public void showGadget(Gadget3D g) {
-		
-		Gadget3D p = gadgets.get(g.getId());
-		if (p != null) {
-			p.show();
-			if (autoRedraw)
-				canvas.repaint();
-		}
+	/**
+	 * Checks if hover and click use CPU ray picking
+	 */
+	public boolean isCpuPick() {
+		return cpuPick;
 	}
 	
 	
 	
-	public void selectGadget(int id) {
-		gadgets.get(id).select();
+	/**
+	 * Enables CPU ray picking for hover and click, instead of pick buffer.
+	 * <p>
+	 * Picking doesn't need GL context nor GPU readback, and is independent
+	 * from selection FBO. Triangle trees for parts are built when a part is 
+	 * first crossed by a ray.
+	 * @param enable true to use CPU ray picking
+	 */
+	public void enableCpuPick(boolean enable) {
+		cpuPick = enable;
 	}
 	
 	
 	
-	public void unselectGadget(int id) {
-		gadgets.get(id).unSelect();
+	/**
+	 * Checks if window selection picks only visible parts
+	 */
+	public boolean isVisibleWindowSelect() {
+		return visibleWindowSelect;
 	}
 	
-
-
+	
+	
 	/**
-	 * checks available OpenGL profile
+	 * Enables window selection of visible parts only, instead of parts with 
+	 * bounding box inside window.
+	 * <p>
+	 * Window is read from pick buffer, so parts hidden behind others aren't 
+	 * selected and cost depends on window size and not on model size.
+	 * Readback is asynchronous if GL supports fences.
+	 * @param enable true to select only visible parts
 	 */
-	public static String checkGL() {
+	public void enableVisibleWindowSelect(boolean enable) {
+		visibleWindowSelect = enable;
+	}
+	
+	
+	
+	/**
+	 * Finds part under a point of display, with CPU ray casting on part triangles
+	 * <p>
+	 * Uses view and parts of last displayed frame, can be called from any thread.
+	 * @param x point x, from left of display
+	 * @param y point y, from top of display
+	 * @return part hit with hit point and normal, or null if there is no part under point
+	 */
+	public RayHit rayPick(int x, int y) {
 		
-		GLProfile glp = GLProfile.getDefault();
-		return glp.getName();
+		FrameView fv = frameView;
+		if (!bufferOk || fv == null)
+			return null;
+		float winY = fv.height-y;
+		float[] near = new float[3];
+		float[] far = new float[3];
+		SceneSnapshot sc = scene;
+		synchronized (rayPicker) {
+			pickGlu.gluUnProject(x, winY, 0, fv.mv, 0, fv.proj, 0, fv.viewport, 0, near, 0);
+			pickGlu.gluUnProject(x, winY, 1, fv.mv, 0, fv.proj, 0, fv.viewport, 0, far, 0);
+			rayPicker.update(sc.getParts(), sc.getPartEpoch());
+			return rayPicker.pick(near, far);
+		}
 	}
 	
 	
-	//////////////////////////////////////
-	// selection and selection listeners
-	//////////////////////////////////////
 	
-	public boolean isSelectionEnabled() {
-		return selection;
+	public void enableHover() {
+		partHover = true;
+	}
+	
+
+	public void disableHover() {
+		partHover = false;
+	}
+	
+
+	public static boolean isAntialias() {
+		return antialias;
 	}
 
 
-	public void enableSelection(boolean selection) {
-		this.selection = selection;
+	public static void setAntialias(boolean enable) {
+		LDrawGLDisplay.antialias = enable;
+	}
+
+
+	public void enableMouseTracking() {
+
+		mouseTracking  = true;
+		if (glWindow != null) {
+			glWindow.addMouseListener(newtMouse);
+			return;
+		}
+		canvas.addMouseMotionListener(this);
+		canvas.addMouseListener(this);
+		canvas.addMouseWheelListener(this);
 	}
 
 	
-	public void addPickListener(HandlingListener p) {
+	public void disableMouseTracking() {
 		
-		if (p == null) 
-			throw new NullPointerException("[LDrawGLDisplay] Cannot use a null SelectionListener");
-		// avoid duplicate insert
-		if (handlingListeners.contains(p))
+		mouseTracking = false;
+		if (glWindow != null) {
+			glWindow.removeMouseListener(newtMouse);
+			inputQueue.clear();
 			return;
-		handlingListeners.add(p);
+		}
+		canvas.removeMouseMotionListener(this);
+		canvas.removeMouseListener(this);
+		canvas.removeMouseWheelListener(this);
 	}
 
-
 	
-	public void removePickListener(HandlingListener p) {
+	public boolean isMouseTracking() {
 		
-		handlingListeners.remove(p);
+		return mouseTracking;
 	}
 	
 	
+	
 	/**
-	 * Add a gadget to GL context VA buffers
-	 * 
-	 * context must be already set before call
-	 *  
-	 * @param p gadget to add
+	 * Rotate view around view X axis
+	 * @param anglex angle in degree
 	 */
-	private void addGadgetVA(Gadget3D p, GL2 gl2) {
-		
-		int[] vboArrayNames = new int[2];
+	public void rotateX(final float anglex) {
+		changeView(new Runnable() {
+			@Override
+			public void run() {
+				viewMatrix = viewMatrix.rotateX((float)(anglex*Math.PI/180));
+			}
+		});
+	}
 
-		// gets and save array buffer names
-        if (p.getLineVertexCount() > 0) {
-	        gl2.glGenBuffers( 2, vboArrayNames, 0 );
-	        p.setLineName(vboArrayNames[VERTEX]);
-	        p.setLineColorName(vboArrayNames[VERTEX_COLOR]);
-	        gl2.glBindBuffer( GL2.GL_ARRAY_BUFFER, p.getLineName());
-	        gl2.glBufferData( GL2.GL_ARRAY_BUFFER,
-	                          p.getWireFrameVBO().length * Buffers.SIZEOF_FLOAT,
-	                          null,
-	                          GL2.GL_STATIC_DRAW );
-	        ByteBuffer bytebuffer = gl2.glMapBuffer( GL2.GL_ARRAY_BUFFER, GL2.GL_WRITE_ONLY );
-	        FloatBuffer vertexbuffer = bytebuffer.order( ByteOrder.nativeOrder() ).asFloatBuffer();
-	        vertexbuffer.put(p.getWireFrameVBO());
-	        gl2.glUnmapBuffer( GL2.GL_ARRAY_BUFFER );
-	        // store line colors
-	        gl2.glBindBuffer( GL2.GL_ARRAY_BUFFER, p.getLineColorName());
-	        gl2.glBufferData( GL2.GL_ARRAY_BUFFER,
-	                          p.getWireColorVa().length * Buffers.SIZEOF_BYTE,
-	                          null,
-	                          GL2.GL_STATIC_DRAW );
-	        bytebuffer = gl2.glMapBuffer( GL2.GL_ARRAY_BUFFER, GL2.GL_WRITE_ONLY );
-	        ByteBuffer lineColorBuffer = bytebuffer.order( ByteOrder.nativeOrder() );
-	        lineColorBuffer.put(p.getWireColorVa());
-	        gl2.glUnmapBuffer( GL2.GL_ARRAY_BUFFER );
-        }
+
+	/**
+	 * Rotate view around view Y axis
+	 * @param angley angle in degree
+	 */
+	public void rotateY(final float angley) {
+		final boolean ldd = rotMode == ROT_LDD;
+		changeView(new Runnable() {
+			@Override
+			public void run() {
+				if (ldd) {
+					Point3D o = new Point3D(viewMatrix.transformPoint(0, 0, 0));
+					Point3D y1 = new Point3D(viewMatrix.transformPoint(0, 1, 0));
+					viewMatrix = viewMatrix.transform(JSimpleGeom.axisRotMatrix(o, y1, angley));
+				}
+				else {
+					viewMatrix = viewMatrix.rotateY((float)(angley*Math.PI/180));
+				}
+			}
+		});
+	}
+
+
+	public void resetView() {
+		
+		changeView(new Runnable() {
+			@Override
+			public void run() {
+				viewMatrix = new Matrix3D();	
+			}
+		});
 	}
 	
+	
+
 
 	/**
-	 * Remove VA buffers of a single gadget
-	 * GL context must be already set before call
-	 * @param p gadget to remove
+	 * Add or replace a rendered part from a model
+	 * Updates GL context VA buffers
+	 * @param p rendered part to add (or replace if ID is the same)
+	 */
+	public void addRenderedPart(LDRenderedPart p) {
+		queuePartAction(new QueueAction<LDRenderedPart>(p));
+		requestRedraw();
+	}
+	
+	
+	/**
+	 * Updates colors of an already displayed part.
+	 * <p>
+	 * Only color arrays are sent to GPU, in place of old ones. Part must have
+	 * same ID and same geometry of displayed one (i.e. same part with a different color),
+	 * otherwise it is fully replaced as in {@link #addRenderedPart(LDRenderedPart)}
+	 * @param p rendered part with new colors
+	 */
+	public void updatePartColor(LDRenderedPart p) {
+		queuePartAction(new QueueAction<LDRenderedPart>(p, QActions.COLOR, 0, -1));
+		requestRedraw();
+	}
+	
+	
+	/**
+	 * Updates vertex coordinates of an already displayed part, i.e. a part 
+	 * moved with {@link LDRenderedPart#fastMove(Point3D)} or rotated.
+	 * <p>
+	 * Only vertex arrays are sent to GPU, in place of old ones. Part must have
+	 * same ID and same vertex count of displayed one, 
+	 * otherwise it is fully replaced as in {@link #addRenderedPart(LDRenderedPart)}
+	 * @param p rendered part with new placement
+	 */
+	public void updatePartVertices(LDRenderedPart p) {
+		queuePartAction(new QueueAction<LDRenderedPart>(p, QActions.VERTEX, 0, -1));
+		requestRedraw();
+	}
+	
+	
+	/**
+	 * Updates a range of triangle vertex of an already displayed part.
+	 * <p>
+	 * Coordinates, normals and colors of vertex from <code>first</code> to 
+	 * <code>first+count-1</code> are sent to GPU, the rest of part is left untouched.
+	 * Part must have same ID and same vertex count of displayed one,
+	 * otherwise it is fully replaced as in {@link #addRenderedPart(LDRenderedPart)}
+	 * @param p rendered part with changed vertex
+	 * @param first first triangle vertex to update
+	 * @param count number of vertex to update
 	 */
-	private void delGadgetVA(Gadget3D p, GL2 gl2) {
+	public void updatePartVertexRange(LDRenderedPart p, int first, int count) {
 		
-		if (p.getLineVertexCount() > 0) {
-			gl2.glDeleteBuffers(2, new int[] {p.getLineName(),p.getLineColorName()},0);
-		}
+		if (first < 0 || count < 0 || first + count > p.getTriangleVertexCount())
+			throw new IndexOutOfBoundsException("[LDrawGLDisplay] Vertex range out of part bounds");
+		queuePartAction(new QueueAction<LDRenderedPart>(p, QActions.VERTEX, first, count));
+		requestRedraw();
 	}
-
 	
 	
 	/**
-	 * Add a rendered part to GL context VA buffers
-	 * 
-	 * context must be already set before call
-	 *  
-	 * @param p rendered part
+	 * Remove a rendered part from a model
+	 * Updates GL context VA buffers
+	 * @param p part to remove
 	 */
-	private void addRenderedPartVA(LDRenderedPart p, GL2 gl2) {
+	public void delRenderedPart(int id) {
 		
-		int[] vboArrayNames = new int[2];
-
-		// gets and save array buffer names
-		if (p.getTriangleVertexCount() > 0) {
-	        gl2.glGenBuffers( 2, vboArrayNames, 0 );
-	        p.setTriangleName(vboArrayNames[VERTEX]);
-	        p.setTriangleColorName(vboArrayNames[VERTEX_COLOR]);
-	        // store vertex coords
-	        gl2.glBindBuffer( GL2.GL_ARRAY_BUFFER, p.getTriangleName());
-	        gl2.glBufferData( GL2.GL_ARRAY_BUFFER,
-	                          p.getTrianglesVBO().length * Buffers.SIZEOF_FLOAT,
-	                          null,
-	                          GL2.GL_STATIC_DRAW );
-	        ByteBuffer bytebuffer = gl2.glMapBuffer( GL2.GL_ARRAY_BUFFER, GL2.GL_WRITE_ONLY );
-	        FloatBuffer vertexbuffer = bytebuffer.order( ByteOrder.nativeOrder() ).asFloatBuffer();
-	        vertexbuffer.put(p.getTrianglesVBO());
-	        gl2.glUnmapBuffer( GL2.GL_ARRAY_BUFFER );
-	        // store vertex colors
-	        gl2.glBindBuffer( GL2.GL_ARRAY_BUFFER, p.getTriangleColorName() );
-	        gl2.glBufferData( GL2.GL_ARRAY_BUFFER,
-	                          p.getTriangleColorVA().length * Buffers.SIZEOF_BYTE,
-	                          null,
-	                          GL2.GL_STATIC_DRAW );
-	        bytebuffer = gl2.glMapBuffer( GL2.GL_ARRAY_BUFFER, GL2.GL_WRITE_ONLY );
-	        ByteBuffer vertexColorBuffer = bytebuffer.order( ByteOrder.nativeOrder() );
-	        vertexColorBuffer.put(p.getTriangleColorVA());
-	        gl2.glUnmapBuffer( GL2.GL_ARRAY_BUFFER );
-		}
-        // store line coords
-        if (p.getLineVertexCount() > 0) {
-	        gl2.glGenBuffers( 2, vboArrayNames, 0 );
-	        p.setLineName(vboArrayNames[VERTEX]);
-	        p.setLineColorName(vboArrayNames[VERTEX_COLOR]);
-	        gl2.glBindBuffer( GL2.GL_ARRAY_BUFFER, p.getLineName());
-	        gl2.glBufferData( GL2.GL_ARRAY_BUFFER,
-	                          p.getWireFrameVBO().length * Buffers.SIZEOF_FLOAT,
-	                          null,
-	                          GL2.GL_STATIC_DRAW );
-	        ByteBuffer bytebuffer = gl2.glMapBuffer( GL2.GL_ARRAY_BUFFER, GL2.GL_WRITE_ONLY );
-	        FloatBuffer vertexbuffer = bytebuffer.order( ByteOrder.nativeOrder() ).asFloatBuffer();
-	        vertexbuffer.put(p.getWireFrameVBO());
-	        gl2.glUnmapBuffer( GL2.GL_ARRAY_BUFFER );
-	        // store line colors
-	        gl2.glBindBuffer( GL2.GL_ARRAY_BUFFER, p.getLineColorName());
-	        gl2.glBufferData( GL2.GL_ARRAY_BUFFER,
-	                          p.getWireColorVa().length * Buffers.SIZEOF_BYTE,
-	                          null,
-	                          GL2.GL_STATIC_DRAW );
-	        bytebuffer = gl2.glMapBuffer( GL2.GL_ARRAY_BUFFER, GL2.GL_WRITE_ONLY );
-	        ByteBuffer lineColorBuffer = bytebuffer.order( ByteOrder.nativeOrder() );
-	        lineColorBuffer.put(p.getWireColorVa());
-	        gl2.glUnmapBuffer( GL2.GL_ARRAY_BUFFER );
-        }
-        if (p.getAuxLineVertexCount() > 0) {
-	        gl2.glGenBuffers( 2, vboArrayNames, 0 );
-	        p.setAuxLineName(vboArrayNames[VERTEX]);
-	        p.setAuxLineColorName(vboArrayNames[VERTEX_COLOR]);
-	        gl2.glBindBuffer( GL2.GL_ARRAY_BUFFER, p.getAuxLineName());
-	        gl2.glBufferData( GL2.GL_ARRAY_BUFFER,
-	                          p.getAuxWireFrameVBO().length * Buffers.SIZEOF_FLOAT,
-	                          null,
-	                          GL2.GL_STATIC_DRAW );
-	        ByteBuffer bytebuffer = gl2.glMapBuffer( GL2.GL_ARRAY_BUFFER, GL2.GL_WRITE_ONLY );
-	        FloatBuffer vertexbuffer = bytebuffer.order( ByteOrder.nativeOrder() ).asFloatBuffer();
-	        vertexbuffer.put(p.getAuxWireFrameVBO());
-	        gl2.glUnmapBuffer( GL2.GL_ARRAY_BUFFER );
-	        // store line colors
-	        gl2.glBindBuffer( GL2.GL_ARRAY_BUFFER, p.getAuxLineColorName());
-	        gl2.glBufferData( GL2.GL_ARRAY_BUFFER,
-	                          p.getAuxWireColorVa().length * Buffers.SIZEOF_BYTE,
-	                          null,
-	                          GL2.GL_STATIC_DRAW );
-	        bytebuffer = gl2.glMapBuffer( GL2.GL_ARRAY_BUFFER, GL2.GL_WRITE_ONLY );
-	        ByteBuffer lineColorBuffer = bytebuffer.order( ByteOrder.nativeOrder() );
-	        lineColorBuffer.put(p.getAuxWireColorVa());
-	        gl2.glUnmapBuffer( GL2.GL_ARRAY_BUFFER );
-        }
-        if (p.getBboxCount() > 0) {
-	        gl2.glGenBuffers( 1, vboArrayNames, 0 );
-	        p.setBboxName(vboArrayNames[VERTEX]);
-	        gl2.glBindBuffer( GL2.GL_ARRAY_BUFFER, p.getBboxName());
-	        gl2.glBufferData( GL2.GL_ARRAY_BUFFER,
-	                          p.getBboxVBO().length * Buffers.SIZEOF_FLOAT,
-	                          null,
-	                          GL2.GL_STATIC_DRAW );
-	        ByteBuffer bytebuffer = gl2.glMapBuffer( GL2.GL_ARRAY_BUFFER, GL2.GL_WRITE_ONLY );
-	        FloatBuffer vertexbuffer = bytebuffer.order( ByteOrder.nativeOrder() ).asFloatBuffer();
-	        vertexbuffer.put(p.getBboxVBO());
-	        gl2.glUnmapBuffer( GL2.GL_ARRAY_BUFFER );
-        	
-        }
-
+		//System.out.println("d:"+id);
+		queuePartAction(new QueueAction<LDRenderedPart>(id));
+		requestRedraw();
 	}
 	
-
+	
 	/**
-	 * Remove VA buffers of a single rendered part
-	 * GL context must be already set before call
-	 * @param p rendered part to remove
+	 * Removes all displayed parts, with a single action done by GL thread.
+	 * <p>
+	 * As removing every displayed part one by one: changes queued before clear
+	 * for displayed parts are dropped, parts queued before clear and not yet
+	 * displayed are kept, parts queued after clear are displayed.
 	 */
-	private void delRenderedPartVA(LDRenderedPart p, GL2 gl2) {
+	public synchronized void clearAllParts() {
 		
-		if (p.getLineVertexCount() > 0) {
-			gl2.glDeleteBuffers(2, new int[] {p.getLineName(),p.getLineColorName()},0);
-		}
-		if (p.getAuxLineVertexCount() > 0) {
-			gl2.glDeleteBuffers(2, new int[] {p.getAuxLineName(),p.getAuxLineColorName()},0);
-		}
-		if (p.getTriangleVertexCount() > 0) {
-			gl2.glDeleteBuffers(2, new int[] {p.getTriangleName(),p.getTriangleColorName()},0);
+		queuePartAction(new QueueAction<LDRenderedPart>(QActions.CLEAR));
+		requestRedraw();
+	}
+	
+	
+	
+	/**
+	 * Sends a part action to upload worker, if enabled, or directly to display queue
+	 */
+	private void queuePartAction(QueueAction<LDRenderedPart> a) {
+		
+		UploadWorker w = uploader;
+		if (w != null && w.add(a))
+			return;
+		partAddQueue.offer(a);
+	}
+	
+	
+	
+	public boolean isUploadThreadEnabled() {
+		return uploadThread;
+	}
+	
+	
+	/**
+	 * Enable or disable background part upload.
+	 * <p>
+	 * When enabled, part VBOs are created and filled by a worker thread
+	 * that owns a GL context shared with canvas, so uploads don't compete 
+	 * with rendering and input handling. Worker starts when canvas GL 
+	 * context is available.
+	 * @param enable true to upload parts in background
+	 */
+	public void enableUploadThread(boolean enable) {
+		
+		uploadThread = enable;
+		if (enable) {
+			if (uploader == null && glcontext != null) 
+				uploader = new UploadWorker(glcontext);
 		}
-		if (p.getBboxCount() > 0) {
-			gl2.glDeleteBuffers(1, new int[] {p.getBboxName()},0);
+		else {
+			UploadWorker w = uploader;
+			uploader = null;
+			if (w != null)
+				w.stop();
 		}
 	}
+	
 
 	
+	/**
+	 * Count of part additions and removals still waiting in queue
+	 * <p>
+	 * Queue is processed across many frames, within per-frame upload budget
+	 * @return actions waiting in queue
+	 */
+	public int getPendingPartCount() {
+		
+		UploadWorker w = uploader;
+		return partAddQueue.size() + pendingPartCount + (w != null ? w.size() : 0);
+	}
 	
-
-	public long getDrawTimeMs() {
-		return drawingTime;
+	
+	/**
+	 * Sets time budget for part upload in a single frame. 
+	 * When budget is exhausted, frame renders parts already uploaded 
+	 * and upload continues in next frame.
+	 * @param ms max milliseconds per frame spent to upload parts, 0 means no limit
+	 */
+	public void setUploadTimeBudget(long ms) {
+		
+		if (ms < 0)
+			throw new IllegalArgumentException("[LDrawGLDisplay] Upload time budget cannot be negative");
+		uploadBudgetMs = ms;
 	}
 	
 	
+	public long getUploadTimeBudget() {
+		return uploadBudgetMs;
+	}
 	
 	
-	private void renderScene(GL2 gl2, GLU glu, int width, int height) {
-
-		gl2.glMatrixMode(GL2.GL_PROJECTION);
-        gl2.glLoadIdentity();  // Reset The Projection Matrix
-        //
-        //GLU glu = new GLU();
-        //int width = drawable.getSurfaceWidth();
-        //int height = drawable.getSurfaceHeight() == 0 ? 1 : drawable.getSurfaceHeight();
-        height = height == 0 ? 1 : height;
-        if (perspective) {
-        	glu.gluPerspective(40f, (float)width/height, 1f, 10000f);
-        	glu.gluLookAt(0, 0, -800*zoomFactor, 0, 0, 0, 0, -1, 0);
-        }
-        else {
-        	gl2.glOrthof(-width*zoomFactor/2,width*zoomFactor/2,-height*zoomFactor/2,height*zoomFactor/2, -2000, 2000);
-        	glu.gluLookAt(0, 0, -500, 0, 0, 0, 0, -1, 0);
-        }
-        gl2.glViewport( 0, 0, width, height );
-        
-        gl2.glMatrixMode( GL2.GL_MODELVIEW );
-        gl2.glLoadIdentity();
-        gl2.glMultMatrixf(viewMatrix.getAsOpenGLMatrix(), 0);
-        gl2.glTranslatef(-offsetx, -offsety, -offsetz);
-        
-        if (antialias) {
-        	gl2.glEnable(GL2.GL_LINE_SMOOTH);
-        	gl2.glHint(GL2.GL_LINE_SMOOTH_HINT, GL2.GL_FASTEST);
-        }
-        gl2.glClearColor(0.95f, 0.95f, 0.95f, 1f);    // This Will Clear The Background Color
-        gl2.glClear(GL2.GL_COLOR_BUFFER_BIT | GL2.GL_DEPTH_BUFFER_BIT |
-        		GL2.GL_ACCUM_BUFFER_BIT);    // Clear The Screen And The Depth Buffer
-        gl2.glColorMaterial( GL2.GL_FRONT_AND_BACK, GL2.GL_AMBIENT_AND_DIFFUSE );
-        gl2.glDisable(GL2.GL_LIGHTING);
-        
-        if (bufferOk) {
-            gl2.glEnableClientState( GL2.GL_VERTEX_ARRAY );
-            
-            // renderings
-            
-            // renders polygons
-            if (polygon) {
-                if (lighting)
-                	gl2.glEnable(GL2.GL_LIGHTING);
-	            gl2.glEnableClientState(GL2.GL_COLOR_ARRAY);
-	            gl2.glEnableClientState(GL2.GL_NORMAL_ARRAY);
-		        for (LDRenderedPart p : model.values()) {
-		        	if (p.isHidden() || p.isDimmed()) {
-		        		continue;
-		        	}
-		        	if (p.getTriangleVertexCount() > 0) {
-			            gl2.glBindBuffer( GL2.GL_ARRAY_BUFFER, p.getTriangleName() );
-			            gl2.glVertexPointer( 3, GL2.GL_FLOAT, 6 * Buffers.SIZEOF_FLOAT, 0 );
-			            gl2.glNormalPointer(GL2.GL_FLOAT,6 * Buffers.SIZEOF_FLOAT ,3 * Buffers.SIZEOF_FLOAT);
-			            gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, p.getTriangleColorName());
-			            gl2.glColorPointer( 4, GL2.GL_UNSIGNED_BYTE, 4 * Buffers.SIZEOF_BYTE, 0 );
-			            gl2.glDrawArrays( GL2.GL_TRIANGLES, 0, p.getTriangleVertexCount() );
-			            gl2.glBindBuffer( GL2.GL_ARRAY_BUFFER, 0 );
-		        	}
-
-		        }
-	            gl2.glDisableClientState( GL2.GL_NORMAL_ARRAY );	
-	            gl2.glDisable(GL2.GL_LIGHTING);
-	            gl2.glDisableClientState( GL2.GL_COLOR_ARRAY );
-	        }
-
-            // renders edges
-            if (wireframe) {
-	            gl2.glEnableClientState( GL2.GL_COLOR_ARRAY );
-	            gl2.glLineWidth(1f);
-		        for (LDRenderedPart p : model.values()) {
-		        	if (p.isHidden() || p.isDimmed() || p.isHighLighted()) {
-		        		continue;
-		        	}
-		        	if (LDRenderedPart.isBoundingSelect() || !p.isSelected()) {
-		        		if (p.getLineVertexCount() > 0) {
-				            gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, p.getLineName());
-				            gl2.glVertexPointer( 3, GL2.GL_FLOAT, 3 * Buffers.SIZEOF_FLOAT, 0 );
-				            gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, p.getLineColorName());
-				            gl2.glColorPointer( 4, GL2.GL_UNSIGNED_BYTE, 4 * Buffers.SIZEOF_BYTE, 0 );
-				            gl2.glDrawArrays( GL2.GL_LINES, 0, p.getLineVertexCount() );
-				            gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, 0);
-		        		}
-			            if (!polygon && p.getAuxLineVertexCount() > 0) {
-			            	// display aux lines only if polygons are hidden
-				            gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, p.getAuxLineName());
-				            gl2.glVertexPointer( 3, GL2.GL_FLOAT, 3 * Buffers.SIZEOF_FLOAT, 0 );
-				            gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, p.getAuxLineColorName());
-				            gl2.glColorPointer( 4, GL2.GL_UNSIGNED_BYTE, 4 * Buffers.SIZEOF_BYTE, 0 );
-				            gl2.glDrawArrays( GL2.GL_LINES, 0, p.getAuxLineVertexCount() );
-				            gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, 0);
-			            }
-		            }
-		        }
-	            gl2.glDisableClientState( GL2.GL_COLOR_ARRAY );
-            }
+	/**
+	 * Sets size budget for part upload in a single frame.
+	 * @param bytes max bytes per frame uploaded to GPU, 0 means no limit
+	 * @see #setUploadTimeBudget(long)
+	 */
+	public void setUploadBytesBudget(long bytes) {
+		
+		if (bytes < 0)
+			throw new IllegalArgumentException("[LDrawGLDisplay] Upload size budget cannot be negative");
+		uploadBudgetBytes = bytes;
+	}
+	
+	
+	public long getUploadBytesBudget() {
+		return uploadBudgetBytes;
+	}
+	
+	
+	/**
+	 * Sets an object to notify of part upload progress.
+	 * <p>
+	 * Progress is notified from GL thread, receiver must handle
+	 * GUI updates in its own thread
+	 * @param p progress receiver, or null to disable
+	 */
+	public void setUploadProgress(ProgressUpdater p) {
+		
+		uploadProgress = p;
+	}
+	
+	
+	
+	public LDRenderedPart getPart(int id) {
+		
+		return scene.getPart(id);
+	}
+	
+	
+	
+	/**
+	 * Gets parts and gadgets displayed in last frame that changed them.
+	 * <p>
+	 * Snapshot is immutable, can be read from any thread without locks.
+	 * Changes queued and not yet displayed aren't in snapshot.
+	 * @return last published scene
+	 */
+	public SceneSnapshot getScene() {
+		
+		return scene;
+	}
+	
+	
+	
+	/**
+	 * Publishes view of displayed frame if it changed. 
+	 * Must be called by GL thread after drawing.
+	 */
+	private void publishFrameView() {
+		
+		float[] vm = viewMatrix.getAsOpenGLMatrix();
+		int h = canvasHeight;
+		FrameView fv = frameView;
+		if (fv != null && fv.isSame(projectionMatrix, modelViewMatrix, vm, viewPort, h))
+			return;
+		frameView = new FrameView(projectionMatrix, modelViewMatrix, vm, viewPort, h);
+	}
+	
+	
+	
+	/**
+	 * Publishes a new scene snapshot if parts, part states or gadgets changed.
+	 * Parts with changed state are taken from state log, and reported to 
+	 * state buffer too. Must be called by GL thread.
+	 */
+	private void publishScene() {
+		
+		LDRenderedPart p;
+		while ((p = stateLog.pollChanged()) != null) {
+			if (model.get(p.getId()) == p)
+				partStates = partStates.put(p.getId(), SceneSnapshot.getState(p));
+			if (partState != null)
+				partState.changed(p);
+		}
+		if (!gadgetsChanged && model == sceneModel && partStates == sceneStates)
+			return;
+		if (model != sceneModel)
+			scenePartEpoch++;
+		// only changed maps are copied, parts maps are shared
+		scene = scene.next(scenePartEpoch, model, partStates, gadgetsChanged ? gadgets : null, 
+				sceneShrunk ? null : sceneAdded);
+		sceneModel = model;
+		sceneStates = partStates;
+		sceneAdded.clear();
+		sceneShrunk = false;
+		gadgetsChanged = false;
+	}
+	
+	
+	
+	/**
+	 * Puts a part in model, with its state
+	 * @return replaced part, null if none
+	 */
+	private LDRenderedPart putPart(LDRenderedPart p) {
+		
+		LDRenderedPart r = model.get(p.getId());
+		model = model.put(p.getId(), p);
+		partStates = partStates.put(p.getId(), SceneSnapshot.getState(p));
+		return r;
+	}
+	
+	
+	
+	/**
+	 * Removes a part from model
+	 * @return removed part, null if none
+	 */
+	private LDRenderedPart removePart(int id) {
+		
+		LDRenderedPart r = model.get(id);
+		model = model.remove(id);
+		partStates = partStates.remove(id);
+		sceneShrunk = true;
+		return r;
+	}
+	
+	
+
+
+	/////////////////////////////////
+	// Gadgets
+	/////////////////////////////////
+
+	public synchronized void addGadget(Gadget3D g) {
+		
+		gadgetAddQueue.offer(new QueueAction<Gadget3D>(g));
+		requestRedraw();
+		
+	}
+	
+	
+	public synchronized void removeGadget(Integer g) {
+		gadgetAddQueue.offer(new QueueAction<Gadget3D>(g));
+		requestRedraw();
+	}
+	
+	
+	
+	/**
+	 * removes all gadgets where ID >= 0 
+	 * excluding drawing helper gadgets (grid, axis, pointer...)
+	 */
+	public synchronized void clearGadgets() {
+
+		// display removes gadgets, and drops adding gadgets queued before clear
+		gadgetAddQueue.offer(new QueueAction<Gadget3D>(QActions.CLEAR));
+		requestRedraw();
+	}
+	
+	
+	
+	public Gadget3D getGadget(int id) {
+		return scene.getGadget(id);
+	}
+	
+	
+	public void hideGadget(Gadget3D g) {
+		
+		Gadget3D p = scene.getGadget(g.getId());
+		if (p != null) {
+			p.hide();
+			requestRedraw();
+		}
+	}
+	
+	
+
+	public void showGadget(Gadget3D g) {
+		
+		Gadget3D p = scene.getGadget(g.getId());
+		if (p != null) {
+			p.show();
+			requestRedraw();
+		}
+	}
+	
+	
+	
+	public void selectGadget(int id) {
+		scene.getGadget(id).select();
+	}
+	
+	
+	
+	public void unselectGadget(int id) {
+		scene.getGadget(id).unSelect();
+	}
+	
+
+
+	/**
+	 * checks available OpenGL profile
+	 */
+	public static String checkGL() {
+		
+		GLProfile glp = GLProfile.getDefault();
+		return glp.getName();
+	}
+	
+	
+	//////////////////////////////////////
+	// selection and selection listeners
+	//////////////////////////////////////
+	
+	public boolean isSelectionEnabled() {
+		return selection;
+	}
+
+
+	public void enableSelection(boolean selection) {
+		this.selection = selection;
+	}
+
+	
+	public void addPickListener(HandlingListener p) {
+		
+		if (p == null) 
+			throw new NullPointerException("[LDrawGLDisplay] Cannot use a null SelectionListener");
+		// avoid duplicate insert
+		if (handlingListeners.contains(p))
+			return;
+		handlingListeners.add(p);
+	}
+
+
+	
+	public void removePickListener(HandlingListener p) {
+		
+		handlingListeners.remove(p);
+	}
+	
+	
+	
+	/**
+	 * Sends a selection of many parts to pick listeners as a single event.
+	 * <p>
+	 * A {@link BatchHandlingListener} gets one call with all parts, other 
+	 * listeners get a call for every part.
+	 * Used by window selection, can be used for programmatic selections.
+	 * Must be called from GUI thread.
+	 * @param ids selected parts
+	 * @param mode picking mode for all parts
+	 */
+	public void notifyPicked(final int[] ids, final PickMode mode) {
+		
+		if (ids.length == 0)
+			return;
+		dispatch(new Runnable() {
+			@Override
+			public void run() {
+				for (HandlingListener hl:handlingListeners) {
+					if (hl instanceof BatchHandlingListener) {
+						((BatchHandlingListener) hl).pickedAll(ids, mode);
+					}
+					else {
+						for (int id : ids) {
+							hl.picked(id, null,null, mode);
+						}
+					}
+				}
+			}
+		}, false);
+	}
+	
+	
+	
+	/**
+	 * Gets executor for listener calls
+	 * @return executor, null if listeners are called synchronously
+	 */
+	public Executor getListenerExecutor() {
+		
+		ListenerDispatcher d = dispatcher;
+		return d != null ? d.getExecutor() : null;
+	}
+	
+	
+	
+	/**
+	 * Sets an executor for listener calls, so slow listeners don't delay 
+	 * input and drawing.
+	 * <p>
+	 * Events are delivered in order, one at a time, also with a multithreaded
+	 * executor. Cursor moves are coalesced: if listeners are late, only last 
+	 * move is delivered. Listeners must not assume to run in GUI thread.
+	 * By default listeners are called synchronously, in GUI thread.
+	 * @param executor executor (i.e. a single thread executor), null to call 
+	 * listeners synchronously
+	 */
+	public void setListenerExecutor(Executor executor) {
+		
+		dispatcher = executor != null ? new ListenerDispatcher(executor) : null;
+	}
+	
+	
+	
+	/**
+	 * Calls listeners, at once or with dispatcher
+	 * @param event listener calls
+	 * @param latest true if event can be replaced by a newer one not yet delivered
+	 */
+	private void dispatch(Runnable event, boolean latest) {
+		
+		ListenerDispatcher d = dispatcher;
+		if (d == null) {
+			event.run();
+		}
+		else if (latest) {
+			d.postLatest(event);
+		}
+		else {
+			d.post(event);
+		}
+	}
+	
+	
+	
+	private void firePicked(final int id, final Point3D eyeNear, final Point3D eyeFar, final PickMode mode) {
+		
+		dispatch(new Runnable() {
+			@Override
+			public void run() {
+				for (HandlingListener p:handlingListeners) {
+					p.picked(id, eyeNear,eyeFar, mode);
+				}
+			}
+		}, false);
+	}
+	
+	
+	
+	/**
+	 * Sends cursor move to listeners, with point under cursor to hit point listeners
+	 * @param id part under cursor
+	 * @param eyeNear ray point near to user
+	 * @param eyeFar ray point far from user
+	 * @param hitKnown true if hit point was computed
+	 * @param hit hit, null if none
+	 */
+	private void fireMoved(final int id, final Point3D eyeNear, final Point3D eyeFar, 
+			final boolean hitKnown, RayHit hit) {
+		
+		final Point3D point = hit != null ? hit.getPoint() : null;
+		final Point3D normal = hit != null ? hit.getNormal() : null;
+		dispatch(new Runnable() {
+			@Override
+			public void run() {
+				for (HandlingListener p:handlingListeners) {
+					p.moved(id, eyeNear,eyeFar);
+				}
+				if (!hitKnown)
+					return;
+				for (HandlingListener p:handlingListeners) {
+					if (p instanceof HitPointListener)
+						((HitPointListener) p).hitPoint(id, point, normal);
+				}
+			}
+		}, true);
+	}
+	
+	
+	
+	private void fireStartDragParts(final int id) {
+		
+		dispatch(new Runnable() {
+			@Override
+			public void run() {
+				for (HandlingListener p:handlingListeners) {
+					p.startDragParts(id);
+				}
+			}
+		}, false);
+	}
+	
+	
+	
+	private void fireEndDragSelectionWindow() {
+		
+		dispatch(new Runnable() {
+			@Override
+			public void run() {
+				for (HandlingListener p:handlingListeners) {
+					p.endDragSelectionWindow();
+				}
+			}
+		}, false);
+	}
+	
+	
+	
+	private void fireHoverChange(final int old, final int id) {
+		
+		dispatch(new Runnable() {
+			@Override
+			public void run() {
+				for (HandlingListener p:handlingListeners) {
+					if (!(p instanceof HoverListener))
+						continue;
+					if (old != 0)
+						((HoverListener) p).hoverExit(old);
+					if (id != 0)
+						((HoverListener) p).hoverEnter(id);
+				}
+			}
+		}, false);
+	}
+	
+	
+	/**
+	 * Fills a VBO with float data, reusing a buffer in place if data fits.
+	 * Old storage is orphaned, so GPU can still use it for frames in flight
+	 * 
+	 * context must be already set before call
+	 * 
+	 * @param reuse buffer name to reuse, 0 if none
+	 * @return buffer name that contains data
+	 */
+	private static int fillBuffer(GL2 gl2, BufferPool pool, int reuse, float[] data) {
+		
+		int name = pool.reuse(gl2, reuse, data.length * Buffers.SIZEOF_FLOAT);
+        gl2.glBindBuffer( GL2.GL_ARRAY_BUFFER, name);
+        gl2.glBufferData( GL2.GL_ARRAY_BUFFER,
+                          pool.capacity(name),
+                          null,
+                          GL2.GL_STATIC_DRAW );
+        ByteBuffer bytebuffer = gl2.glMapBuffer( GL2.GL_ARRAY_BUFFER, GL2.GL_WRITE_ONLY );
+        FloatBuffer vertexbuffer = bytebuffer.order( ByteOrder.nativeOrder() ).asFloatBuffer();
+        vertexbuffer.put(data);
+        gl2.glUnmapBuffer( GL2.GL_ARRAY_BUFFER );
+        return name;
+	}
+	
+	
+	/**
+	 * Fills a VBO with byte data, reusing a buffer in place if data fits.
+	 * @see #fillBuffer(GL2, BufferPool, int, float[])
+	 */
+	private static int fillBuffer(GL2 gl2, BufferPool pool, int reuse, byte[] data) {
+		
+		int name = pool.reuse(gl2, reuse, data.length * Buffers.SIZEOF_BYTE);
+        gl2.glBindBuffer( GL2.GL_ARRAY_BUFFER, name);
+        gl2.glBufferData( GL2.GL_ARRAY_BUFFER,
+                          pool.capacity(name),
+                          null,
+                          GL2.GL_STATIC_DRAW );
+        ByteBuffer bytebuffer = gl2.glMapBuffer( GL2.GL_ARRAY_BUFFER, GL2.GL_WRITE_ONLY );
+        bytebuffer.order( ByteOrder.nativeOrder() ).put(data);
+        gl2.glUnmapBuffer( GL2.GL_ARRAY_BUFFER );
+        return name;
+	}
+	
+	
+	/**
+	 * Add a gadget to GL context VA buffers
+	 * 
+	 * context must be already set before call
+	 *  
+	 * @param p gadget to add
+	 * @param old gadget replaced by new one, its buffers are reused if possible. Can be null
+	 */
+	private void addGadgetVA(Gadget3D p, Gadget3D old, GL2 gl2, BufferPool pool) {
+		
+		int line = 0, lineColor = 0;
+		if (old != null && old.getLineVertexCount() > 0) {
+			line = old.getLineName();
+			lineColor = old.getLineColorName();
+		}
+		// gets and save array buffer names
+        if (p.getLineVertexCount() > 0) {
+	        p.setLineName(fillBuffer(gl2, pool, line, p.getWireFrameVBO()));
+	        p.setLineColorName(fillBuffer(gl2, pool, lineColor, p.getWireColorVa()));
+	        gl2.glBindBuffer( GL2.GL_ARRAY_BUFFER, 0);
+        }
+        else {
+        	pool.release(gl2, line);
+        	pool.release(gl2, lineColor);
+        }
+	}
+	
+
+	/**
+	 * Remove VA buffers of a single gadget
+	 * GL context must be already set before call
+	 * @param p gadget to remove
+	 */
+	private void delGadgetVA(Gadget3D p, GL2 gl2, BufferPool pool) {
+		
+		if (p.getLineVertexCount() > 0) {
+			pool.release(gl2, p.getLineName());
+			pool.release(gl2, p.getLineColorName());
+		}
+	}
+
+	
+	
+	/**
+	 * Removes all gadgets where ID >= 0 from GL context
+	 */
+	private void clearGadgetsVA(GL2 gl2, BufferPool pool) {
+		
+		Iterator<Gadget3D> i = gadgets.values().iterator();
+		while (i.hasNext()) {
+			Gadget3D g = i.next();
+			if (g.getId() >= 0) {
+				delGadgetVA(g, gl2, pool);
+				i.remove();
+				gadgetsChanged = true;
+			}
+		}
+	}
+
+	
+	
+	/**
+	 * Add a rendered part to GL context VA buffers
+	 * <p>
+	 * If part replaces an old one (i.e. same id, moved or rotated) 
+	 * old buffers are reused in place when new geometry fits, 
+	 * and returned to pool otherwise.
+	 * 
+	 * context must be already set before call
+	 *  
+	 * @param p rendered part
+	 * @param old part replaced by new one, can be null
+	 */
+	private void addRenderedPartVA(LDRenderedPart p, LDRenderedPart old, GL2 gl2, BufferPool pool) {
+		
+		int tri = 0, triColor = 0, line = 0, lineColor = 0, aux = 0, auxColor = 0, bbox = 0;
+		if (old != null) {
+			if (old.getTriangleVertexCount() > 0) {
+				tri = old.getTriangleName();
+				triColor = old.getTriangleColorName();
+			}
+			if (old.getLineVertexCount() > 0) {
+				line = old.getLineName();
+				lineColor = old.getLineColorName();
+			}
+			if (old.getAuxLineVertexCount() > 0) {
+				aux = old.getAuxLineName();
+				auxColor = old.getAuxLineColorName();
+			}
+			if (old.getBboxCount() > 0) {
+				bbox = old.getBboxName();
+			}
+		}
+		// gets and save array buffer names
+		if (p.getTriangleVertexCount() > 0) {
+	        // store vertex coords and colors
+	        p.setTriangleName(fillBuffer(gl2, pool, tri, p.getTrianglesVBO()));
+	        p.setTriangleColorName(fillBuffer(gl2, pool, triColor, p.getTriangleColorVA()));
+		}
+		else {
+			pool.release(gl2, tri);
+			pool.release(gl2, triColor);
+		}
+        // store line coords
+        if (p.getLineVertexCount() > 0) {
+	        p.setLineName(fillBuffer(gl2, pool, line, p.getWireFrameVBO()));
+	        p.setLineColorName(fillBuffer(gl2, pool, lineColor, p.getWireColorVa()));
+        }
+        else {
+        	pool.release(gl2, line);
+        	pool.release(gl2, lineColor);
+        }
+        if (p.getAuxLineVertexCount() > 0) {
+	        p.setAuxLineName(fillBuffer(gl2, pool, aux, p.getAuxWireFrameVBO()));
+	        p.setAuxLineColorName(fillBuffer(gl2, pool, auxColor, p.getAuxWireColorVa()));
+        }
+        else {
+        	pool.release(gl2, aux);
+        	pool.release(gl2, auxColor);
+        }
+        if (p.getBboxCount() > 0) {
+	        p.setBboxName(fillBuffer(gl2, pool, bbox, p.getBboxVBO()));
+        }
+        else {
+        	pool.release(gl2, bbox);
+        }
+        gl2.glBindBuffer( GL2.GL_ARRAY_BUFFER, 0);
+	}
+	
+
+	/**
+	 * Remove VA buffers of a single rendered part, buffers are returned to pool
+	 * GL context must be already set before call
+	 * @param p rendered part to remove
+	 */
+	private void delRenderedPartVA(LDRenderedPart p, GL2 gl2, BufferPool pool) {
+		
+		if (p.getLineVertexCount() > 0) {
+			pool.release(gl2, p.getLineName());
+			pool.release(gl2, p.getLineColorName());
+		}
+		if (p.getAuxLineVertexCount() > 0) {
+			pool.release(gl2, p.getAuxLineName());
+			pool.release(gl2, p.getAuxLineColorName());
+		}
+		if (p.getTriangleVertexCount() > 0) {
+			pool.release(gl2, p.getTriangleName());
+			pool.release(gl2, p.getTriangleColorName());
+		}
+		if (p.getBboxCount() > 0) {
+			pool.release(gl2, p.getBboxName());
+		}
+	}
+	
+
+	/**
+	 * Updates VA buffers of a part in place, with glBufferSubData. 
+	 * New part takes buffers of old one, that must have same vertex counts.
+	 * 
+	 * context must be already set before call
+	 * 
+	 * @param p new rendered part
+	 * @param old displayed part with same ID
+	 * @param colors if true updates colors only, vertex coords only otherwise
+	 * @param first first triangle vertex for a range update
+	 * @param count vertex count for a range update, < 0 for whole part
+	 * @return bytes sent to GPU
+	 */
+	private long updateRenderedPartVA(LDRenderedPart p, LDRenderedPart old, 
+			boolean colors, int first, int count, GL2 gl2) {
+		
+		p.setTriangleName(old.getTriangleName());
+		p.setTriangleColorName(old.getTriangleColorName());
+		p.setLineName(old.getLineName());
+		p.setLineColorName(old.getLineColorName());
+		p.setAuxLineName(old.getAuxLineName());
+		p.setAuxLineColorName(old.getAuxLineColorName());
+		p.setBboxName(old.getBboxName());
+		long bytes = 0;
+		if (count >= 0) {
+			// triangle vertex range, coords with normals and colors
+			if (count > 0) {
+				bytes += subData(gl2, p.getTriangleName(), p.getTrianglesVBO(), first*6, count*6);
+				bytes += subData(gl2, p.getTriangleColorName(), p.getTriangleColorVA(), first*4, count*4);
+			}
+		}
+		else if (colors) {
+			if (p.getTriangleVertexCount() > 0)
+				bytes += subData(gl2, p.getTriangleColorName(), p.getTriangleColorVA(), 0, p.getTriangleColorVA().length);
+			if (p.getLineVertexCount() > 0)
+				bytes += subData(gl2, p.getLineColorName(), p.getWireColorVa(), 0, p.getWireColorVa().length);
+			if (p.getAuxLineVertexCount() > 0)
+				bytes += subData(gl2, p.getAuxLineColorName(), p.getAuxWireColorVa(), 0, p.getAuxWireColorVa().length);
+		}
+		else {
+			if (p.getTriangleVertexCount() > 0)
+				bytes += subData(gl2, p.getTriangleName(), p.getTrianglesVBO(), 0, p.getTrianglesVBO().length);
+			if (p.getLineVertexCount() > 0)
+				bytes += subData(gl2, p.getLineName(), p.getWireFrameVBO(), 0, p.getWireFrameVBO().length);
+			if (p.getAuxLineVertexCount() > 0)
+				bytes += subData(gl2, p.getAuxLineName(), p.getAuxWireFrameVBO(), 0, p.getAuxWireFrameVBO().length);
+			if (p.getBboxCount() > 0)
+				bytes += subData(gl2, p.getBboxName(), p.getBboxVBO(), 0, p.getBboxVBO().length);
+		}
+        gl2.glBindBuffer( GL2.GL_ARRAY_BUFFER, 0);
+        return bytes;
+	}
+	
+	
+	
+	/**
+	 * Scratch buffer for partial updates with at least requested capacity, 
+	 * grows when needed and is never shrunk
+	 */
+	private void growSubDataBuffer(int bytes) {
+		
+		if (subDataBytes.capacity() >= bytes)
+			return;
+		subDataBytes = Buffers.newDirectByteBuffer(Math.max(bytes, subDataBytes.capacity()*2));
+		subDataFloats = subDataBytes.asFloatBuffer();
+	}
+	
+	
+	
+	private long subData(GL2 gl2, int name, float[] data, int offset, int len) {
+		
+		growSubDataBuffer(len * Buffers.SIZEOF_FLOAT);
+		FloatBuffer b = subDataFloats;
+		b.clear();
+		b.put(data, offset, len);
+		b.flip();
+        gl2.glBindBuffer( GL2.GL_ARRAY_BUFFER, name);
+        gl2.glBufferSubData( GL2.GL_ARRAY_BUFFER, 
+        		offset * Buffers.SIZEOF_FLOAT, len * Buffers.SIZEOF_FLOAT, b);
+        return len * Buffers.SIZEOF_FLOAT;
+	}
+	
+	
+	
+	private long subData(GL2 gl2, int name, byte[] data, int offset, int len) {
+		
+		growSubDataBuffer(len);
+		ByteBuffer b = subDataBytes;
+		b.clear();
+		b.put(data, offset, len);
+		b.flip();
+        gl2.glBindBuffer( GL2.GL_ARRAY_BUFFER, name);
+        gl2.glBufferSubData( GL2.GL_ARRAY_BUFFER, offset, len, b);
+        return len;
+	}
+
+	
+	
+
+	public long getDrawTimeMs() {
+		return drawingTime;
+	}
+	
+	
+	
+	
+	private void renderScene(GL2 gl2, GLU glu, int width, int height) {
+
+		if (shaders != null && gl2 == currentGL2) {
+			// shader program lives in canvas context only
+			renderSceneShaders(gl2.getGL3(), width, height);
+			return;
+		}
+		gl2.glMatrixMode(GL2.GL_PROJECTION);
+        gl2.glLoadIdentity();  // Reset The Projection Matrix
+        //
+        //GLU glu = new GLU();
+        //int width = drawable.getSurfaceWidth();
+        //int height = drawable.getSurfaceHeight() == 0 ? 1 : drawable.getSurfaceHeight();
+        height = height == 0 ? 1 : height;
+        if (perspective) {
+        	glu.gluPerspective(40f, (float)width/height, 1f, 10000f);
+        	glu.gluLookAt(0, 0, -800*zoomFactor, 0, 0, 0, 0, -1, 0);
+        }
+        else {
+        	gl2.glOrthof(-width*zoomFactor/2,width*zoomFactor/2,-height*zoomFactor/2,height*zoomFactor/2, -2000, 2000);
+        	glu.gluLookAt(0, 0, -500, 0, 0, 0, 0, -1, 0);
+        }
+        gl2.glViewport( 0, 0, width, height );
+        
+        gl2.glMatrixMode( GL2.GL_MODELVIEW );
+        gl2.glLoadIdentity();
+        gl2.glMultMatrixf(viewMatrix.getAsOpenGLMatrix(), 0);
+        gl2.glTranslatef(-offsetx, -offsety, -offsetz);
+        
+        if (antialias) {
+        	gl2.glEnable(GL2.GL_LINE_SMOOTH);
+        	gl2.glHint(GL2.GL_LINE_SMOOTH_HINT, GL2.GL_FASTEST);
+        }
+        gl2.glClearColor(0.95f, 0.95f, 0.95f, 1f);    // This Will Clear The Background Color
+        gl2.glClear(GL2.GL_COLOR_BUFFER_BIT | GL2.GL_DEPTH_BUFFER_BIT |
+        		GL2.GL_ACCUM_BUFFER_BIT);    // Clear The Screen And The Depth Buffer
+        gl2.glColorMaterial( GL2.GL_FRONT_AND_BACK, GL2.GL_AMBIENT_AND_DIFFUSE );
+        gl2.glDisable(GL2.GL_LIGHTING);
+        
+        if (bufferOk) {
+        	drawLists.update(model.values());
+            gl2.glEnableClientState( GL2.GL_VERTEX_ARRAY );
             
-            // renders highlights
-            gl2.glLineWidth(3f);
-	        for (LDRenderedPart p : model.values()) {
-	        	if (p.isHidden()) {
-	        		continue;
-	        	}
-	            if (p.isHighLighted()) {
-	            	gl2.glColor4f(0.95f, 0.4f, 0.4f,1f);
-	            	// if is bounding is selected, use edges to highlight
-		            if (LDRenderedPart.isBoundingSelect()) {
-			            if (p.getLineVertexCount() > 0) {
-				            gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, p.getLineName());
-				            gl2.glVertexPointer( 3, GL2.GL_FLOAT, 3 * Buffers.SIZEOF_FLOAT, 0 );
-				            gl2.glDrawArrays( GL2.GL_LINES, 0, p.getLineVertexCount() );
-				            gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, 0);
-			            }
-		            }	// bounding disabled, use bounding boxes to highlight
-		            else {
-			            gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, p.getBboxName());
-			            gl2.glVertexPointer( 3, GL2.GL_FLOAT, 3 * Buffers.SIZEOF_FLOAT, 0 );
-			            gl2.glDrawArrays( GL2.GL_LINES, 0, p.getBboxCount() );
-			            gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, 0);		            	
-		            }
-	            }
-//	        	if (p.getId() == partHoverId && partHover) {
-//		            gl2.glColor4f(0.9f, 0.3f, 0.9f,1f);
-//		            gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, p.getBboxName());
-//		            gl2.glVertexPointer( 3, GL2.GL_FLOAT, 3 * Buffers.SIZEOF_FLOAT, 0 );
-//		            gl2.glDrawArrays( GL2.GL_LINES, 0, p.getBboxCount() );
-//		            gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, 0);
-//	        	}
-	            if (p.isConnected()) {
-		            gl2.glColor4f(1f, 0.7f, 0.6f,1f);
-		            if (LDRenderedPart.isBoundingSelect()) {
-		            	// selection is by bounding box
-			            gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, p.getBboxName());
-			            gl2.glVertexPointer( 3, GL2.GL_FLOAT, 3 * Buffers.SIZEOF_FLOAT, 0 );
-			            gl2.glDrawArrays( GL2.GL_LINES, 0, p.getBboxCount() );
-			            gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, 0);
-		            }
-	            }
-	            else if (p.isSelected()) {
-		            gl2.glColor4f(0.6f, 1f, 0.5f,1f);
-		            if (LDRenderedPart.isBoundingSelect()) {
-		            	// selection is by bounding box
-			            gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, p.getBboxName());
-			            gl2.glVertexPointer( 3, GL2.GL_FLOAT, 3 * Buffers.SIZEOF_FLOAT, 0 );
-			            gl2.glDrawArrays( GL2.GL_LINES, 0, p.getBboxCount() );
-			            gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, 0);
-		            }
-		            else {
-		            	// selection is by edges and aux lines
-			            if (p.getLineVertexCount() > 0) {
-				            gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, p.getLineName());
-				            gl2.glVertexPointer( 3, GL2.GL_FLOAT, 3 * Buffers.SIZEOF_FLOAT, 0 );
-				            gl2.glDrawArrays( GL2.GL_LINES, 0, p.getLineVertexCount() );
-				            gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, 0);
-			            }
-			            if (p.getAuxLineVertexCount() > 0) {
-				            gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, p.getAuxLineName());
-				            gl2.glVertexPointer( 3, GL2.GL_FLOAT, 3 * Buffers.SIZEOF_FLOAT, 0 );
-				            gl2.glDrawArrays( GL2.GL_LINES, 0, p.getAuxLineVertexCount() );
-				            gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, 0);
-			            }
-		            }
-	        	}
-//	            gl2.glEnableClientState( GL2.GL_COLOR_ARRAY );
-//	            gl2.glLineWidth(1f);
-//	        	if (wireframe && !p.isHighLighted() && !p.isDimmed() &&
-//	        			(LDRenderedPart.isBoundingSelect() || !p.isSelected())) {
-//	        		if (p.getLineVertexCount() > 0) {
-//			            gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, p.getLineName());
-//			            gl2.glVertexPointer( 3, GL2.GL_FLOAT, 3 * Buffers.SIZEOF_FLOAT, 0 );
-//			            gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, p.getLineColorName());
-//			            gl2.glColorPointer( 4, GL2.GL_UNSIGNED_BYTE, 4 * Buffers.SIZEOF_BYTE, 0 );
-//			            gl2.glDrawArrays( GL2.GL_LINES, 0, p.getLineVertexCount() );
-//			            gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, 0);
-//	        		}
-//		            if (!polygon && p.getAuxLineVertexCount() > 0) {
-//		            	// display aux lines only if polygons are hidden
-//			            gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, p.getAuxLineName());
-//			            gl2.glVertexPointer( 3, GL2.GL_FLOAT, 3 * Buffers.SIZEOF_FLOAT, 0 );
-//			            gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, p.getAuxLineColorName());
-//			            gl2.glColorPointer( 4, GL2.GL_UNSIGNED_BYTE, 4 * Buffers.SIZEOF_BYTE, 0 );
-//			            gl2.glDrawArrays( GL2.GL_LINES, 0, p.getAuxLineVertexCount() );
-//			            gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, 0);
-//		            }
-//	            }
-//	            gl2.glDisableClientState( GL2.GL_COLOR_ARRAY );
-	        }
+            if (sceneCache && gl2 == currentGL2) {
+            	// replay static scene, recording it again only if draw lists or settings 
+            	// changed since last recording, not when another context used draw lists
+            	partLists.refresh(gl2);
+            	if (sceneListSerial != drawLists.getListSerial() || sceneListSettings != sceneSettings) {
+            		compileSceneLists(gl2);
+            	}
+            	gl2.glCallList(sceneList);
+            	// highlights follow part state, they aren't cached
+            	gl2.glLineWidth(3f);
+            	renderHighlights(gl2);
+            }
+            else {
+            	renderParts(gl2);
+            }
 
 	        // rendering gadgets
             gl2.glEnableClientState( GL2.GL_COLOR_ARRAY );
@@ -967,99 +2157,1216 @@ public class LDrawGLDisplay implements GLEventListener, MouseListener, MouseMoti
 			            gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, p.getLineColorName());
 			            gl2.glColorPointer( 4, GL2.GL_UNSIGNED_BYTE, 4 * Buffers.SIZEOF_BYTE, 0 );
 			            gl2.glDrawArrays( GL2.GL_LINES, 0, p.getLineVertexCount() );
-			            gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, 0);
-	            	}
+			            gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, 0);
+	            	}
+	            }
+	        }
+        }
+        gl2.glDisableClientState( GL2.GL_COLOR_ARRAY );
+        
+        // hover part rendering
+        LDRenderedPart h = model.get(partHoverId);
+    	if (partHover && h != null) {
+    		gl2.glLineWidth(3f);
+            gl2.glColor4f(0.9f, 0.3f, 0.9f,1f);
+            gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, h.getBboxName());
+            gl2.glVertexPointer( 3, GL2.GL_FLOAT, 3 * Buffers.SIZEOF_FLOAT, 0 );
+            gl2.glDrawArrays( GL2.GL_LINES, 0, h.getBboxCount() );
+            gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, 0);
+    	}
+    	
+    	gl2.glLineWidth(1f);
+        
+    	// dimmed parts rendering
+        // MUST be last to allow blending works with transparency
+        if (lighting)
+        	gl2.glEnable(GL2.GL_LIGHTING);
+        gl2.glEnableClientState(GL2.GL_NORMAL_ARRAY);
+        if (bufferOk) {
+        	if (sceneCache && gl2 == currentGL2) {
+        		gl2.glCallList(dimmedList);
+        	}
+        	else {
+        		renderDimmed(gl2);
+        	}
+        }
+        gl2.glDisableClientState( GL2.GL_NORMAL_ARRAY );	
+        gl2.glDisable(GL2.GL_LIGHTING);	        		
+        
+        
+        gl2.glDisableClientState( GL2.GL_VERTEX_ARRAY );
+
+	}
+	
+	
+	
+	/**
+	 * Renders scene with shader renderer.
+	 * <p>
+	 * Parts are drawn by slot, and shader reads part state from part state buffer,
+	 * so a state change updates only a byte in GPU, and no draw list.
+	 */
+	private void renderSceneShaders(GL3 gl3, int width, int height) {
+		
+        height = height == 0 ? 1 : height;
+        pmv.glMatrixMode(GLMatrixFunc.GL_PROJECTION);
+        pmv.glLoadIdentity();
+        if (perspective) {
+        	pmv.gluPerspective(40f, (float)width/height, 1f, 10000f);
+        	pmv.gluLookAt(0, 0, -800*zoomFactor, 0, 0, 0, 0, -1, 0);
+        }
+        else {
+        	pmv.glOrthof(-width*zoomFactor/2,width*zoomFactor/2,-height*zoomFactor/2,height*zoomFactor/2, -2000, 2000);
+        	pmv.gluLookAt(0, 0, -500, 0, 0, 0, 0, -1, 0);
+        }
+        pmv.glMatrixMode(GLMatrixFunc.GL_MODELVIEW);
+        pmv.glLoadIdentity();
+        pmv.glMultMatrixf(viewMatrix.getAsOpenGLMatrix(), 0);
+        pmv.glTranslatef(-offsetx, -offsety, -offsetz);
+        pmv.glGetFloatv(GLMatrixFunc.GL_PROJECTION_MATRIX, projectionMatrix, 0);
+        pmv.glGetFloatv(GLMatrixFunc.GL_MODELVIEW_MATRIX, modelViewMatrix, 0);
+        gl3.glViewport( 0, 0, width, height );
+        
+        if (antialias) {
+        	gl3.glEnable(GL3.GL_LINE_SMOOTH);
+        	gl3.glHint(GL3.GL_LINE_SMOOTH_HINT, GL3.GL_FASTEST);
+        }
+        GpuScene g = bufferOk ? getGpuScene(gl3) : null;
+        if (!polygon) {
+        	g = null;
+        }
+        // part ids in main pass, only with CPU path that draws polygons
+        mrtPickFrame = g == null && polygon && prepareSceneFbo(gl3, width, height);
+        if (mrtPickFrame) {
+        	gl3.glBindFramebuffer(GL3.GL_FRAMEBUFFER, sceneFbo[0]);
+        	gl3.glDrawBuffers(2, new int[] {GL3.GL_COLOR_ATTACHMENT0, GL3.GL_COLOR_ATTACHMENT1}, 0);
+        	// background id is 0
+        	gl3.glClearBufferfv(GL3.GL_COLOR, 0, new float[] {0.95f, 0.95f, 0.95f, 1f}, 0);
+        	gl3.glClearBufferuiv(GL3.GL_COLOR, 1, new int[] {0,0,0,0}, 0);
+        	gl3.glClear(GL3.GL_DEPTH_BUFFER_BIT);
+        }
+        else {
+        	gl3.glClearColor(0.95f, 0.95f, 0.95f, 1f);
+        	gl3.glClear(GL3.GL_COLOR_BUFFER_BIT | GL3.GL_DEPTH_BUFFER_BIT);
+        }
+        if (bufferOk) {
+        	// slots change only when model changes, otherwise only changed states are sent
+        	if (drawLists.updateSlots(model.values())) {
+        		partState.rebuild(gl3, drawLists.getSlots(), drawLists.slotCount());
+        	}
+        	else {
+        		partState.sync(gl3, drawLists);
+        	}
+        }
+        shaders.begin(gl3, projectionMatrix, modelViewMatrix, partState);
+        if (bufferOk) {
+        	if (g != null) {
+        		GL4 gl4 = gl3.getGL4();
+        		if (gpuSlotSerial != drawLists.getSlotSerial()) {
+        			g.rebuild(gl4, drawLists.getSlots(), drawLists.slotCount());
+        			gpuSlotSerial = drawLists.getSlotSerial();
+        		}
+        		else {
+        			// parts changed in place are copied again only in their arena ranges
+        			for (QueueAction<LDRenderedPart> a : gpuEdits) {
+        				g.update(gl4, a.slot, a.part, a.action == QActions.COLOR, a.first, a.count);
+        			}
+        		}
+        		gpuEdits.clear();
+        		g.setMinPixels(minPartPixels);
+        		gl3.glLineWidth(1f);
+        		g.drawParts(gl4, projectionMatrix, modelViewMatrix, width, height, 
+        				partState.getChangeSerial(), polygon, wireframe, lighting);
+        		shaders.resume(gl3);
+        		renderSelectionBoxesShaders(gl3);
+        	}
+        	else {
+        		renderPartsShaders(gl3);
+        	}
+        	
+	        // rendering gadgets
+        	setPickIdWrite(gl3, false);
+        	shaders.setLighting(gl3, false);
+        	gl3.glLineWidth(1.5f);
+	        for (Gadget3D p : gadgets.values()) {
+	        	if (p.isHidden() || p.getLineVertexCount() == 0)
+	        		continue;
+	        	if (p.isSelected()) {
+	        		shaders.setFlatColor(gl3, 0.6f, 1f, 0.5f, 1f);
+	        		shaders.drawLines(gl3, p.getLineName(), 0, p.getLineVertexCount());
+	        	}
+	        	else {
+	        		shaders.setVertexColor(gl3);
+	        		shaders.drawLines(gl3, p.getLineName(), p.getLineColorName(), p.getLineVertexCount());
+	        	}
+	        }
+        }
+        
+        // hover part rendering
+        LDRenderedPart h = model.get(partHoverId);
+    	if (partHover && h != null) {
+    		gl3.glLineWidth(3f);
+    		shaders.setFlatColor(gl3, 0.9f, 0.3f, 0.9f, 1f);
+    		shaders.drawLines(gl3, h.getBboxName(), 0, h.getBboxCount());
+    	}
+    	gl3.glLineWidth(1f);
+    	
+    	// dimmed parts rendering, MUST be last to allow blending works with transparency
+    	if (g != null) {
+    		g.drawDimmed(gl3.getGL4(), lighting);
+    		shaders.resume(gl3);
+    	}
+    	else if (bufferOk && partState.getSlotCount(PartStateBuffer.DIMMED_SLOTS) > 0) {
+    		setPickIdWrite(gl3, true);
+    		shaders.setLighting(gl3, lighting);
+    		shaders.setPass(gl3, ShaderRenderer.PASS_DIMMED);
+    		LDRenderedPart[] slots = drawLists.getSlots();
+    		int[] list = partState.getSlotList(PartStateBuffer.DIMMED_SLOTS);
+            for (int k=0,n=partState.getSlotCount(PartStateBuffer.DIMMED_SLOTS);k<n;k++) {
+            	int i = list[k];
+            	shaders.setSlot(gl3, i);
+            	shaders.setPickId(gl3, slots[i].getPickIndex());
+            	shaders.drawTriangles(gl3, slots[i], lighting);
+            }
+            shaders.setPass(gl3, ShaderRenderer.PASS_OPAQUE);
+            shaders.setSlot(gl3, -1);
+            shaders.setPickId(gl3, 0);
+    	}
+    	shaders.end(gl3);
+    	if (mrtPickFrame) {
+    		// shows color attachment, id attachment stays as pick buffer
+    		setPickIdWrite(gl3, true);
+    		gl3.glBindFramebuffer(GL3.GL_READ_FRAMEBUFFER, sceneFbo[0]);
+    		gl3.glReadBuffer(GL3.GL_COLOR_ATTACHMENT0);
+    		gl3.glBindFramebuffer(GL3.GL_DRAW_FRAMEBUFFER, 0);
+    		gl3.glBlitFramebuffer(0, 0, sceneFboWidth, sceneFboHeight, 0, 0, sceneFboWidth, sceneFboHeight, 
+    				GL3.GL_COLOR_BUFFER_BIT, GL3.GL_NEAREST);
+    		gl3.glBindFramebuffer(GL3.GL_FRAMEBUFFER, 0);
+    	}
+	}
+	
+	
+	
+	/**
+	 * Creates or resizes scene framebuffer for part ids in main pass.
+	 * <p>
+	 * Scene FBO has display color in first attachment and pick buffer color renderbuffer
+	 * in second one, sharing depth with pick FBO, so hover and click read pick FBO as usual.
+	 * Multisample display can't be blitted from a single sample FBO, so it works only 
+	 * without antialias.
+	 * @param w drawable surface width, in pixels
+	 * @param h drawable surface height, in pixels
+	 * @return true if main pass can write part ids
+	 */
+	private boolean prepareSceneFbo(GL3 gl3, int w, int h) {
+		
+		if (!mrtPick || mrtPickFailed || !selection || !bufferOk || antialias || fbo[0] == 0) 
+			return false;
+		if (sceneFbo[0] != 0 && w == sceneFboWidth && h == sceneFboHeight)
+			return true;
+		if (sceneFbo[0] == 0) {
+			gl3.glGenFramebuffers(1, sceneFbo, 0);
+			gl3.glGenRenderbuffers(1, sceneRbo, 0);
+		}
+		sceneFboWidth = w;
+		sceneFboHeight = h;
+		gl3.glBindRenderbuffer(GL3.GL_RENDERBUFFER, sceneRbo[0]);
+		gl3.glRenderbufferStorage(GL3.GL_RENDERBUFFER, GL3.GL_RGBA8, w, h);
+		gl3.glBindRenderbuffer(GL3.GL_RENDERBUFFER, 0);
+		gl3.glBindFramebuffer(GL3.GL_FRAMEBUFFER, sceneFbo[0]);
+		gl3.glFramebufferRenderbuffer(GL3.GL_FRAMEBUFFER, GL3.GL_COLOR_ATTACHMENT0, GL3.GL_RENDERBUFFER, sceneRbo[0]);
+		gl3.glFramebufferRenderbuffer(GL3.GL_FRAMEBUFFER, GL3.GL_COLOR_ATTACHMENT1, GL3.GL_RENDERBUFFER, rbo[COLOR_RB]);
+		gl3.glFramebufferRenderbuffer(GL3.GL_FRAMEBUFFER, GL3.GL_DEPTH_ATTACHMENT, GL3.GL_RENDERBUFFER, rbo[DEPTH_RB]);
+		int status = gl3.glCheckFramebufferStatus(GL3.GL_FRAMEBUFFER);
+		gl3.glBindFramebuffer(GL3.GL_FRAMEBUFFER, 0);
+		if (status != GL3.GL_FRAMEBUFFER_COMPLETE) {
+			mrtPickFailed = true;
+			deleteSceneFbo(gl3);
+			Logger.getGlobal().log(Level.WARNING, "[LDrawGLDisplay] Unable to write part ids in main pass, using pick pass");
+			return false;
+		}
+		return true;
+	}
+	
+	
+	
+	private void deleteSceneFbo(GL3 gl3) {
+		
+		if (sceneFbo[0] == 0)
+			return;
+		gl3.glDeleteFramebuffers(1, sceneFbo, 0);
+		gl3.glDeleteRenderbuffers(1, sceneRbo, 0);
+		sceneFbo[0] = 0;
+		sceneRbo[0] = 0;
+	}
+	
+	
+	
+	/**
+	 * Enables or disables part id writes in main pass, only for objects that must be pickable
+	 */
+	private void setPickIdWrite(GL3 gl3, boolean write) {
+		
+		if (mrtPickFrame) {
+			gl3.glColorMaski(1, write, write, write, write);
+		}
+	}
+	
+	
+	
+	/**
+	 * Gets GPU driven scene, creating or disposing it as requested
+	 * @return GPU scene, or null if not enabled or not available
+	 */
+	private GpuScene getGpuScene(GL3 gl3) {
+		
+		if (!gpuDriven) {
+			if (gpuScene != null) {
+				gpuScene.dispose(gl3.getGL4());
+				gpuScene = null;
+				gpuEdits.clear();
+			}
+			return null;
+		}
+		if (gpuScene == null && !gpuSceneFailed) {
+			if (gl3.isGL4() && 
+					gl3.getContext().getGLVersionNumber().compareTo(GLContext.Version430) >= 0) {
+				gpuScene = new GpuScene();
+				if (!gpuScene.init(gl3.getGL4())) {
+					gpuScene = null;
+				}
+			}
+			if (gpuScene == null) {
+				gpuSceneFailed = true;
+				Logger.getGlobal().log(Level.WARNING, "[LDrawGLDisplay] GPU driven rendering needs OpenGL 4.3, using CPU path");
+			}
+			gpuSlotSerial = -1;
+		}
+		return gpuScene;
+	}
+	
+	
+	
+	/**
+	 * Renders polygons and edges of visible parts with shader renderer
+	 * <p>
+	 * Only slots in pass lists of part state buffer are drawn, so hidden and 
+	 * dimmed parts cost nothing; shader discards them anyway.
+	 */
+	private void renderPartsShaders(GL3 gl3) {
+		
+		LDRenderedPart[] slots = drawLists.getSlots();
+		shaders.setVertexColor(gl3);
+		if (polygon) {
+			shaders.setLighting(gl3, lighting);
+			int[] list = partState.getSlotList(PartStateBuffer.POLYGON_SLOTS);
+	        for (int k=0,n=partState.getSlotCount(PartStateBuffer.POLYGON_SLOTS);k<n;k++) {
+	        	int i = list[k];
+	        	shaders.setSlot(gl3, i);
+	        	shaders.setPickId(gl3, slots[i].getPickIndex());
+	        	shaders.drawTriangles(gl3, slots[i], lighting);
+	        }
+		}
+		shaders.setLighting(gl3, false);
+		if (wireframe) {
+			gl3.glLineWidth(1f);
+			shaders.setPass(gl3, ShaderRenderer.PASS_EDGES);
+			int[] list = partState.getSlotList(PartStateBuffer.EDGE_SLOTS);
+	        for (int k=0,n=partState.getSlotCount(PartStateBuffer.EDGE_SLOTS);k<n;k++) {
+	        	int i = list[k];
+	        	LDRenderedPart p = slots[i];
+	        	shaders.setSlot(gl3, i);
+	        	shaders.setPickId(gl3, p.getPickIndex());
+        		if (p.getLineVertexCount() > 0) {
+        			shaders.drawLines(gl3, p.getLineName(), p.getLineColorName(), p.getLineVertexCount());
+        		}
+	            if (!polygon && p.getAuxLineVertexCount() > 0) {
+	            	// display aux lines only if polygons are hidden
+        			shaders.drawLines(gl3, p.getAuxLineName(), p.getAuxLineColorName(), p.getAuxLineVertexCount());
+	            }
+	        }
+			shaders.setPass(gl3, ShaderRenderer.PASS_OPAQUE);
+		}
+		shaders.setSlot(gl3, -1);
+		shaders.setPickId(gl3, 0);
+		setPickIdWrite(gl3, false);
+		renderSelectionBoxesShaders(gl3);
+		setPickIdWrite(gl3, true);
+	}
+	
+	
+	
+	/**
+	 * In bounding select mode selected and connected parts are also boxed
+	 */
+	private void renderSelectionBoxesShaders(GL3 gl3) {
+		
+		if (LDRenderedPart.isBoundingSelect()) {
+			gl3.glLineWidth(3f);
+			LDRenderedPart[] slots = drawLists.getSlots();
+			int[] list = partState.getSlotList(PartStateBuffer.BOX_SLOTS);
+	        for (int k=0,n=partState.getSlotCount(PartStateBuffer.BOX_SLOTS);k<n;k++) {
+	        	int i = list[k];
+	        	int state = partState.getState(i);
+	        	if ((state & PartStateBuffer.CONNECTED) != 0) {
+	        		shaders.setFlatColor(gl3, 1f, 0.7f, 0.6f, 1f);
+	        	}
+	        	else {
+	        		shaders.setFlatColor(gl3, 0.6f, 1f, 0.5f, 1f);
+	        	}
+	        	shaders.drawLines(gl3, slots[i].getBboxName(), 0, slots[i].getBboxCount());
+	        }
+	        shaders.setVertexColor(gl3);
+		}
+	}
+	
+	
+	
+	/**
+	 * Renders polygons, edges and outlines of visible parts
+	 * 
+	 * Vertex array client state must be enabled before call
+	 */
+	private void renderParts(GL2 gl2) {
+		
+            // renders polygons
+            if (polygon) {
+                if (lighting)
+                	gl2.glEnable(GL2.GL_LIGHTING);
+	            gl2.glEnableClientState(GL2.GL_COLOR_ARRAY);
+	            gl2.glEnableClientState(GL2.GL_NORMAL_ARRAY);
+	            LDRenderedPart[] list = drawLists.get(DrawLists.POLYGON);
+		        for (int i=0,n=drawLists.count(DrawLists.POLYGON);i<n;i++) {
+		        	LDRenderedPart p = list[i];
+		            gl2.glBindBuffer( GL2.GL_ARRAY_BUFFER, p.getTriangleName() );
+		            gl2.glVertexPointer( 3, GL2.GL_FLOAT, 6 * Buffers.SIZEOF_FLOAT, 0 );
+		            gl2.glNormalPointer(GL2.GL_FLOAT,6 * Buffers.SIZEOF_FLOAT ,3 * Buffers.SIZEOF_FLOAT);
+		            gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, p.getTriangleColorName());
+		            gl2.glColorPointer( 4, GL2.GL_UNSIGNED_BYTE, 4 * Buffers.SIZEOF_BYTE, 0 );
+		            gl2.glDrawArrays( GL2.GL_TRIANGLES, 0, p.getTriangleVertexCount() );
+		        }
+	            gl2.glBindBuffer( GL2.GL_ARRAY_BUFFER, 0 );
+	            gl2.glDisableClientState( GL2.GL_NORMAL_ARRAY );	
+	            gl2.glDisable(GL2.GL_LIGHTING);
+	            gl2.glDisableClientState( GL2.GL_COLOR_ARRAY );
+	        }
+
+            // renders edges
+            if (wireframe) {
+	            gl2.glEnableClientState( GL2.GL_COLOR_ARRAY );
+	            gl2.glLineWidth(1f);
+	            LDRenderedPart[] list = drawLists.get(DrawLists.EDGE);
+		        for (int i=0,n=drawLists.count(DrawLists.EDGE);i<n;i++) {
+		        	LDRenderedPart p = list[i];
+	        		if (p.getLineVertexCount() > 0) {
+			            gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, p.getLineName());
+			            gl2.glVertexPointer( 3, GL2.GL_FLOAT, 3 * Buffers.SIZEOF_FLOAT, 0 );
+			            gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, p.getLineColorName());
+			            gl2.glColorPointer( 4, GL2.GL_UNSIGNED_BYTE, 4 * Buffers.SIZEOF_BYTE, 0 );
+			            gl2.glDrawArrays( GL2.GL_LINES, 0, p.getLineVertexCount() );
+	        		}
+		            if (!polygon && p.getAuxLineVertexCount() > 0) {
+		            	// display aux lines only if polygons are hidden
+			            gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, p.getAuxLineName());
+			            gl2.glVertexPointer( 3, GL2.GL_FLOAT, 3 * Buffers.SIZEOF_FLOAT, 0 );
+			            gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, p.getAuxLineColorName());
+			            gl2.glColorPointer( 4, GL2.GL_UNSIGNED_BYTE, 4 * Buffers.SIZEOF_BYTE, 0 );
+			            gl2.glDrawArrays( GL2.GL_LINES, 0, p.getAuxLineVertexCount() );
+		            }
+		        }
+	            gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, 0);
+	            gl2.glDisableClientState( GL2.GL_COLOR_ARRAY );
+            }
+            
+            // renders highlights
+            gl2.glLineWidth(3f);
+            renderHighlights(gl2);
+	}
+	
+	
+	
+	/**
+	 * Renders dimmed parts, must be last to allow blending with transparency
+	 * 
+	 * Vertex array and normal array client state must be enabled before call
+	 */
+	private void renderDimmed(GL2 gl2) {
+		
+		gl2.glColor4f(0.9f, 0.9f, 0.9f, 0.2f);
+    	LDRenderedPart[] list = drawLists.get(DrawLists.DIMMED);
+        for (int i=0,n=drawLists.count(DrawLists.DIMMED);i<n;i++) {
+        	LDRenderedPart p = list[i];
+            gl2.glBindBuffer( GL2.GL_ARRAY_BUFFER, p.getTriangleName() );
+            gl2.glVertexPointer( 3, GL2.GL_FLOAT, 6 * Buffers.SIZEOF_FLOAT, 0 );
+            gl2.glNormalPointer(GL2.GL_FLOAT,6 * Buffers.SIZEOF_FLOAT ,3 * Buffers.SIZEOF_FLOAT);
+            gl2.glDrawArrays( GL2.GL_TRIANGLES, 0, p.getTriangleVertexCount() );
+        }
+        gl2.glBindBuffer( GL2.GL_ARRAY_BUFFER, 0 );
+	}
+	
+	
+	
+	/**
+	 * Records static part of scene in two display lists, one for visible parts
+	 * and one for dimmed parts. Scene lists only call lists of single parts, 
+	 * so recording is cheap and a part change recompiles only lists of that part.
+	 * Highlights aren't recorded, they change with part state.
+	 * <p>
+	 * Only for canvas GL context, display lists aren't shared with unshared off-screen contexts.
+	 * Vertex array client state must be enabled before call
+	 */
+	private void compileSceneLists(GL2 gl2) {
+		
+		if (sceneList == 0) {
+			sceneList = gl2.glGenLists(2);
+			dimmedList = sceneList+1;
+		}
+		sceneListSerial = drawLists.getListSerial();
+		sceneListSettings = sceneSettings;
+		// part lists can't be compiled while recording, first pass compiles missing ones
+		for (int pass=0;pass<2;pass++) {
+			boolean record = pass == 1;
+			if (record) {
+				gl2.glNewList(sceneList, GL2.GL_COMPILE);
+				if (polygon && lighting)
+					gl2.glEnable(GL2.GL_LIGHTING);
+			}
+			if (polygon) {
+				LDRenderedPart[] list = drawLists.get(DrawLists.POLYGON);
+				for (int i=0,n=drawLists.count(DrawLists.POLYGON);i<n;i++) {
+					int l = partLists.get(gl2, list[i], PartLists.TRIANGLES);
+					if (record)
+						gl2.glCallList(l);
+				}
+			}
+			if (record) {
+				gl2.glDisable(GL2.GL_LIGHTING);
+				gl2.glLineWidth(1f);
+			}
+			if (wireframe) {
+				LDRenderedPart[] list = drawLists.get(DrawLists.EDGE);
+				for (int i=0,n=drawLists.count(DrawLists.EDGE);i<n;i++) {
+					LDRenderedPart p = list[i];
+					if (p.getLineVertexCount() > 0) {
+						int l = partLists.get(gl2, p, PartLists.EDGES);
+						if (record)
+							gl2.glCallList(l);
+					}
+					if (!polygon && p.getAuxLineVertexCount() > 0) {
+						// aux lines only if polygons are hidden
+						int l = partLists.get(gl2, p, PartLists.AUX);
+						if (record)
+							gl2.glCallList(l);
+					}
+				}
+			}
+			if (record) {
+				gl2.glEndList();
+				gl2.glNewList(dimmedList, GL2.GL_COMPILE);
+				gl2.glColor4f(0.9f, 0.9f, 0.9f, 0.2f);
+			}
+			LDRenderedPart[] list = drawLists.get(DrawLists.DIMMED);
+			for (int i=0,n=drawLists.count(DrawLists.DIMMED);i<n;i++) {
+				int l = partLists.get(gl2, list[i], PartLists.PLAIN);
+				if (record)
+					gl2.glCallList(l);
+			}
+			if (record)
+				gl2.glEndList();
+		}
+	}
+	
+	
+	
+	/**
+	 * Renders highlighted, connected and selected parts outlines
+	 * 
+	 * Vertex array client state must be enabled before call
+	 */
+	private void renderHighlights(GL2 gl2) {
+		
+		LDRenderedPart[] list = drawLists.get(DrawLists.HIGHLIGHT);
+		int n = drawLists.count(DrawLists.HIGHLIGHT);
+    	gl2.glColor4f(0.95f, 0.4f, 0.4f,1f);
+        for (int i=0;i<n;i++) {
+        	LDRenderedPart p = list[i];
+        	// if is bounding is selected, use edges to highlight
+            if (LDRenderedPart.isBoundingSelect()) {
+	            if (p.getLineVertexCount() > 0) {
+		            gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, p.getLineName());
+		            gl2.glVertexPointer( 3, GL2.GL_FLOAT, 3 * Buffers.SIZEOF_FLOAT, 0 );
+		            gl2.glDrawArrays( GL2.GL_LINES, 0, p.getLineVertexCount() );
 	            }
+            }	// bounding disabled, use bounding boxes to highlight
+            else {
+	            gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, p.getBboxName());
+	            gl2.glVertexPointer( 3, GL2.GL_FLOAT, 3 * Buffers.SIZEOF_FLOAT, 0 );
+	            gl2.glDrawArrays( GL2.GL_LINES, 0, p.getBboxCount() );
+            }
+        }
+        if (LDRenderedPart.isBoundingSelect()) {
+        	// connected parts are marked only if selection is by bounding box
+	        list = drawLists.get(DrawLists.CONNECTED);
+	        n = drawLists.count(DrawLists.CONNECTED);
+	        gl2.glColor4f(1f, 0.7f, 0.6f,1f);
+	        for (int i=0;i<n;i++) {
+	        	LDRenderedPart p = list[i];
+	            gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, p.getBboxName());
+	            gl2.glVertexPointer( 3, GL2.GL_FLOAT, 3 * Buffers.SIZEOF_FLOAT, 0 );
+	            gl2.glDrawArrays( GL2.GL_LINES, 0, p.getBboxCount() );
 	        }
         }
-        gl2.glDisableClientState( GL2.GL_COLOR_ARRAY );
-        
-        // hover part rendering
-        LDRenderedPart h = model.get(partHoverId);
-    	if (partHover && h != null) {
-    		gl2.glLineWidth(3f);
-            gl2.glColor4f(0.9f, 0.3f, 0.9f,1f);
-            gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, h.getBboxName());
-            gl2.glVertexPointer( 3, GL2.GL_FLOAT, 3 * Buffers.SIZEOF_FLOAT, 0 );
-            gl2.glDrawArrays( GL2.GL_LINES, 0, h.getBboxCount() );
-            gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, 0);
-    	}
-    	
-    	gl2.glLineWidth(1f);
-        
-    	// dimmed parts rendering
-        // MUST be last to allow blending works with transparency
-        if (lighting)
-        	gl2.glEnable(GL2.GL_LIGHTING);
-        gl2.glEnableClientState(GL2.GL_NORMAL_ARRAY);
-        for (LDRenderedPart p : model.values()) {
-        	if (p.isDimmed() && !p.isHidden()) {
-    			gl2.glColor4f(0.9f, 0.9f, 0.9f, 0.2f);
-	            gl2.glBindBuffer( GL2.GL_ARRAY_BUFFER, p.getTriangleName() );
-	            gl2.glVertexPointer( 3, GL2.GL_FLOAT, 6 * Buffers.SIZEOF_FLOAT, 0 );
-	            gl2.glNormalPointer(GL2.GL_FLOAT,6 * Buffers.SIZEOF_FLOAT ,3 * Buffers.SIZEOF_FLOAT);
-	            gl2.glDrawArrays( GL2.GL_TRIANGLES, 0, p.getTriangleVertexCount() );
-	            gl2.glBindBuffer( GL2.GL_ARRAY_BUFFER, 0 );
+        list = drawLists.get(DrawLists.SELECTED);
+        n = drawLists.count(DrawLists.SELECTED);
+        gl2.glColor4f(0.6f, 1f, 0.5f,1f);
+        for (int i=0;i<n;i++) {
+        	LDRenderedPart p = list[i];
+            if (LDRenderedPart.isBoundingSelect()) {
+            	// selection is by bounding box
+	            gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, p.getBboxName());
+	            gl2.glVertexPointer( 3, GL2.GL_FLOAT, 3 * Buffers.SIZEOF_FLOAT, 0 );
+	            gl2.glDrawArrays( GL2.GL_LINES, 0, p.getBboxCount() );
+            }
+            else {
+            	// selection is by edges and aux lines
+	            if (p.getLineVertexCount() > 0) {
+		            gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, p.getLineName());
+		            gl2.glVertexPointer( 3, GL2.GL_FLOAT, 3 * Buffers.SIZEOF_FLOAT, 0 );
+		            gl2.glDrawArrays( GL2.GL_LINES, 0, p.getLineVertexCount() );
+	            }
+	            if (p.getAuxLineVertexCount() > 0) {
+		            gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, p.getAuxLineName());
+		            gl2.glVertexPointer( 3, GL2.GL_FLOAT, 3 * Buffers.SIZEOF_FLOAT, 0 );
+		            gl2.glDrawArrays( GL2.GL_LINES, 0, p.getAuxLineVertexCount() );
+	            }
+            }
+        }
+        gl2.glBindBuffer(GL2.GL_ARRAY_BUFFER, 0);
+	}
+	
+	
+	
+	/**
+	 * Applies queued changes to scene
+	 * @param gl2 GL context to update, must be current
+	 * @param budgeted if true, stops uploading parts when per-frame upload budget is exhausted
+	 * @param shared if true, context shares buffers with canvas context, so parts uploaded by 
+	 * worker are used as they are, otherwise they are uploaded again
+	 */
+	private void updateSceneObjects(GL2 gl2, BufferPool pool, boolean budgeted, boolean shared) {
+		
+		if (batchDepth > 0) {
+			// changes are applied all together at batch end
+			return;
+		}
+        gadgetActions.clear();
+        lastGadgetAction.clear();
+        gadgetAddQueue.drainTo(gadgetActions);
+        // only last action on a gadget is done, clear drops actions before it
+        int lastClear = -1;
+        for (int i=0;i<gadgetActions.size();i++) {
+        	QueueAction<Gadget3D> a = gadgetActions.get(i);
+        	if (a.action == QActions.CLEAR)
+        		lastClear = i;
+        	else
+        		lastGadgetAction.put(a.part != null ? a.part.getId() : a.id, i);
+        }
+        for (int i=0;i<gadgetActions.size();i++) {
+        	QueueAction<Gadget3D> a = gadgetActions.get(i);
+        	if (a.action == QActions.CLEAR) {
+        		if (i == lastClear)
+        			clearGadgetsVA(gl2, pool);
+        		continue;
+        	}
+        	int gid = a.part != null ? a.part.getId() : a.id;
+        	if (lastGadgetAction.get(gid) != i || (gid >= 0 && i < lastClear))
+        		continue;
+        	if (a.action == QActions.ADD) {
+	        	//Gadget3D rm = gadgets.get(r.getId());
+	        	Gadget3D rm = gadgets.put(a.part.getId(),a.part);
+	        	if (rm != null) {
+	        		// remove old gadget
+	            	//System.out.println("Da:"+rm.getId());
+	        		//gadgets.remove(rm.getId());
+	        	}
+            	//System.out.println("A:"+a.part.getId());
+	        	// reuse old gadget buffers, if any
+	        	addGadgetVA(a.part, rm, gl2, pool);
+	        	gadgetsChanged = true;
+        	}
+        	else {
+            	Gadget3D rm = gadgets.get(a.id);
+            	if (rm == null)
+            		continue;
+            	//System.out.println("D:"+a.id);
+            	delGadgetVA(rm, gl2, pool);
+            	gadgets.remove(a.id);       		
+            	gadgetsChanged = true;
+        	}
+        }
+        gadgetActions.clear();
+        takePartActions();
+        if (pendingParts.isEmpty())
+        	return;
+        if (uploadTotal == 0) {
+        	// a new load starts
+        	uploadTotal = pendingParts.size();
+        	uploadDone = 0;
+        	if (uploadProgress != null)
+        		uploadProgress.updateStart();
+        }
+        long t0 = System.nanoTime();
+        long bytes = 0;
+        while (!pendingParts.isEmpty()) {
+        	if (budgeted && 
+        			((uploadBudgetMs > 0 && System.nanoTime()-t0 >= uploadBudgetMs*1000000L) ||
+        			(uploadBudgetBytes > 0 && bytes >= uploadBudgetBytes))) {
+        		// budget exhausted, renders parts already in GPU and continue in next frame
+        		break;
+        	}
+        	QueueAction<LDRenderedPart> a = pendingParts.poll(); 
+        	int pid = a.part != null ? a.part.getId() : a.id;
+        	if (pendingById.get(pid) == a)
+        		pendingById.remove(pid);
+        	boolean resident = a.resident && shared;
+        	if (resident && a.sync != 0) {
+        		// part uploaded by worker, check if GPU completed upload
+        		// without budget waits for it, worker already flushed its commands
+        		GL3ES3 gl3 = gl2.getGL3ES3();
+        		int r;
+        		do {
+        			r = gl3.glClientWaitSync(a.sync, 0, budgeted ? 0 : SYNC_WAIT_NS);
+        		} while (!budgeted && r == GL3ES3.GL_TIMEOUT_EXPIRED);
+        		if (r == GL3ES3.GL_TIMEOUT_EXPIRED) {
+        			// not ready, retry in next frame
+        			pendingParts.addFirst(a);
+        			scheduler.request();
+        			break;
+        		}
+        		gl3.glDeleteSync(a.sync);
+        		a.sync = 0;
+        	}
+        	if (resident && a.buffers != null) {
+        		// worker buffers are reused by display pool when released
+        		pool.adopt(a.buffers);
+        		a.buffers = null;
+        	}
+        	uploadDone++;
+        	if ((a.action == QActions.COLOR || a.action == QActions.VERTEX) &&
+        			!isSameLayout(model.get(a.part.getId()), a.part)) {
+        		// can't update in place, falls back to a full replace
+        		a.action = QActions.ADD;
+        	}
+    		// add to GL context
+        	if (a.action == QActions.COLOR || a.action == QActions.VERTEX) {
+        		a.part.setPickIndex(pickIds.add(a.part.getId()));
+        		stateLog.attach(a.part);
+        		LDRenderedPart r = putPart(a.part);
+        		stateLog.detach(r);
+        		partLists.changed(r, a.part);
+        		if (a.action == QActions.VERTEX) {
+        			rayPicker.invalidateMesh(a.part);
+        			sceneShrunk = true;
+        		}
+        		bytes += updateRenderedPartVA(a.part, r, a.action == QActions.COLOR, a.first, a.count, gl2);
+        		// same buffers and layout, new part takes place of old one in lists and slots
+        		a.slot = drawLists.replace(r, a.part);
+        		if (!isSameState(r, a.part))
+        			stateLog.changed(a.part);
+        		if (gpuScene != null && a.slot >= 0)
+        			gpuEdits.add(a);
+        	}
+        	else if (a.action == QActions.ADD) {
+        		if (!resident)
+        			bytes += getPartBytes(a.part);
+	    		//System.out.println("a:"+a.part.getId()); //XX
+	    		// add new part to model
+	    		a.part.setPickIndex(pickIds.add(a.part.getId()));
+	    		stateLog.attach(a.part);
+	    		LDRenderedPart r = putPart(a.part);
+	    		if (r != null && r != a.part)
+	    			stateLog.detach(r);
+	    		if (r != null)
+	    			sceneShrunk = true;
+	    		else if (!sceneShrunk)
+	    			sceneAdded.add(a.part);
+	    		if (r != null)
+	    			partLists.changed(r, a.part);
+	    		// if there was an old part with same id its buffers are reused
+	    		if (!resident)
+	    			addRenderedPartVA(a.part, r, gl2, pool);
+	    		else if (r != null)
+	    			delRenderedPartVA(r, gl2, pool);
+	    		drawLists.invalidate();
+        	}
+        	else if (a.action == QActions.CLEAR) {
+        		for (LDRenderedPart p : model.values()) {
+        			delRenderedPartVA(p, gl2, pool);
+        			pickIds.remove(p.getId(), frameSerial);
+        			stateLog.detach(p);
+        			partLists.delete(gl2, p);
+        		}
+        		model = PersistentIntMap.empty();
+        		partStates = PersistentIntMap.empty();
+        		sceneShrunk = true;
+        		rayPicker.clear();
+        		drawLists.invalidate();
+        	}
+        	else {
+        		if (model.containsKey(a.id)) {
+        			//System.out.println("r:"+a.id);  //XX
+        			LDRenderedPart r = removePart(a.id);
+        			delRenderedPartVA(r, gl2, pool);
+        			stateLog.detach(r);
+        			partLists.delete(gl2, r);
+        			pickIds.remove(a.id, frameSerial);
+        			drawLists.invalidate();
+        		}       		
         	}
         }
-        gl2.glDisableClientState( GL2.GL_NORMAL_ARRAY );	
-        gl2.glDisable(GL2.GL_LIGHTING);	        		
-        
-        
-        gl2.glDisableClientState( GL2.GL_VERTEX_ARRAY );
-
+        pendingPartCount = pendingParts.size();
+        int remaining = pendingParts.size() + partAddQueue.size();
+        if (remaining > 0) {
+        	// more work to do, schedule another frame
+        	uploadTotal = Math.max(uploadTotal, uploadDone + remaining);
+        	if (uploadProgress != null)
+        		uploadProgress.updateRemaining(remaining, uploadTotal);
+        	scheduler.request();
+        }
+        else {
+        	uploadTotal = 0;
+        	if (uploadProgress != null)
+        		uploadProgress.updateComplete();
+        }
+	}
+	
+	
+	
+	/**
+	 * Takes part actions from queue, merging an action in last action 
+	 * not yet applied for same part, so superseded geometry is never uploaded.
+	 * Actions uploaded by worker keep their buffers and aren't merged.
+	 * A clear drops actions not yet uploaded, and actions after it are never
+	 * merged in actions before it.
+	 */
+	private void takePartActions() {
+		
+		QueueAction<LDRenderedPart> a;
+		while ((a = partAddQueue.poll()) != null) {
+			if (a.action == QActions.CLEAR) {
+				// clear removes displayed parts before any pending action, 
+				// pending actions on displayed parts are dropped
+				List<Integer> resident = new ArrayList<Integer>();
+				for (Iterator<QueueAction<LDRenderedPart>> i = pendingParts.iterator(); i.hasNext();) {
+					QueueAction<LDRenderedPart> p = i.next();
+					int id = p.part != null ? p.part.getId() : p.id;
+					if (p.action == QActions.CLEAR || !model.containsKey(id))
+						continue;
+					if (p.resident) {
+						// parts uploaded by worker are applied and then removed, 
+						// so their buffers and fences are freed as usual
+						resident.add(id);
+					}
+					else {
+						i.remove();
+						if (pendingById.get(id) == p)
+							pendingById.remove(id);
+					}
+				}
+				pendingParts.addFirst(a);
+				for (int id : resident) {
+					QueueAction<LDRenderedPart> d = new QueueAction<LDRenderedPart>(id);
+					pendingParts.add(d);
+					pendingById.put(id, d);
+				}
+				continue;
+			}
+			int id = a.part != null ? a.part.getId() : a.id;
+			QueueAction<LDRenderedPart> last = pendingById.get(id);
+			if (last != null && !last.resident && !a.resident) {
+				mergePartAction(last, a);
+				continue;
+			}
+			pendingParts.add(a);
+			pendingById.put(id, a);
+		}
+		pendingPartCount = pendingParts.size();
+	}
+	
+	
+	
+	/**
+	 * Merges a part action in previous action on same part
+	 * <p>
+	 * Last add or remove wins (add then remove is a remove, that does nothing
+	 * if part wasn't displayed), updates of same kind are merged, any other 
+	 * sequence becomes a full replace with last part.
+	 * @param last action not yet applied, changed in place
+	 * @param a newer action
+	 */
+	private static void mergePartAction(QueueAction<LDRenderedPart> last, QueueAction<LDRenderedPart> a) {
+		
+		if (a.action == QActions.COLOR && last.action == QActions.COLOR) {
+			last.part = a.part;
+		}
+		else if (a.action == QActions.VERTEX && last.action == QActions.VERTEX) {
+			if (last.count < 0 || a.count < 0) {
+				last.first = 0;
+				last.count = -1;
+			}
+			else {
+				int end = Math.max(last.first + last.count, a.first + a.count);
+				last.first = Math.min(last.first, a.first);
+				last.count = end - last.first;
+			}
+			last.part = a.part;
+		}
+		else {
+			last.action = a.action == QActions.DEL ? QActions.DEL : QActions.ADD;
+			last.part = a.part;
+			last.id = a.id;
+			last.first = 0;
+			last.count = -1;
+		}
+	}
+	
+	
+	
+	/**
+	 * Checks if a part can be updated in place of a displayed one
+	 * @param r displayed part, can be null
+	 * @param p new part with same id
+	 * @return true if there is a displayed part, different from new one, with same 
+	 * vertex count for triangles, edges, aux lines and bounding box
+	 */
+	private static boolean isSameLayout(LDRenderedPart r, LDRenderedPart p) {
+		
+		return r != null && r != p &&
+				r.getTriangleVertexCount() == p.getTriangleVertexCount() &&
+				r.getLineVertexCount() == p.getLineVertexCount() &&
+				r.getAuxLineVertexCount() == p.getAuxLineVertexCount() &&
+				r.getBboxCount() == p.getBboxCount();
+	}
+	
+	
+	
+	/**
+	 * Checks if two parts have same visual state
+	 * @return true if parts have same selected, highlighted, connected, dimmed and hidden flags 
+	 */
+	private static boolean isSameState(LDRenderedPart r, LDRenderedPart p) {
+		
+		return r.isSelected() == p.isSelected() &&
+				r.isHighLighted() == p.isHighLighted() &&
+				r.isConnected() == p.isConnected() &&
+				r.isDimmed() == p.isDimmed() &&
+				r.isHidden() == p.isHidden();
+	}
+	
+	
+	
+	/**
+	 * Size of all VBOs needed by a part
+	 * @param p rendered part
+	 * @return size in bytes
+	 */
+	private static long getPartBytes(LDRenderedPart p) {
+		
+		long b = 0;
+		if (p.getTriangleVertexCount() > 0)
+			b += p.getTrianglesVBO().length * Buffers.SIZEOF_FLOAT + p.getTriangleColorVA().length;
+		if (p.getLineVertexCount() > 0)
+			b += p.getWireFrameVBO().length * Buffers.SIZEOF_FLOAT + p.getWireColorVa().length;
+		if (p.getAuxLineVertexCount() > 0)
+			b += p.getAuxWireFrameVBO().length * Buffers.SIZEOF_FLOAT + p.getAuxWireColorVa().length;
+		if (p.getBboxCount() > 0)
+			b += p.getBboxVBO().length * Buffers.SIZEOF_FLOAT;
+		return b;
+	}
+	
+	
+	
+	/**
+	 * Reads a pick index from pick buffer, waiting for GPU.
+	 * GL context must be current.
+	 * @return pick index, 0 if background
+	 */
+	private int readPickIndex(int x, int y) {
+		
+		ByteBuffer b = pickPixel;
+		currentGL2.glBindFramebuffer(GL2.GL_FRAMEBUFFER, fbo[0]);
+		if (pickInteger) {
+			currentGL2.glReadPixels(x, y, 1, 1, GL2.GL_RED_INTEGER, GL2.GL_UNSIGNED_INT, b);
+		}
+		else {
+			currentGL2.glReadPixels(x, y, 1, 1, GL2.GL_RGB, GL2.GL_UNSIGNED_BYTE, b);
+		}
+		currentGL2.glBindFramebuffer(GL2.GL_FRAMEBUFFER, 0);
+		return PickReadback.decode(b, pickInteger);
+	}
+	
+	
+	
+	/**
+	 * Reads depth block around cursor from pick buffer, waiting for GPU.
+	 * GL context must be current.
+	 * @param x0 block left
+	 * @param y0 block bottom
+	 * @return block depths, by rows from bottom
+	 */
+	private float[] readPickDepth(int x0, int y0) {
+		
+		FloatBuffer b = pickDepth;
+		int side = PickReadback.DEPTH_SIDE;
+		currentGL2.glBindFramebuffer(GL2.GL_FRAMEBUFFER, fbo[0]);
+		currentGL2.glReadPixels(x0, y0, side, side, GL2.GL_DEPTH_COMPONENT, GL2.GL_FLOAT, b);
+		currentGL2.glBindFramebuffer(GL2.GL_FRAMEBUFFER, 0);
+		float[] d = new float[side*side];
+		b.get(d);
+		b.rewind();
+		return d;
+	}
+	
+	
+	
+	/**
+	 * Left (or bottom) of depth block around cursor, kept inside viewport
+	 */
+	private static int depthBlockOrigin(int c, int start, int size) {
+		
+		int side = PickReadback.DEPTH_SIDE;
+		return Math.max(start, Math.min(c - side/2, start + size - side));
+	}
+	
+	
+	
+	/**
+	 * Model point and surface normal from a depth block read with pick
+	 * <p>
+	 * Point is cursor depth unprojected, normal is cross product of 
+	 * horizontal and vertical tangents to neighbours, using on every 
+	 * axis the neighbour nearer in depth, so it doesn't cross part edges.
+	 * @param id part under cursor
+	 * @param depths depth block, by rows from bottom
+	 * @param x cursor x, from left
+	 * @param y cursor y, from bottom
+	 * @param dx cursor column in block
+	 * @param dy cursor row in block
+	 * @param mv model view matrix of pick frame
+	 * @param proj projection matrix of pick frame
+	 * @param view viewport of pick frame
+	 * @return hit, or null if there is no part under cursor
+	 */
+	private RayHit depthHit(int id, float[] depths, int x, int y, int dx, int dy, 
+			float[] mv, float[] proj, int[] view) {
+		
+		int side = PickReadback.DEPTH_SIDE;
+		float zc = depths[dy*side+dx];
+		if (id == 0 || zc >= 1)
+			return null;
+		float[] p = new float[3];
+		float[] eye = new float[3];
+		glu.gluUnProject(x, y, zc, mv, 0, proj, 0, view, 0, p, 0);
+		glu.gluUnProject(x, y, 0, mv, 0, proj, 0, view, 0, eye, 0);
+		Point3D point = new Point3D(p);
+		float[] v = {eye[0]-p[0], eye[1]-p[1], eye[2]-p[2]};
+		float dist = (float) Math.sqrt(v[0]*v[0]+v[1]*v[1]+v[2]*v[2]);
+		int nx = nearestNeighbour(depths, dx, dy, 1, 0);
+		int ny = nearestNeighbour(depths, dx, dy, 0, 1);
+		if (nx == 0 || ny == 0)
+			return new RayHit(id, point, null, dist);
+		float[] px = new float[3];
+		float[] py = new float[3];
+		glu.gluUnProject(x+nx, y, depths[dy*side+dx+nx], mv, 0, proj, 0, view, 0, px, 0);
+		glu.gluUnProject(x, y+ny, depths[(dy+ny)*side+dx], mv, 0, proj, 0, view, 0, py, 0);
+		float ax = px[0]-p[0], ay = px[1]-p[1], az = px[2]-p[2];
+		float bx = py[0]-p[0], by = py[1]-p[1], bz = py[2]-p[2];
+		float[] n = {ay*bz-az*by, az*bx-ax*bz, ax*by-ay*bx};
+		float l = (float) Math.sqrt(n[0]*n[0]+n[1]*n[1]+n[2]*n[2]);
+		if (l == 0)
+			return new RayHit(id, point, null, dist);
+		// faces viewer
+		if (n[0]*v[0]+n[1]*v[1]+n[2]*v[2] < 0)
+			l = -l;
+		return new RayHit(id, point, new Point3D(n[0]/l, n[1]/l, n[2]/l), dist);
+	}
+	
+	
+	
+	/**
+	 * Neighbour of cursor in depth block along an axis with depth nearest to cursor depth
+	 * @return offset -1 or 1, 0 if no neighbour is on a surface
+	 */
+	private static int nearestNeighbour(float[] depths, int dx, int dy, int ax, int ay) {
+		
+		int side = PickReadback.DEPTH_SIDE;
+		float zc = depths[dy*side+dx];
+		int best = 0;
+		float bestDiff = Float.MAX_VALUE;
+		for (int o=-1;o<=1;o+=2) {
+			int cx = dx+o*ax, cy = dy+o*ay;
+			if (cx < 0 || cy < 0 || cx >= side || cy >= side)
+				continue;
+			float z = depths[cy*side+cx];
+			if (z >= 1 || Math.abs(z-zc) >= bestDiff)
+				continue;
+			best = o;
+			bestDiff = Math.abs(z-zc);
+		}
+		return best;
+	}
+	
+	
+	
+	private boolean hasHitPointListeners() {
+		
+		for (HandlingListener p:handlingListeners) {
+			if (p instanceof HitPointListener)
+				return true;
+		}
+		return false;
+	}
+	
+	
+	
+	/**
+	 * Draws pick buffer in a small region around cursor
+	 * @param x cursor x, from left
+	 * @param y cursor y, from bottom
+	 */
+	private void renderPickRegion(int x, int y) {
+		
+		renderPickBuffer(x - PICK_REGION/2, y - PICK_REGION/2, 
+				x + PICK_REGION/2 + 1, y + PICK_REGION/2 + 1);
+	}
+	
+	
+	
+	/**
+	 * Draws a region of pick buffer, only if view or model changed since last time
+	 * or region isn't inside last drawn one.
+	 * <p>
+	 * Drawing is scissored to region, and parts whose bounding box doesn't cover
+	 * region are skipped, so a small region draws only a few parts.
+	 * Uses matrices and draw lists of last frame, so picks match what user sees.
+	 * GL context must be current.
+	 * @param x0 region left, from left
+	 * @param y0 region bottom, from bottom
+	 * @param x1 region right, exclusive
+	 * @param y1 region top, exclusive
+	 */
+	private void renderPickBuffer(int x0, int y0, int x1, int y1) {
+		
+		x0 = Math.max(x0, viewPort[0]);
+		y0 = Math.max(y0, viewPort[1]);
+		x1 = Math.min(x1, viewPort[0]+viewPort[2]);
+		y1 = Math.min(y1, viewPort[1]+viewPort[3]);
+		if (x1 <= x0 || y1 <= y0)
+			return;
+		if (pickSerial == viewSerial && x0 >= pickRegion[0] && y0 >= pickRegion[1] &&
+				x1 <= pickRegion[2] && y1 <= pickRegion[3])
+			return;
+        // draw hidden scene for color-mode selection
+        if (selection) {
+        	// draw in back-buffer same model with color-mode selection
+        	// do not draw gadgets and lines in this mode, so can't select
+            if (bufferOk) {
+            	pickSerial = viewSerial;
+            	pickRegion[0] = x0;
+            	pickRegion[1] = y0;
+            	pickRegion[2] = x1;
+            	pickRegion[3] = y1;
+            	boxProjector.set(projectionMatrix, modelViewMatrix, viewPort);
+            	float[] rect = new float[4];
+            	// disable antialias and avoiding color color id  
+            	currentGL2.glBindFramebuffer(GL2.GL_FRAMEBUFFER, fbo[0]);
+                currentGL2.glDisable(GL2.GL_MULTISAMPLE);
+                currentGL2.glEnable(GL2.GL_SCISSOR_TEST);
+                currentGL2.glScissor(x0, y0, x1-x0, y1-y0);
+            	if (pickInteger) {
+            		// background is index 0, pick index goes to second draw buffer
+            		currentGL2.glClearBufferuiv(GL2.GL_COLOR, 1, new int[] {0,0,0,0}, 0);
+            		currentGL2.glClear(GL2.GL_DEPTH_BUFFER_BIT);
+            	}
+            	else {
+            		currentGL2.glDisable(GL2.GL_DITHER);
+            		currentGL2.glClearColor(0, 0, 0, 255);    // background is solid black
+            		currentGL2.glClear(GL2.GL_COLOR_BUFFER_BIT | GL2.GL_DEPTH_BUFFER_BIT);
+            	}
+            	if (shaders != null) {
+            		GL3 gl3 = currentGL2.getGL3();
+            		shaders.begin(gl3, projectionMatrix, modelViewMatrix, partState);
+            		shaders.setPass(gl3, ShaderRenderer.PASS_PICK);
+    	            LDRenderedPart[] slots = drawLists.getSlots();
+    	            int[] list = partState.getSlotList(PartStateBuffer.PICK_SLOTS);
+        	        for (int k=0,n=partState.getSlotCount(PartStateBuffer.PICK_SLOTS);k<n;k++) {
+        	        	int i = list[k];
+        	        	LDRenderedPart p = slots[i];
+        	        	if (!boxProjector.intersects(p.getBboxVBO(), x0, y0, x1, y1, rect))
+        	        		continue;
+        	        	shaders.setSlot(gl3, i);
+        	        	shaders.setPickId(gl3, p.getPickIndex());
+        	        	shaders.drawTriangles(gl3, p, false);
+        	        }
+        	        shaders.end(gl3);
+            	}
+            	else {
+		            currentGL2.glEnableClientState( GL2.GL_VERTEX_ARRAY );
+		            LDRenderedPart[] list = drawLists.get(DrawLists.PICK);
+	    	        for (int i=0,n=drawLists.count(DrawLists.PICK);i<n;i++) {
+	    	        	LDRenderedPart p = list[i];
+	    	        	if (!boxProjector.intersects(p.getBboxVBO(), x0, y0, x1, y1, rect))
+	    	        		continue;
+	    	        	// pick index as 24 bit RGB
+	    	        	currentGL2.glColor3ub(
+	    	        			(byte)((p.getPickIndex()&0xff0000)>>16), 
+	    	        			(byte) ((p.getPickIndex()&0xff00)>>8), 
+	    	        			(byte)(p.getPickIndex()&0xff));
+			            currentGL2.glBindBuffer( GL2.GL_ARRAY_BUFFER, p.getTriangleName() );
+			            currentGL2.glVertexPointer( 3, GL2.GL_FLOAT, 6 * Buffers.SIZEOF_FLOAT, 0 );
+			            currentGL2.glDrawArrays( GL2.GL_TRIANGLES, 0, p.getTriangleVertexCount() );
+	    	        }
+		            currentGL2.glBindBuffer( GL2.GL_ARRAY_BUFFER, 0 );
+		            currentGL2.glDisableClientState( GL2.GL_VERTEX_ARRAY );
+		            currentGL2.glEnable(GL2.GL_DITHER);
+            	}
+            	currentGL2.glDisable(GL2.GL_SCISSOR_TEST);
+	            currentGL2.glEnable(GL2.GL_MULTISAMPLE);
+	            currentGL2.glBindFramebuffer(GL2.GL_FRAMEBUFFER, 0);
+            }
+        }
 	}
 	
 	
 	
-	private void updateSceneObjects(GL2 gl2) {
+	/**
+	 * Checks if anything drawn in pick buffer changed since last frame
+	 * @return true if view, size, model or part state changed
+	 */
+	private boolean updatePickSignature(int width, int height) {
 		
-        while (!gadgetAddQueue.isEmpty()) {
-        	QueueAction<Gadget3D> a = gadgetAddQueue.poll();
-        	if (a.action == QActions.ADD) {
-	        	//Gadget3D rm = gadgets.get(r.getId());
-	        	Gadget3D rm = gadgets.put(a.part.getId(),a.part);
-	        	if (rm != null) {
-	        		// remove old gadget
-	        		delGadgetVA(rm, gl2);
-	            	//System.out.println("Da:"+rm.getId());
-	        		//gadgets.remove(rm.getId());
-	        	}
-            	//System.out.println("A:"+a.part.getId());
-	        	addGadgetVA(a.part, gl2);
-        	}
-        	else {
-            	Gadget3D rm = gadgets.get(a.id);
-            	if (rm == null)
-            		continue;
-            	//System.out.println("D:"+a.id);
-            	delGadgetVA(rm, gl2);
-            	gadgets.remove(a.id);       		
-        	}
-        }
-        while (!partAddQueue.isEmpty()) {
-        	QueueAction<LDRenderedPart> a = partAddQueue.poll(); 
-    		// add to GL context
-        	if (a.action == QActions.ADD) {
-	    		//System.out.println("a:"+a.part.getId()); //XX
-	    		// add new part to model
-	    		LDRenderedPart r = model.put(a.part.getId(),a.part);
-	    		// if there was an old part with same id
-	    		if (r != null) {
-	    			// remove from GL context VA buffers
-	    			delRenderedPartVA(r, gl2);
-	    		}
-	    		addRenderedPartVA(a.part, gl2);
-        	}
-        	else {
-        		if (model.containsKey(a.id)) {
-        			//System.out.println("r:"+a.id);  //XX
-        			delRenderedPartVA(model.get(a.id), gl2);
-        			model.remove(a.id);
-        		}       		
-        	}
-        }
-
+		float[] vm = viewMatrix.getAsOpenGLMatrix();
+		System.arraycopy(vm, 0, pickSignature, 0, 16);
+		pickSignature[16] = zoomFactor;
+		pickSignature[17] = offsetx;
+		pickSignature[18] = offsety;
+		pickSignature[19] = offsetz;
+		pickSignature[20] = perspective ? 1 : 0;
+		pickSignature[21] = width;
+		pickSignature[22] = height;
+		int model = drawLists.getModelSerial();
+		int edit = drawLists.getEditSerial();
+		int state = stateLog.getSerial();
+		if (Arrays.equals(pickSignature, lastPickSignature) &&
+				model == pickModelSerial && edit == pickEditSerial && state == pickStateSerial)
+			return false;
+		pickModelSerial = model;
+		pickEditSerial = edit;
+		pickStateSerial = state;
+		float[] t = lastPickSignature;
+		lastPickSignature = pickSignature;
+		pickSignature = t;
+		return true;
 	}
 	
 	
@@ -1068,6 +3375,21 @@ public class LDrawGLDisplay implements GLEventListener, MouseListener, MouseMoti
 	public void display(GLAutoDrawable drawable) {
 		
 		long t0 = System.nanoTime();
+		List<HoverRequest> hovered = new ArrayList<HoverRequest>();
+		int[] windowVisible = null;
+		int windowTag = 0;
+		// input of this frame, before drawing so view and picks are up to date
+		// context is current in display(), picks use it as is
+		inFrame = true;
+		try {
+			processViewChanges();
+			processInput();
+			processMotion(false);
+		}
+		finally {
+			inFrame = false;
+		}
+		frameSerial++;
 		glcontext.makeCurrent();
 
         // first updates context with added and removed objects
@@ -1087,7 +3409,8 @@ public class LDrawGLDisplay implements GLEventListener, MouseListener, MouseMoti
 //    			model.remove(r);
 //    		}
 //        }
-		updateSceneObjects(currentGL2);
+		updateSceneObjects(currentGL2, bufferPool, true, true);
+		publishScene();
 //        while (!gadgetAddQueue.isEmpty()) {
 //        	QueueAction<Gadget3D> a = gadgetAddQueue.poll();
 //        	if (a.action == QActions.ADD) {
@@ -1136,48 +3459,115 @@ public class LDrawGLDisplay implements GLEventListener, MouseListener, MouseMoti
 
         // now render
 		renderScene(currentGL2, glu, drawable.getSurfaceWidth(), drawable.getSurfaceHeight());
+        // view of this frame, used by hit points read with pick
+        if (shaders == null) {
+        	// shader renderer keeps its own matrices
+        	currentGL2.glGetFloatv(GL2.GL_PROJECTION_MATRIX, projectionMatrix, 0);
+        	currentGL2.glGetFloatv(GL2.GL_MODELVIEW_MATRIX, modelViewMatrix, 0);
+        }
+        currentGL2.glGetIntegerv(GL2.GL_VIEWPORT, viewPort, 0);
+        publishFrameView();
         
 		// display it
         //canvas.swapBuffers();
         
-        // draw hidden scene for color-mode selection
-        if (selection) {
-        	// draw in back-buffer same model with color-mode selection
-        	// do not draw gadgets and lines in this mode, so can't select
-            if (bufferOk) {
-            	// disable antialias and avoiding color color id  
-            	currentGL2.glBindFramebuffer(GL2.GL_FRAMEBUFFER, fbo[0]);
-                currentGL2.glDisable(GL2.GL_MULTISAMPLE);
-                currentGL2.glClearColor(0, 0, 0, 255);    // background is solid black
-            	
-            	currentGL2.glClear(GL2.GL_COLOR_BUFFER_BIT | GL2.GL_DEPTH_BUFFER_BIT);
-	            currentGL2.glEnableClientState( GL2.GL_VERTEX_ARRAY );
-    	        for (LDRenderedPart p : model.values()) {
-    	        	currentGL2.glColor3ub(
-    	        			(byte)((p.getId()&0xff0000)>>16), 
-    	        			(byte) ((p.getId()&0xff00)>>8), 
-    	        			(byte)(p.getId()&0xff));
-    	        	if (p.getTriangleVertexCount() > 0 && !p.isHidden()) {
-    		            currentGL2.glBindBuffer( GL2.GL_ARRAY_BUFFER, p.getTriangleName() );
-    		            currentGL2.glVertexPointer( 3, GL2.GL_FLOAT, 6 * Buffers.SIZEOF_FLOAT, 0 );
-    		            currentGL2.glDrawArrays( GL2.GL_TRIANGLES, 0, p.getTriangleVertexCount() );
-    		            currentGL2.glBindBuffer( GL2.GL_ARRAY_BUFFER, 0 );
-    	        	}
-    	        }
-	            currentGL2.glDisableClientState( GL2.GL_VERTEX_ARRAY );
-	            currentGL2.glEnable(GL2.GL_MULTISAMPLE);
-	            currentGL2.glBindFramebuffer(GL2.GL_FRAMEBUFFER, 0);
-            }
+        // view signature, pick buffer is redrawn only if it changed
+        if (selection && updatePickSignature(drawable.getSurfaceWidth(), drawable.getSurfaceHeight())) {
+        	viewSerial++;
         }
-        canvas.swapBuffers();   // DB
-        currentGL2.glGetFloatv(GL2.GL_PROJECTION_MATRIX, projectionMatrix, 0);
-        currentGL2.glGetIntegerv(GL2.GL_VIEWPORT, viewPort, 0);
+        if (mrtPickFrame && shaders != null) {
+        	// main pass filled whole pick buffer
+        	pickSerial = viewSerial;
+        	pickRegion[0] = 0;
+        	pickRegion[1] = 0;
+        	pickRegion[2] = sceneFboWidth;
+        	pickRegion[3] = sceneFboHeight;
+        }
+        if (selection && bufferOk && hoverReadback != null) {
+        	// takes hover picks from previous frames and starts last one
+        	GL3ES3 gl3 = currentGL2.getGL3ES3();
+        	while (hoverReadback.poll(gl3)) {
+        		HoverRequest h = hoverReadback.getTag();
+        		h.id = pickIds.getId(hoverReadback.getValue());
+        		if (h.depth) {
+        			h.depths = new float[PickReadback.DEPTH_SIDE*PickReadback.DEPTH_SIDE];
+        			h.depth = hoverReadback.getDepth(h.depths);
+        		}
+        		hovered.add(h);
+        	}
+        	HoverRequest h = hoverPending.getAndSet(null);
+        	if (h != null) {
+            	// pick buffer is drawn only if a hover needs it
+        		renderPickRegion(h.x, h.y);
+        		currentGL2.glBindFramebuffer(GL2.GL_FRAMEBUFFER, fbo[0]);
+        		int depthX = -1, depthY = -1;
+        		h.depth = hasHitPointListeners();
+        		if (h.depth) {
+        			depthX = depthBlockOrigin(h.x, viewPort[0], viewPort[2]);
+        			depthY = depthBlockOrigin(h.y, viewPort[1], viewPort[3]);
+        			h.dx = h.x - depthX;
+        			h.dy = h.y - depthY;
+        			h.proj = projectionMatrix.clone();
+        			h.mv = modelViewMatrix.clone();
+        			h.view = viewPort.clone();
+        		}
+        		h.frame = frameSerial;
+        		if (!hoverReadback.read(gl3, h.x, h.y, depthX, depthY, h)) {
+        			// ring full, retry in next frame if no newer request
+        			hoverPending.compareAndSet(null, h);
+        		}
+        		currentGL2.glBindFramebuffer(GL2.GL_FRAMEBUFFER, 0);
+        	}
+        	if (hoverReadback.pending() > 0 || hoverPending.get() != null) {
+        		scheduler.request();
+        	}
+        }
+        if (selection && bufferOk && windowReadback != null) {
+        	// visible parts in selection window, only last window is read
+        	GL3ES3 gl3 = currentGL2.getGL3ES3();
+        	if (windowReadback.poll(gl3, windowIndexes)) {
+        		windowVisible = pickIndexesToIds(windowIndexes);
+        		windowTag = windowReadback.getTag();
+        	}
+        	int[] w = windowReadback.busy() ? null : windowPending.getAndSet(null);
+        	if (w != null) {
+        		renderPickBuffer(w[0], w[1], w[2], w[3]);
+        		currentGL2.glBindFramebuffer(GL2.GL_FRAMEBUFFER, fbo[0]);
+        		windowReadback.read(gl3, w[0], w[1], w[2], w[3], w[4]);
+        		windowReadFrame = frameSerial;
+        		currentGL2.glBindFramebuffer(GL2.GL_FRAMEBUFFER, 0);
+        	}
+        	if (windowReadback.busy() || windowPending.get() != null) {
+        		scheduler.request();
+        	}
+        }
+        // indexes freed up to frame before oldest readback in flight can be reused
+        int retired = frameSerial;
+        if (hoverReadback != null && hoverReadback.pending() > 0) {
+        	retired = Math.min(retired, hoverReadback.getOldestTag().frame - 1);
+        }
+        if (windowReadback != null && windowReadback.busy()) {
+        	retired = Math.min(retired, windowReadFrame - 1);
+        }
+        pickIds.retire(retired);
+        glDrawable.swapBuffers();   // DB
         glcontext.release();
         drawingTime = System.nanoTime()-t0;
         //System.out.println(drawingTime);    // DB
         int glerror = currentGL2.glGetError(); 
         if (glerror != 0)
         	System.out.println("[LDrawGLDisplay] " + Integer.toHexString(glerror));
+        scheduler.frameDone();
+        // hover picks resolved in this frame, in cursor movement order
+        for (HoverRequest h : hovered) {
+        	setHoverId(h.id);
+        	fireMoved(h.id, h.eyeNear, h.eyeFar, h.depth, 
+        			h.depth ? depthHit(h.id, h.depths, h.x, h.y, h.dx, h.dy, h.mv, h.proj, h.view) : null);
+        }
+        // window may be released or restarted while reading
+        if (windowVisible != null && windowTag == windowSerial && selWindow != null) {
+        	selectVisible(windowVisible);
+        }
 	}
 	
 
@@ -1186,15 +3576,90 @@ public class LDrawGLDisplay implements GLEventListener, MouseListener, MouseMoti
 	public void dispose(GLAutoDrawable drawable) { 
 		
 		bufferOk = false;
+		scheduler.stop();
 		disableMouseTracking();
-		if (model.size() == 0)
+		UploadWorker w = uploader;
+		uploader = null;
+		if (w != null) {
+			w.stop();
+			// buffers and fences of parts uploaded by worker are deleted, 
+			// parts are uploaded again if canvas gets a new context
+			takePartActions();
+			glcontext.makeCurrent();
+			for (QueueAction<LDRenderedPart> a : pendingParts) {
+				if (!a.resident)
+					continue;
+				if (a.sync != 0)
+					currentGL2.getGL3ES3().glDeleteSync(a.sync);
+				if (a.buffers != null)
+					bufferPool.adopt(a.buffers);
+				a.buffers = null;
+				delRenderedPartVA(a.part, currentGL2, bufferPool);
+				a.resident = false;
+				a.sync = 0;
+			}
+			glcontext.release();
+		}
+		if (shaders != null) {
+			glcontext.makeCurrent();
+			if (gpuScene != null) {
+				gpuScene.dispose(currentGL2.getGL4());
+				gpuScene = null;
+			}
+			deleteSceneFbo(currentGL2.getGL3());
+			partState.dispose(currentGL2.getGL3());
+			partState = null;
+			shaders.dispose(currentGL2.getGL3());
+			glcontext.release();
+			shaders = null;
+		}
+		if (hoverReadback != null) {
+			glcontext.makeCurrent();
+			hoverReadback.dispose(currentGL2.getGL3ES3());
+			glcontext.release();
+			hoverReadback = null;
+			hoverPending.set(null);
+		}
+		if (windowReadback != null) {
+			glcontext.makeCurrent();
+			windowReadback.dispose(currentGL2.getGL3ES3());
+			glcontext.release();
+			windowReadback = null;
+			windowPending.set(null);
+		}
+		if (hoverTimer != null) {
+			hoverTimer.stop();
+		}
+		pendingMove = null;
+		pendingDrag = null;
+		if (sceneList != 0) {
+			glcontext.makeCurrent();
+			currentGL2.glDeleteLists(sceneList, 2);
+			partLists.clear(currentGL2);
+			glcontext.release();
+			sceneList = 0;
+			sceneListSerial = -1;
+		}
+		if (model.size() == 0) {
+			bufferPool.reset();
 			return;
+		}
 		glcontext.makeCurrent();
 		for (LDRenderedPart p : model.values()) {
-			delRenderedPartVA(p, currentGL2);
+			delRenderedPartVA(p, currentGL2, bufferPool);
+			stateLog.detach(p);
 		}
+		bufferPool.clear(currentGL2);
 		glcontext.release();
-		model.clear();
+		bufferPool.reset();
+		model = PersistentIntMap.empty();
+		partStates = PersistentIntMap.empty();
+		sceneShrunk = true;
+		pickIds.clear();
+		rayPicker.clear();
+		partLists.reset();
+		drawLists.invalidate();
+		publishScene();
 	}
 
 	
@@ -1245,13 +3710,41 @@ public class LDrawGLDisplay implements GLEventListener, MouseListener, MouseMoti
 		glcontext.makeCurrent();
 		
 		currentGL2 = drawable.getGL().getGL2();
+		currentGL2.setSwapInterval(vsync ? 1 : 0);
+		if (useShaders && shaders == null) {
+			if (currentGL2.isGL3()) {
+				shaders = new ShaderRenderer();
+				if (shaders.init(currentGL2.getGL3())) {
+					partState = new PartStateBuffer();
+					partState.init(currentGL2.getGL3());
+				}
+				else {
+					shaders = null;
+				}
+			}
+			if (shaders == null) {
+				Logger.getGlobal().log(Level.WARNING, "[LDrawGLDisplay] Shader renderer not available, using fixed function pipeline");
+			}
+		}
+		// fixed function pipeline can't write integer colors
+		pickInteger = shaders != null;
 		initScene(currentGL2);
+		if (hoverReadback == null && currentGL2.isGL3ES3()) {
+			// needs fences, otherwise hover pick is synchronous
+			hoverReadback = new PickReadback<HoverRequest>(HOVER_READBACKS, pickInteger);
+			hoverReadback.init(currentGL2.getGL3ES3());
+			windowReadback = new PickRegionReadback(pickInteger);
+			windowReadback.init(currentGL2.getGL3ES3());
+		}
         int glerror = currentGL2.glGetError(); 
         if (glerror != 0)
         	System.out.println("[LDrawGLInit] " + Integer.toHexString(glerror));
         glu = new GLU(); 
         glcontext.release();
         bufferOk = true;
+        if (uploadThread && uploader == null) 
+        	uploader = new UploadWorker(glcontext);
+        scheduler.start();
 		enableMouseTracking();
  	}
 
@@ -1264,15 +3757,16 @@ public class LDrawGLDisplay implements GLEventListener, MouseListener, MouseMoti
 		if (isSelectionEnabled()) {
 			// reshape FBO and render buffers
 			// render buffers don't need to be deleted to reshape
+			// size is drawable surface size, as viewport, not AWT component size (HiDPI)
 			currentGL2.glBindRenderbuffer(GL2.GL_RENDERBUFFER, rbo[DEPTH_RB]);
 			currentGL2.glRenderbufferStorage(GL2.GL_RENDERBUFFER, GL2.GL_DEPTH_COMPONENT, 
-					canvas.getWidth(), canvas.getHeight());
+					width, height);
 				
 			currentGL2.glBindRenderbuffer(GL2.GL_RENDERBUFFER, rbo[COLOR_RB]);
-			currentGL2.glRenderbufferStorage(GL2.GL_RENDERBUFFER, GL2.GL_RGBA8, 
-					canvas.getWidth(), canvas.getHeight());			
+			currentGL2.glRenderbufferStorage(GL2.GL_RENDERBUFFER, getPickFormat(), 
+					width, height);			
 		}
-		canvas.repaint(); 
+		scheduler.request(); 
 	}
 
 	
@@ -1289,19 +3783,36 @@ public class LDrawGLDisplay implements GLEventListener, MouseListener, MouseMoti
 	 */
 	private void createSelectionFBO() {
 		
+		int w = glDrawable.getSurfaceWidth();
+		int h = glDrawable.getSurfaceHeight();
 		currentGL2.glBindRenderbuffer(GL2.GL_RENDERBUFFER, rbo[DEPTH_RB]);
 		currentGL2.glRenderbufferStorage(GL2.GL_RENDERBUFFER, GL2.GL_DEPTH_COMPONENT, 
-				canvas.getWidth(), canvas.getHeight());
+				w, h);
 			
 		currentGL2.glBindRenderbuffer(GL2.GL_RENDERBUFFER, rbo[COLOR_RB]);
-		currentGL2.glRenderbufferStorage(GL2.GL_RENDERBUFFER, GL2.GL_RGBA8, 
-				canvas.getWidth(), canvas.getHeight());
+		currentGL2.glRenderbufferStorage(GL2.GL_RENDERBUFFER, getPickFormat(), 
+				w, h);
 
 		currentGL2.glBindFramebuffer(GL2.GL_FRAMEBUFFER, fbo[0]);
 
 		currentGL2.glFramebufferRenderbuffer(GL2.GL_FRAMEBUFFER, GL2.GL_COLOR_ATTACHMENT0, GL2.GL_RENDERBUFFER, rbo[COLOR_RB]);
 		currentGL2.glFramebufferRenderbuffer(GL2.GL_FRAMEBUFFER, GL2.GL_DEPTH_ATTACHMENT, GL2.GL_RENDERBUFFER, rbo[DEPTH_RB]);
+		if (pickInteger) {
+			// shaders write pick index in second output
+			currentGL2.glDrawBuffers(2, new int[] {GL2.GL_NONE, GL2.GL_COLOR_ATTACHMENT0}, 0);
+		}
+		currentGL2.glBindFramebuffer(GL2.GL_FRAMEBUFFER, 0);
+		
+	}
+	
+	
+	
+	/**
+	 * Pick buffer color format: 32 bit integer indexes with shaders, RGB otherwise
+	 */
+	private int getPickFormat() {
 		
+		return pickInteger ? GL2.GL_R32UI : GL2.GL_RGBA8;
 	}
 	
 	
@@ -1309,7 +3820,7 @@ public class LDrawGLDisplay implements GLEventListener, MouseListener, MouseMoti
 	
 	public void update() {
 		
-		canvas.repaint();
+		scheduler.request();
 	}
 	
 	
@@ -1332,7 +3843,7 @@ public class LDrawGLDisplay implements GLEventListener, MouseListener, MouseMoti
 //		glcontext.getGL().getGL2().glReadPixels(0, 0, w, h, GL2.GL_BGRA, GL2.GL_UNSIGNED_INT_8_8_8_8_REV, b);
 		glcontext.getGL().getGL2().glReadPixels(0, 0, w, h, GL2.GL_BGR, GL2.GL_UNSIGNED_BYTE, b);
 		glcontext.release();
-		canvas.repaint();
+		scheduler.request();
 		AffineTransform tx = AffineTransform.getScaleInstance(1, -1);
 	    tx.translate(0,-image.getHeight());
 	    AffineTransformOp op = new AffineTransformOp(tx,
@@ -1367,8 +3878,10 @@ public class LDrawGLDisplay implements GLEventListener, MouseListener, MouseMoti
 		}
 		//makes a new buffer
 		GLOffscreenAutoDrawable buf = fac.createOffscreenAutoDrawable(null, glCap, null, sizex, sizey);
+		// shares buffers with canvas, if any, so parts uploaded by worker are adopted with their fences
+		boolean shared = glcontext != null && glcontext.isCreated();
 		//required for drawing to the buffer
-		GLContext context =  buf.createContext(null); 
+		GLContext context =  buf.createContext(shared ? glcontext : null); 
 		context.makeCurrent();
 		GL2 localGl2 = context.getGL().getGL2();
 		//System.out.println("disegno");
@@ -1378,7 +3891,8 @@ public class LDrawGLDisplay implements GLEventListener, MouseListener, MouseMoti
 		//localGl2.glDrawBuffer(GL2.GL_FRONT_AND_BACK);
 		initScene(localGl2);
         bufferOk = true;
-		updateSceneObjects(localGl2);
+		updateSceneObjects(localGl2, new BufferPool(0), false, shared);
+		publishScene();
 		renderScene(localGl2, new GLU(),sizex, sizey);
 		buf.swapBuffers();
 		//System.out.println("catturo");
@@ -1433,73 +3947,191 @@ public class LDrawGLDisplay implements GLEventListener, MouseListener, MouseMoti
 	
 	/*
 	 * selection by window on bounding boxes 
+	 * window selection listeners get only parts entering or leaving window
+	 * called by thread handling input, with view of last displayed frame
 	 */
 	private void doSelectByWindow() {
 		
-        if (bufferOk) {
-        	int h = canvas.getHeight();
+		FrameView fv = frameView;
+        if (bufferOk && fv != null) {
+        	int h = fv.height;
         	// if user do an inverse window selection...
         	int xmin = Math.min(selcorner1x, selcorner2x);
         	int xmax = Math.max(selcorner1x, selcorner2x);
         	int ymin = Math.min(h-selcorner1y, h-selcorner2y);
         	int ymax = Math.max(h-selcorner1y, h-selcorner2y);
+        	if (selWindow != null && selWindowRect[0] == xmin && selWindowRect[1] == ymin &&
+        			selWindowRect[2] == xmax && selWindowRect[3] == ymax) {
+        		return;
+        	}
+        	selWindowRect[0] = xmin;
+        	selWindowRect[1] = ymin;
+        	selWindowRect[2] = xmax;
+        	selWindowRect[3] = ymax;
         	
 			//GLU glu = new GLU();
-			float[] pos = new float[3];
-			float[] vm = viewMatrix.getAsOpenGLMatrix();
+			float[] vm = fv.view;
 			float[] tl = new float[3];
 			float[] tr = new float[3];
 			float[] lr = new float[3];
 			float[] ll = new float[3];
 			glu.gluUnProject((float)xmin,(float) ymax, 0.01f, 
 					vm, 0, 
-					projectionMatrix, 0, viewPort, 0, 
+					fv.proj, 0, fv.viewport, 0, 
 					tl, 0);
 			glu.gluUnProject((float)xmax,(float) ymax, 0.01f, 
 					vm, 0, 
-					projectionMatrix, 0, viewPort, 0, 
+					fv.proj, 0, fv.viewport, 0, 
 					tr, 0);
 			glu.gluUnProject((float)xmax,(float) ymin, 0.01f, 
 					vm, 0, 
-					projectionMatrix, 0, viewPort, 0, 
+					fv.proj, 0, fv.viewport, 0, 
 					lr, 0);
 			glu.gluUnProject((float)xmin,(float) ymin, 0.01f, 
 					vm, 0, 
-					projectionMatrix, 0, viewPort, 0, 
+					fv.proj, 0, fv.viewport, 0, 
 					ll, 0);
 
 			//hotRemoveGadget(selWindow);
 			selWindow = DrawHelpers.selectionWindow(tl, tr, lr, ll);
 			addGadget(selWindow);
 
-			for (LDRenderedPart p : model.values()) {
-				if (p.isHidden())
-					continue;
-	        	float[] bb = p.getBboxVBO();
-	        	boolean inside = true;
-	        	for (int i=0;i<48;i+=6) {
-	    			glu.gluProject(bb[i],bb[i+1],bb[i+2], 
-	    					vm, 0, 
-	    					projectionMatrix, 0, viewPort, 0, 
-	    					pos, 0);
-	    			//System.out.println("i:"+i+" x:"+pos[0]+" y:"+pos[1]+" ym:"+ymin+" yM:"+ymax);
-	    			if (pos[0]<xmin || pos[0]>xmax ||
-	    					pos[1]<ymin || pos[1]>ymax) {
-	    				inside = false;
-	    				break;
-	    			}
-	        	}
-	        	if (inside) {
-	    			for (HandlingListener hl:handlingListeners) {
-	    				hl.picked(p.getId(), null,null, PickMode.ADD);
-	    			}
-	        	}
-	        }
+			if (visibleWindowSelect) {
+				selectVisibleByWindow(xmin, ymin, xmax+1, ymax+1);
+				return;
+			}
+			// boxes are projected again only if view or model changed
+			SceneSnapshot sc = scene;
+			windowSelector.update(sc.getParts(), sc.getPartEpoch(), 
+					fv.proj, vm, fv.viewport);
+			List<Integer> entered = new ArrayList<Integer>();
+			List<Integer> left = new ArrayList<Integer>();
+			windowSelector.select(xmin, ymin, xmax, ymax, entered, left);
+			notifyWindowSelection(entered, left);
         }
 	}
 	
 	
 	
+	/**
+	 * Selection by window on parts visible in pick buffer.
+	 * Window is read back by next frame if GL has fences, otherwise at once.
+	 * @param x0 window left
+	 * @param y0 window bottom
+	 * @param x1 window right, exclusive
+	 * @param y1 window top, exclusive
+	 */
+	private void selectVisibleByWindow(int x0, int y0, int x1, int y1) {
+		
+		x0 = Math.max(x0, viewPort[0]);
+		y0 = Math.max(y0, viewPort[1]);
+		x1 = Math.max(x0, Math.min(x1, viewPort[0]+viewPort[2]));
+		y1 = Math.max(y0, Math.min(y1, viewPort[1]+viewPort[3]));
+		if (windowReadback != null) {
+			windowPending.set(new int[] {x0, y0, x1, y1, windowSerial});
+			scheduler.request();
+			return;
+		}
+		int pixels = (x1-x0)*(y1-y0);
+		windowIndexes.clear();
+		if (pixels > 0) {
+			if (windowPixels == null || windowPixels.capacity() < pixels*4) {
+				windowPixels = Buffers.newDirectByteBuffer(pixels*4);
+			}
+			acquireContext();
+			renderPickBuffer(x0, y0, x1, y1);
+			currentGL2.glBindFramebuffer(GL2.GL_FRAMEBUFFER, fbo[0]);
+			if (pickInteger) {
+				currentGL2.glReadPixels(x0, y0, x1-x0, y1-y0, GL2.GL_RED_INTEGER, GL2.GL_UNSIGNED_INT, windowPixels);
+			}
+			else {
+				currentGL2.glReadPixels(x0, y0, x1-x0, y1-y0, GL2.GL_RGBA, GL2.GL_UNSIGNED_BYTE, windowPixels);
+			}
+			currentGL2.glBindFramebuffer(GL2.GL_FRAMEBUFFER, 0);
+			releaseContext();
+			PickRegionReadback.collect(windowPixels, pixels, pickInteger, windowIndexes);
+		}
+		selectVisible(pickIndexesToIds(windowIndexes));
+	}
+	
+	
+	
+	private int[] pickIndexesToIds(IntHashSet indexes) {
+		
+		int[] ids = indexes.toArray();
+		int n = 0;
+		for (int i : ids) {
+			int id = pickIds.getId(i);
+			// part removed after pick buffer was drawn
+			if (id != 0)
+				ids[n++] = id;
+		}
+		return Arrays.copyOf(ids, n);
+	}
+	
+	
+	
+	private void selectVisible(int[] visible) {
+		
+		List<Integer> entered = new ArrayList<Integer>();
+		List<Integer> left = new ArrayList<Integer>();
+		windowSelector.select(visible, entered, left);
+		notifyWindowSelection(entered, left);
+	}
+	
+	
+	
+	/**
+	 * Sends parts entering and leaving selection window to window selection 
+	 * listeners, and as ADD and REMOVE picks to other listeners
+	 */
+	private void notifyWindowSelection(List<Integer> entered, List<Integer> left) {
+		
+		if (entered.isEmpty() && left.isEmpty())
+			return;
+		final int[] in = toIntArray(entered);
+		final int[] out = toIntArray(left);
+		dispatch(new Runnable() {
+			@Override
+			public void run() {
+				for (HandlingListener hl:handlingListeners) {
+					if (hl instanceof WindowSelectionListener) {
+						((WindowSelectionListener) hl).windowSelectionChanged(in, out);
+					}
+					else if (hl instanceof BatchHandlingListener) {
+						// only changes, parts entering are added, parts leaving removed
+						if (in.length > 0)
+							((BatchHandlingListener) hl).pickedAll(in, PickMode.ADD);
+						if (out.length > 0)
+							((BatchHandlingListener) hl).pickedAll(out, PickMode.REMOVE);
+					}
+					else {
+						for (int id : in) {
+							hl.picked(id, null,null, PickMode.ADD);
+						}
+						for (int id : out) {
+							hl.picked(id, null,null, PickMode.REMOVE);
+						}
+					}
+				}
+			}
+		}, false);
+	}
+	
+	
+	
+	private static int[] toIntArray(List<Integer> l) {
+		
+		int[] a = new int[l.size()];
+		int n = 0;
+		for (Integer i : l) {
+			a[n++] = i;
+		}
+		return a;
+	}
+	
+	
+	
 	/* 
 	 * mouse listeners for part picking (non Javadoc)
 	 * @see java.awt.event.MouseListener#mouseClicked(java.awt.event.MouseEvent)
@@ -1521,17 +4153,19 @@ public class LDrawGLDisplay implements GLEventListener, MouseListener, MouseMoti
 		if ((button == MouseEvent.BUTTON1 || 
 				button == MouseEvent.BUTTON3) && 
 				bufferOk) {
-			glcontext.makeCurrent();
 			int clickedX = e.getX();
-			int clickedY = canvas.getHeight()-e.getY();
-			
-			currentGL2.glBindFramebuffer(GL2.GL_FRAMEBUFFER, fbo[0]);
-			ByteBuffer b = ByteBuffer.allocateDirect(4);
-			b.order(ByteOrder.nativeOrder());
-			currentGL2.glReadPixels(clickedX, clickedY, 1, 1, GL2.GL_RGB, GL2.GL_UNSIGNED_BYTE, b);
-			currentGL2.glBindFramebuffer(GL2.GL_FRAMEBUFFER, 0);
-			int selectedId = (int) (b.get(0)&0xff)*65536+(int)(b.get(1)&0xff)*256+(int)(b.get(2)&0xff);
-			glcontext.release();
+			int clickedY = canvasHeight-e.getY();
+			int selectedId;
+			if (cpuPick) {
+				RayHit hit = rayPick(e.getX(), e.getY());
+				selectedId = hit != null ? hit.getPartId() : 0;
+			}
+			else {
+				acquireContext();
+				renderPickRegion(clickedX, clickedY);
+				selectedId = pickIds.getId(readPickIndex(clickedX, clickedY));
+				releaseContext();
+			}
 			// test view to world coordinates
 			//GLU glu = new GLU();
 			float[] pos = new float[6];
@@ -1562,15 +4196,15 @@ public class LDrawGLDisplay implements GLEventListener, MouseListener, MouseMoti
 				pm = PickMode.CENTER_TO;
 			}
 			// calls listeners
-			for (HandlingListener p:handlingListeners) {
-				p.picked(selectedId, eyeNear,eyeFar, pm);
-			}
+			firePicked(selectedId, eyeNear,eyeFar, pm);
 		}
 	}
 
 	
 	@Override
 	public void mousePressed(MouseEvent e) { 
+		// motion before press is done first
+		processMotion(true);
 		// button 3 == rotation
 		if ((e.getModifiersEx() & 
 				(MouseEvent.BUTTON3_DOWN_MASK | MouseEvent.BUTTON2_DOWN_MASK | MouseEvent.BUTTON1_DOWN_MASK)) == 
@@ -1584,16 +4218,24 @@ public class LDrawGLDisplay implements GLEventListener, MouseListener, MouseMoti
 				MouseEvent.BUTTON1_DOWN_MASK) {
 			selcorner1x = e.getX();
 			selcorner1y = e.getY();
+			windowSelector.clear();
+			windowSerial++;
 		}
 	}
 
 	@Override
 	public void mouseReleased(MouseEvent e) { 
+		// last drag of selection window is done before window is removed
+		processMotion(true);
 
 		if (selWindow != null) {
 			removeGadget(DrawHelpers.SELWIN);
+			fireEndDragSelectionWindow();
 			selWindow = null;
-			canvas.repaint();
+			windowSelector.clear();
+			windowSerial++;
+			windowPending.set(null);
+			scheduler.request();
 		}
 	}
 
@@ -1608,13 +4250,24 @@ public class LDrawGLDisplay implements GLEventListener, MouseListener, MouseMoti
 	}
 
 
+	/**
+	 * Mouse drag is done in next frame, only latest drag event is kept
+	 */
 	@Override
 	public void mouseDragged(MouseEvent e) {
+		
+		pendingDrag = e;
+		scheduler.request();
+	}
+	
+	
+	
+	private void doMouseDragged(MouseEvent e) {
 
 		if ((e.getModifiersEx() & 
 				(MouseEvent.BUTTON3_DOWN_MASK | MouseEvent.BUTTON2_DOWN_MASK | MouseEvent.BUTTON1_DOWN_MASK)) == 
 						MouseEvent.BUTTON3_DOWN_MASK) {
-			float factor = (float)Math.PI/(canvas.getWidth()>360?canvas.getWidth():360) ;
+			float factor = (float)Math.PI/(canvasWidth>360?canvasWidth:360) ;
 			int deltax = centerx - e.getX();
 			int deltay = centery - e.getY();
 			//System.out.println("x="+deltax + " y="+deltay); //DB
@@ -1637,7 +4290,7 @@ public class LDrawGLDisplay implements GLEventListener, MouseListener, MouseMoti
 								   	.rotateX(deltay*factor);
 				}
 			}
-			canvas.repaint();
+			scheduler.request();
 		}
 		else if ((e.getModifiersEx() & 
 				(MouseEvent.BUTTON3_DOWN_MASK | MouseEvent.BUTTON2_DOWN_MASK | MouseEvent.BUTTON1_DOWN_MASK)) == 
@@ -1645,26 +4298,170 @@ public class LDrawGLDisplay implements GLEventListener, MouseListener, MouseMoti
 				&& selection) {
 			if (partHoverId != 0) {
 				// cursor is over a part
-				for (HandlingListener p:handlingListeners) {
-					p.startDragParts(partHoverId);
-				}
+				fireStartDragParts(partHoverId);
 			}
 			else {
 				// cursor is over "empty" area
 				selcorner2x = e.getX();
 				selcorner2y = e.getY();
 				doSelectByWindow();
-				canvas.repaint();
+				scheduler.request();
 			}
 		}
 	}
 
 
+	/**
+	 * Mouse move is done in next frame, only latest move event is kept
+	 */
 	@Override
 	public void mouseMoved(MouseEvent e) { 
+		
+		pendingMove = e;
+		scheduler.request();
+	}
+	
+	
+	
+	/**
+	 * Does mouse motion waiting since last frame.
+	 * Must be called from thread handling input (GUI thread, or render thread 
+	 * in render thread mode). Called by display() too, before drawing: there
+	 * GL context is already current and picks don't make it current again.
+	 * @param now true to do move even if hover throttle time isn't elapsed
+	 */
+	private void processMotion(boolean now) {
+		
+		MouseEvent e = pendingDrag;
+		if (e != null) {
+			pendingDrag = null;
+			doMouseDragged(e);
+		}
+		e = pendingMove;
+		if (e == null)
+			return;
+		long wait = lastMoveTime + hoverThrottleNanos - System.nanoTime();
+		if (!now && wait > 0) {
+			// move is kept, timer asks a frame when throttle time is elapsed
+			if (hoverTimer == null) {
+				hoverTimer = new Timer(0, new ActionListener() {
+					@Override
+					public void actionPerformed(ActionEvent ev) {
+						scheduler.request();
+					}
+				});
+				hoverTimer.setRepeats(false);
+			}
+			hoverTimer.setInitialDelay((int) (wait / 1000000) + 1);
+			hoverTimer.restart();
+			return;
+		}
+		pendingMove = null;
+		lastMoveTime = System.nanoTime();
+		doMouseMoved(e);
+	}
+	
+	
+	
+	/**
+	 * Makes GL context current for a synchronous pick, if it isn't already
+	 * (input handled inside display())
+	 */
+	private void acquireContext() {
+		
+		if (!inFrame)
+			glcontext.makeCurrent();
+	}
+	
+	
+	
+	/**
+	 * Releases GL context made current by {@link #acquireContext()}
+	 */
+	private void releaseContext() {
+		
+		if (!inFrame)
+			glcontext.release();
+	}
+	
+	
+	
+	/**
+	 * Handles mouse events queued by NEWT window, in render thread mode
+	 */
+	private void processInput() {
+		
+		MouseEvent e;
+		while ((e = inputQueue.poll()) != null) {
+			switch (e.getID()) {
+			case MouseEvent.MOUSE_CLICKED:
+				mouseClicked(e);
+				break;
+			case MouseEvent.MOUSE_PRESSED:
+				mousePressed(e);
+				break;
+			case MouseEvent.MOUSE_RELEASED:
+				mouseReleased(e);
+				break;
+			case MouseEvent.MOUSE_MOVED:
+				mouseMoved(e);
+				break;
+			case MouseEvent.MOUSE_DRAGGED:
+				mouseDragged(e);
+				break;
+			case MouseEvent.MOUSE_WHEEL:
+				mouseWheelMoved((MouseWheelEvent) e);
+				break;
+			default:
+				break;
+			}
+		}
+	}
+	
+	
+	
+	/**
+	 * Sets part under cursor, calling hover listeners only if it changed
+	 */
+	private void setHoverId(int id) {
+		
+		int old = partHoverId;
+		partHoverId = id;
+		if (old == id)
+			return;
+		fireHoverChange(old, id);
+	}
+	
+	
+	
+	/**
+	 * Gets minimum time between two mouse moves done, in milliseconds
+	 */
+	public int getHoverThrottle() {
+		return (int) (hoverThrottleNanos / 1000000);
+	}
+	
+	
+	
+	/**
+	 * Sets minimum time between two mouse moves done, to limit hover picks
+	 * and listener calls with high rate mice. Moves are always done at most 
+	 * once per frame; in between only latest move is kept.
+	 * @param ms minimum time in milliseconds, 0 for no throttle
+	 */
+	public void setHoverThrottle(int ms) {
+		
+		if (ms < 0)
+			throw new IllegalArgumentException("[LDrawGLDisplay] Hover throttle cannot be negative");
+		hoverThrottleNanos = ms * 1000000L;
+	}
+	
+	
+	
+	private void doMouseMoved(MouseEvent e) { 
 
 		int posX = e.getX();
-		int posY = canvas.getHeight()-e.getY();
+		int posY = canvasHeight-e.getY();
 		//GLU glu = new GLU();
 		float[] pos = new float[3];
 		glu.gluUnProject((float)posX,(float) posY, 0, 
@@ -1684,22 +4481,39 @@ public class LDrawGLDisplay implements GLEventListener, MouseListener, MouseMoti
 //				pos, 0);
 //		Point3D eye = new Point3D(pos);// Point3D(pos);
 		
+		if (cpuPick) {
+			// no GL context needed
+			RayHit hit = rayPick(e.getX(), e.getY());
+			setHoverId(hit != null ? hit.getPartId() : 0);
+			fireMoved(partHoverId, eyeNear,eyeFar, true, hit);
+			return;
+		}
+		if (hoverReadback != null && selection) {
+			// pick is read back by next frame, listeners are called when id is ready
+			hoverPending.set(new HoverRequest(posX, posY, eyeNear, eyeFar));
+			scheduler.request();
+			return;
+		}
 		// for part hover highlighting
 //		if (glcontext != null) {
-		glcontext.makeCurrent();
-		currentGL2.glBindFramebuffer(GL2.GL_FRAMEBUFFER, fbo[0]);
-		ByteBuffer b = ByteBuffer.allocateDirect(4);
-		b.order(ByteOrder.nativeOrder());
-		currentGL2.glReadPixels(posX, posY, 1, 1, GL2.GL_RGB, GL2.GL_UNSIGNED_BYTE, b);
-		partHoverId = (int) (b.get(0)&0xff)*65536+(int)(b.get(1)&0xff)*256+(int)(b.get(2)&0xff);
-		currentGL2.glBindFramebuffer(GL2.GL_FRAMEBUFFER, 0);
-		glcontext.release();
+		acquireContext();
+		renderPickRegion(posX, posY);
+		int hoverId = pickIds.getId(readPickIndex(posX, posY));
+		float[] depths = null;
+		int depthX = 0, depthY = 0;
+		if (hasHitPointListeners()) {
+			depthX = depthBlockOrigin(posX, viewPort[0], viewPort[2]);
+			depthY = depthBlockOrigin(posY, viewPort[1], viewPort[3]);
+			depths = readPickDepth(depthX, depthY);
+		}
+		releaseContext();
+		setHoverId(hoverId);
 //		}
 		//System.out.println("x="+pos[6]+" y="+pos[7]+" z="+pos[8]);
 		// calls listeners
-		for (HandlingListener p:handlingListeners) {
-			p.moved(partHoverId,eyeNear,eyeFar);
-		}
+		fireMoved(partHoverId, eyeNear,eyeFar, depths != null, depths == null ? null :
+				depthHit(partHoverId, depths, posX, posY, 
+					posX-depthX, posY-depthY, modelViewMatrix, projectionMatrix, viewPort));
 	}
 
 
@@ -1713,7 +4527,7 @@ public class LDrawGLDisplay implements GLEventListener, MouseListener, MouseMoti
 		else {
 			zoomFactor *= 1.1f;
 		}
-		canvas.repaint();
+		scheduler.request();
 	}
 
 }
@@ -0,0 +1,139 @@
+/*
+	Copyright 2026 agent <agent@local>
+	This file is part of LDraw3D
+
+	LDraw3D is free software: you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	LDraw3D is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with LDraw3D.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+
+
+package bricksnspace.ldraw3d;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * Delivers listener events on an executor, in order
+ * <p>
+ * Events are queued and run one at a time by a single task on executor,
+ * so order is kept with any executor, also a multithreaded one. An event
+ * posted as "latest" (i.e. cursor moved) replaces previous one if it is
+ * still last in queue, so a slow listener gets only last cursor position.
+ * Posting never blocks.
+ *
+ * @author agent
+ *
+ */
+class ListenerDispatcher implements Runnable {
+
+	private final Executor executor;
+	// guarded by this
+	private final ArrayDeque<Runnable> queue = new ArrayDeque<Runnable>();
+	private boolean scheduled = false;
+	private boolean latestAtTail = false;
+
+
+
+	/**
+	 * @param executor executor that runs listeners
+	 */
+	ListenerDispatcher(Executor executor) {
+
+		if (executor == null)
+			throw new NullPointerException("[ListenerDispatcher] Executor cannot be null");
+		this.executor = executor;
+	}
+
+
+
+	Executor getExecutor() {
+		return executor;
+	}
+
+
+
+	/**
+	 * Queues an event
+	 * @param event event delivery
+	 */
+	synchronized void post(Runnable event) {
+
+		queue.add(event);
+		latestAtTail = false;
+		schedule();
+	}
+
+
+
+	/**
+	 * Queues an event that replaces previous latest event, if nothing was queued after it
+	 * @param event event delivery
+	 */
+	synchronized void postLatest(Runnable event) {
+
+		if (latestAtTail)
+			queue.pollLast();
+		queue.add(event);
+		latestAtTail = true;
+		schedule();
+	}
+
+
+
+	private void schedule() {
+
+		if (scheduled)
+			return;
+		scheduled = true;
+		try {
+			executor.execute(this);
+		}
+		catch (RuntimeException ex) {
+			scheduled = false;
+			throw ex;
+		}
+	}
+
+
+
+	@Override
+	public void run() {
+
+		while (true) {
+			Runnable event;
+			synchronized (this) {
+				event = queue.poll();
+				if (event == null) {
+					scheduled = false;
+					return;
+				}
+				if (queue.isEmpty())
+					latestAtTail = false;
+			}
+			try {
+				event.run();
+			}
+			catch (RuntimeException ex) {
+				// a failing listener doesn't stop events for others
+				Logger.getLogger(ListenerDispatcher.class.getName()).log(Level.SEVERE, 
+						"[ListenerDispatcher] Listener error", ex);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,135 @@
+/*
+	Copyright 2026 agent <agent@local>
+	This file is part of LDraw3D
+
+	LDraw3D is free software: you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	LDraw3D is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with LDraw3D.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+
+
+package bricksnspace.ldraw3d;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+/**
+ * Unbounded lock-free queue, many producers and a single consumer
+ * <p>
+ * Linked list with a stub node: a producer swaps tail with an atomic
+ * exchange and links old tail to its node, so producers never block nor 
+ * retry. Consumer takes nodes from head without any atomic operation.
+ * A node linked while consumer is reading may be seen in next poll.
+ *
+ * @author agent
+ *
+ * @param <E> type of elements
+ */
+class MpscQueue<E> {
+
+	private static final class Node<E> {
+		
+		E value;
+		volatile Node<E> next;
+		
+		Node(E value) {
+			this.value = value;
+		}
+	}
+
+	private final AtomicReference<Node<E>> tail;
+	// consumer only
+	private Node<E> head;
+	private final AtomicInteger size = new AtomicInteger();
+
+
+
+	MpscQueue() {
+
+		Node<E> stub = new Node<E>(null);
+		head = stub;
+		tail = new AtomicReference<Node<E>>(stub);
+	}
+
+
+
+	/**
+	 * Adds an element, from any thread. Never blocks.
+	 * @param e element, not null
+	 */
+	void offer(E e) {
+
+		if (e == null)
+			throw new NullPointerException("[MpscQueue] Element cannot be null");
+		Node<E> n = new Node<E>(e);
+		size.incrementAndGet();
+		Node<E> prev = tail.getAndSet(n);
+		prev.next = n;
+	}
+
+
+
+	/**
+	 * Takes oldest element, from consumer thread only
+	 * @return element, null if queue is empty
+	 */
+	E poll() {
+
+		Node<E> next = head.next;
+		if (next == null)
+			return null;
+		E e = next.value;
+		// next becomes stub
+		next.value = null;
+		head = next;
+		size.decrementAndGet();
+		return e;
+	}
+
+
+
+	/**
+	 * Takes all elements, from consumer thread only
+	 * @param c collection that receives elements, in queue order
+	 * @return number of elements taken
+	 */
+	int drainTo(Collection<? super E> c) {
+
+		int n = 0;
+		E e;
+		while ((e = poll()) != null) {
+			c.add(e);
+			n++;
+		}
+		return n;
+	}
+
+
+
+	/**
+	 * Approximate number of elements, from any thread
+	 */
+	int size() {
+		return Math.max(0, size.get());
+	}
+
+
+
+	boolean isEmpty() {
+		return size() == 0;
+	}
+
+}
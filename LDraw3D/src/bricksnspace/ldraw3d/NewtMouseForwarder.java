@@ -0,0 +1,173 @@
+/*
+	Copyright 2026 agent <agent@local>
+	This file is part of LDraw3D
+
+	LDraw3D is free software: you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	LDraw3D is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with LDraw3D.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+
+
+package bricksnspace.ldraw3d;
+
+import java.awt.Component;
+import java.awt.event.InputEvent;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.util.Queue;
+
+import com.jogamp.newt.event.MouseListener;
+
+
+/**
+ * Forwards NEWT mouse events as AWT mouse events to a queue
+ * <p>
+ * Events are queued in NEWT event thread and consumed by render thread,
+ * so display handles mouse with same code used with an AWT canvas.
+ * Only modifiers and buttons used by display are translated.
+ *
+ * @author agent
+ *
+ */
+class NewtMouseForwarder implements MouseListener {
+
+	private final Component source;
+	private final Queue<MouseEvent> queue;
+	private final Runnable wake;
+
+
+
+	/**
+	 * @param source component used as source of AWT events
+	 * @param queue queue of AWT events
+	 * @param wake called after an event is queued (i.e. asks for a frame)
+	 */
+	NewtMouseForwarder(Component source, Queue<MouseEvent> queue, Runnable wake) {
+
+		this.source = source;
+		this.queue = queue;
+		this.wake = wake;
+	}
+
+
+
+	private void post(com.jogamp.newt.event.MouseEvent e, int id, int button) {
+
+		queue.add(new MouseEvent(source, id, e.getWhen(), modifiers(e), e.getX(), e.getY(), 
+				e.getClickCount(), false, button));
+		wake.run();
+	}
+
+
+
+	/**
+	 * AWT extended modifiers of a NEWT event
+	 */
+	private static int modifiers(com.jogamp.newt.event.MouseEvent e) {
+
+		int m = 0;
+		if (e.isShiftDown())
+			m |= InputEvent.SHIFT_DOWN_MASK;
+		if (e.isControlDown())
+			m |= InputEvent.CTRL_DOWN_MASK;
+		if (e.isAltDown())
+			m |= InputEvent.ALT_DOWN_MASK;
+		if (e.isMetaDown())
+			m |= InputEvent.META_DOWN_MASK;
+		if (e.isButtonDown(com.jogamp.newt.event.MouseEvent.BUTTON1))
+			m |= InputEvent.BUTTON1_DOWN_MASK;
+		if (e.isButtonDown(com.jogamp.newt.event.MouseEvent.BUTTON2))
+			m |= InputEvent.BUTTON2_DOWN_MASK;
+		if (e.isButtonDown(com.jogamp.newt.event.MouseEvent.BUTTON3))
+			m |= InputEvent.BUTTON3_DOWN_MASK;
+		return m;
+	}
+
+
+
+	/**
+	 * AWT button of a NEWT event, only first three buttons
+	 */
+	private static int button(com.jogamp.newt.event.MouseEvent e) {
+
+		int b = e.getButton();
+		return b >= MouseEvent.BUTTON1 && b <= MouseEvent.BUTTON3 ? b : MouseEvent.NOBUTTON;
+	}
+
+
+
+	@Override
+	public void mouseClicked(com.jogamp.newt.event.MouseEvent e) {
+		post(e, MouseEvent.MOUSE_CLICKED, button(e));
+	}
+
+
+
+	@Override
+	public void mouseEntered(com.jogamp.newt.event.MouseEvent e) {
+		post(e, MouseEvent.MOUSE_ENTERED, MouseEvent.NOBUTTON);
+	}
+
+
+
+	@Override
+	public void mouseExited(com.jogamp.newt.event.MouseEvent e) {
+		post(e, MouseEvent.MOUSE_EXITED, MouseEvent.NOBUTTON);
+	}
+
+
+
+	@Override
+	public void mousePressed(com.jogamp.newt.event.MouseEvent e) {
+		post(e, MouseEvent.MOUSE_PRESSED, button(e));
+	}
+
+
+
+	@Override
+	public void mouseReleased(com.jogamp.newt.event.MouseEvent e) {
+		post(e, MouseEvent.MOUSE_RELEASED, button(e));
+	}
+
+
+
+	@Override
+	public void mouseMoved(com.jogamp.newt.event.MouseEvent e) {
+		post(e, MouseEvent.MOUSE_MOVED, MouseEvent.NOBUTTON);
+	}
+
+
+
+	@Override
+	public void mouseDragged(com.jogamp.newt.event.MouseEvent e) {
+		post(e, MouseEvent.MOUSE_DRAGGED, MouseEvent.NOBUTTON);
+	}
+
+
+
+	@Override
+	public void mouseWheelMoved(com.jogamp.newt.event.MouseEvent e) {
+
+		float[] r = e.getRotation();
+		// with shift NEWT reports vertical wheel as horizontal
+		float rot = r[1] != 0 ? r[1] : r[0];
+		if (rot == 0)
+			return;
+		// NEWT rotation is positive scrolling up, AWT is positive scrolling down
+		queue.add(new MouseWheelEvent(source, MouseEvent.MOUSE_WHEEL, e.getWhen(), modifiers(e), 
+				e.getX(), e.getY(), 0, false, MouseWheelEvent.WHEEL_UNIT_SCROLL, 1, rot > 0 ? -1 : 1));
+		wake.run();
+	}
+
+}
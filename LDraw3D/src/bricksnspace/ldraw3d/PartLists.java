@@ -0,0 +1,216 @@
+/*
+	Copyright 2026 agent <agent@local>
+	This file is part of LDraw3D
+
+	LDraw3D is free software: you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	LDraw3D is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with LDraw3D.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+
+
+package bricksnspace.ldraw3d;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.media.opengl.GL2;
+
+import com.jogamp.common.nio.Buffers;
+
+
+/**
+ * Display lists of single parts, for static scene cache
+ * <p>
+ * Every part gets its own lists, compiled on first use, so a change to 
+ * a part recompiles only lists of that part. Scene lists call part lists
+ * by name, and a nested list is resolved when it is executed, so a part 
+ * recompiled in place doesn't need scene lists to be recorded again.
+ * <p>
+ * Lists live in canvas GL context and must be used only by GL thread.
+ * Methods compiling lists must not be called while a list is being recorded.
+ *
+ * @author agent
+ *
+ */
+class PartLists {
+
+	// list kinds
+	static final int TRIANGLES = 0;		// colored triangles with normals
+	static final int PLAIN = 1;			// triangles with normals, no color (dimmed)
+	static final int EDGES = 2;			// colored edges
+	static final int AUX = 3;			// colored aux lines
+	private static final int KINDS = 4;
+	
+	// first list name and mask of compiled kinds, by part
+	private Map<LDRenderedPart,int[]> lists = new IdentityHashMap<LDRenderedPart,int[]>();
+	// parts changed after their lists was compiled
+	private List<LDRenderedPart> changed = new ArrayList<LDRenderedPart>();
+
+
+
+	/**
+	 * Gets a part list, compiling it if needed.
+	 * Vertex array client state must be enabled before call
+	 * @param gl GL context
+	 * @param p part
+	 * @param kind list kind
+	 * @return list name
+	 */
+	int get(GL2 gl, LDRenderedPart p, int kind) {
+
+		int[] l = lists.get(p);
+		if (l == null) {
+			l = new int[] {gl.glGenLists(KINDS), 0};
+			lists.put(p, l);
+		}
+		if ((l[1] & (1 << kind)) == 0) {
+			compile(gl, p, l[0]+kind, kind);
+			l[1] |= 1 << kind;
+		}
+		return l[0]+kind;
+	}
+
+
+
+	/**
+	 * Part geometry or color changed. Lists of old part go to new one, 
+	 * and are compiled again by next {@link #refresh(GL2)}
+	 * @param old displayed part
+	 * @param p new part with same id, can be old one
+	 */
+	void changed(LDRenderedPart old, LDRenderedPart p) {
+
+		int[] l = lists.remove(old);
+		if (l == null)
+			return;
+		lists.put(p, l);
+		changed.add(p);
+	}
+
+
+
+	/**
+	 * Compiles again lists of changed parts, so scene lists calling them are current.
+	 * Vertex array client state must be enabled before call
+	 */
+	void refresh(GL2 gl) {
+
+		for (LDRenderedPart p : changed) {
+			int[] l = lists.get(p);
+			if (l == null)
+				continue;
+			for (int k=0;k<KINDS;k++) {
+				if ((l[1] & (1 << k)) != 0)
+					compile(gl, p, l[0]+k, k);
+			}
+		}
+		changed.clear();
+	}
+
+
+
+	/**
+	 * Deletes lists of a part removed from display
+	 */
+	void delete(GL2 gl, LDRenderedPart p) {
+
+		int[] l = lists.remove(p);
+		if (l != null)
+			gl.glDeleteLists(l[0], KINDS);
+	}
+
+
+
+	/**
+	 * Deletes all part lists
+	 */
+	void clear(GL2 gl) {
+
+		for (int[] l : lists.values()) {
+			gl.glDeleteLists(l[0], KINDS);
+		}
+		reset();
+	}
+
+
+
+	/**
+	 * Forgets all lists, i.e. when GL context is destroyed
+	 */
+	void reset() {
+
+		lists.clear();
+		changed.clear();
+	}
+
+
+
+	/**
+	 * Client state and buffer bindings aren't compiled in list, but are executed
+	 * immediately, so arrays are read from VBOs during compile
+	 */
+	private static void compile(GL2 gl, LDRenderedPart p, int name, int kind) {
+
+		gl.glNewList(name, GL2.GL_COMPILE);
+		switch (kind) {
+		case TRIANGLES:
+		case PLAIN:
+			if (p.getTriangleVertexCount() == 0)
+				break;
+			gl.glEnableClientState(GL2.GL_NORMAL_ARRAY);
+			gl.glBindBuffer(GL2.GL_ARRAY_BUFFER, p.getTriangleName());
+			gl.glVertexPointer(3, GL2.GL_FLOAT, 6 * Buffers.SIZEOF_FLOAT, 0);
+			gl.glNormalPointer(GL2.GL_FLOAT, 6 * Buffers.SIZEOF_FLOAT, 3 * Buffers.SIZEOF_FLOAT);
+			if (kind == TRIANGLES) {
+				gl.glEnableClientState(GL2.GL_COLOR_ARRAY);
+				gl.glBindBuffer(GL2.GL_ARRAY_BUFFER, p.getTriangleColorName());
+				gl.glColorPointer(4, GL2.GL_UNSIGNED_BYTE, 4 * Buffers.SIZEOF_BYTE, 0);
+			}
+			gl.glDrawArrays(GL2.GL_TRIANGLES, 0, p.getTriangleVertexCount());
+			gl.glDisableClientState(GL2.GL_COLOR_ARRAY);
+			gl.glDisableClientState(GL2.GL_NORMAL_ARRAY);
+			break;
+		case EDGES:
+			if (p.getLineVertexCount() == 0)
+				break;
+			drawLines(gl, p.getLineName(), p.getLineColorName(), p.getLineVertexCount());
+			break;
+		case AUX:
+			if (p.getAuxLineVertexCount() == 0)
+				break;
+			drawLines(gl, p.getAuxLineName(), p.getAuxLineColorName(), p.getAuxLineVertexCount());
+			break;
+		default:
+			break;
+		}
+		gl.glBindBuffer(GL2.GL_ARRAY_BUFFER, 0);
+		gl.glEndList();
+	}
+
+
+
+	private static void drawLines(GL2 gl, int vertices, int colors, int count) {
+
+		gl.glEnableClientState(GL2.GL_COLOR_ARRAY);
+		gl.glBindBuffer(GL2.GL_ARRAY_BUFFER, vertices);
+		gl.glVertexPointer(3, GL2.GL_FLOAT, 3 * Buffers.SIZEOF_FLOAT, 0);
+		gl.glBindBuffer(GL2.GL_ARRAY_BUFFER, colors);
+		gl.glColorPointer(4, GL2.GL_UNSIGNED_BYTE, 4 * Buffers.SIZEOF_BYTE, 0);
+		gl.glDrawArrays(GL2.GL_LINES, 0, count);
+		gl.glDisableClientState(GL2.GL_COLOR_ARRAY);
+	}
+
+}
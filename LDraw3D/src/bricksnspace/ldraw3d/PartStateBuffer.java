@@ -0,0 +1,438 @@
+/*
+	Copyright 2026 agent <agent@local>
+	This file is part of LDraw3D
+
+	LDraw3D is free software: you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	LDraw3D is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with LDraw3D.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+
+package bricksnspace.ldraw3d;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.media.opengl.GL3;
+
+import com.jogamp.common.nio.Buffers;
+
+
+/**
+ * Visual state of parts in GPU, one byte per part slot
+ * <p>
+ * State is a texture buffer (R8UI) read by shaders, that apply tint,
+ * transparency and discard. A copy of state is kept in CPU, so when parts
+ * change state only changed bytes are sent to GPU: a single part selection
+ * is a one byte update, and no draw list is rebuilt.
+ * Display reports parts taken from its state log, so only their slots are read.
+ * <p>
+ * Slots drawn by every render pass are kept in sorted lists, a state change
+ * inserts or removes only its slot, so a frame walks only slots it draws.
+ *
+ * @author agent
+ *
+ */
+class PartStateBuffer {
+
+	// part state flags, same values in shaders
+	static final int SELECTED = 1;
+	static final int HIGHLIGHT = 2;
+	static final int CONNECTED = 4;
+	static final int DIMMED = 8;
+	static final int HIDDEN = 16;
+
+	// flags as GLSL constants, to include in shader sources
+	static final String GLSL_FLAGS =
+			"const uint SELECTED = " + SELECTED + "u;\n" +
+			"const uint HIGHLIGHT = " + HIGHLIGHT + "u;\n" +
+			"const uint CONNECTED = " + CONNECTED + "u;\n" +
+			"const uint DIMMED = " + DIMMED + "u;\n" +
+			"const uint HIDDEN = " + HIDDEN + "u;\n";
+
+	// slot lists by render pass
+	static final int POLYGON_SLOTS = 0;		// visible, non dimmed parts with triangles
+	static final int EDGE_SLOTS = 1;		// visible, non dimmed parts
+	static final int DIMMED_SLOTS = 2;		// visible, dimmed parts with triangles
+	static final int PICK_SLOTS = 3;		// visible parts with triangles
+	static final int BOX_SLOTS = 4;			// visible, selected or connected parts
+	private static final int SLOT_LISTS = 5;
+	// above this fraction of changed slots lists are built again, not patched
+	private static final int PATCH_RATIO = 16;
+
+	private int buffer = 0;
+	private int texture = 0;
+	private byte[] shadow = new byte[0];
+	private int count = 0;
+	private int modeSerial = -1;
+	// parts changed since last sync
+	private List<LDRenderedPart> changedParts = new ArrayList<LDRenderedPart>();
+	private boolean readAll = false;
+	// changes every time a state in GPU changes
+	private int changeSerial = 0;
+	// upload buffer, grows when needed and is never shrunk
+	private ByteBuffer data = Buffers.newDirectByteBuffer(16);
+	private int[][] slotLists = new int[SLOT_LISTS][16];
+	private int[] slotListCounts = new int[SLOT_LISTS];
+	// changed slots and their previous state, by sync
+	private int[] dirtySlots = new int[16];
+	private byte[] dirtyOld = new byte[16];
+
+
+
+	void init(GL3 gl) {
+
+		int[] names = new int[1];
+		gl.glGenBuffers(1, names, 0);
+		buffer = names[0];
+		gl.glGenTextures(1, names, 0);
+		texture = names[0];
+	}
+
+
+
+	void dispose(GL3 gl) {
+
+		if (buffer == 0)
+			return;
+		gl.glDeleteTextures(1, new int[] {texture}, 0);
+		gl.glDeleteBuffers(1, new int[] {buffer}, 0);
+		buffer = 0;
+		texture = 0;
+		count = 0;
+		Arrays.fill(slotListCounts, 0);
+	}
+
+
+
+	static int getFlags(LDRenderedPart p) {
+
+		int f = 0;
+		if (p.isSelected())
+			f |= SELECTED;
+		if (p.isHighLighted())
+			f |= HIGHLIGHT;
+		// connected parts are marked only if selection is by bounding box
+		if (p.isConnected() && LDRenderedPart.isBoundingSelect())
+			f |= CONNECTED;
+		if (p.isDimmed())
+			f |= DIMMED;
+		if (p.isHidden())
+			f |= HIDDEN;
+		return f;
+	}
+
+
+
+	/**
+	 * Uploads state of all slots, i.e. when slots change
+	 * @param slots parts by slot
+	 * @param n slot count
+	 */
+	void rebuild(GL3 gl, LDRenderedPart[] slots, int n) {
+
+		// at least one byte, a texture buffer can't be empty
+		if (shadow.length < Math.max(n, 1))
+			shadow = new byte[Math.max(Math.max(n, 1), shadow.length*2)];
+		Arrays.fill(shadow, (byte) 0);
+		count = n;
+		// all states are read again
+		changedParts.clear();
+		readAll = false;
+		modeSerial = LDRenderedPart.getModeSerial();
+		changeSerial++;
+		for (int i=0;i<n;i++) {
+			shadow[i] = (byte) getFlags(slots[i]);
+		}
+		gl.glBindBuffer(GL3.GL_TEXTURE_BUFFER, buffer);
+		gl.glBufferData(GL3.GL_TEXTURE_BUFFER, Math.max(n, 1),
+				fill(0, Math.max(n, 1)), GL3.GL_DYNAMIC_DRAW);
+		gl.glBindBuffer(GL3.GL_TEXTURE_BUFFER, 0);
+		gl.glBindTexture(GL3.GL_TEXTURE_BUFFER, texture);
+		gl.glTexBuffer(GL3.GL_TEXTURE_BUFFER, GL3.GL_R8UI, buffer);
+		gl.glBindTexture(GL3.GL_TEXTURE_BUFFER, 0);
+		buildSlotLists(slots);
+	}
+
+
+
+	/**
+	 * Sends to GPU state of parts changed since last call.
+	 * Only slots of parts reported by {@link #changed(LDRenderedPart)} are read, 
+	 * all slots if selection mode changed. Runs of adjacent changed slots are 
+	 * sent with a single update.
+	 * @param lists draw lists with slots, same of last rebuild
+	 * @return number of changed slots
+	 */
+	int sync(GL3 gl, DrawLists lists) {
+
+		LDRenderedPart[] slots = lists.getSlots();
+		int changed = 0;
+		if (readAll || modeSerial != LDRenderedPart.getModeSerial()) {
+			// every part can change, reads all slots
+			changedParts.clear();
+			readAll = false;
+			modeSerial = LDRenderedPart.getModeSerial();
+			for (int i=0;i<count;i++) {
+				changed = markSlot(i, getFlags(slots[i]), changed);
+			}
+		}
+		else {
+			for (LDRenderedPart p : changedParts) {
+				int slot = lists.slotOf(p);
+				if (slot >= 0 && slot < count)
+					changed = markSlot(slot, getFlags(p), changed);
+			}
+			changedParts.clear();
+		}
+		if (changed == 0)
+			return 0;
+		Arrays.sort(dirtySlots, 0, changed);
+		gl.glBindBuffer(GL3.GL_TEXTURE_BUFFER, buffer);
+		int runStart = 0;
+		for (int i=1;i<=changed;i++) {
+			if (i == changed || dirtySlots[i] != dirtySlots[i-1] + 1) {
+				upload(gl, dirtySlots[runStart], dirtySlots[i-1] - dirtySlots[runStart] + 1);
+				runStart = i;
+			}
+		}
+		gl.glBindBuffer(GL3.GL_TEXTURE_BUFFER, 0);
+		changeSerial++;
+		if (changed > count / PATCH_RATIO) {
+			buildSlotLists(slots);
+		}
+		else {
+			for (int i=0;i<changed;i++) {
+				int slot = dirtySlots[i];
+				boolean triangles = slots[slot].getTriangleVertexCount() > 0;
+				int was = getLists(dirtyOld[i], triangles);
+				int is = getLists(shadow[slot], triangles);
+				for (int l=0;l<SLOT_LISTS;l++) {
+					int bit = 1 << l;
+					if ((was & bit) != (is & bit)) {
+						if ((is & bit) != 0)
+							insertSlot(l, slot);
+						else
+							removeSlot(l, slot);
+					}
+				}
+			}
+		}
+		return changed;
+	}
+
+
+
+	/**
+	 * Reports a part whose state changed, read by next sync
+	 */
+	void changed(LDRenderedPart p) {
+
+		if (readAll)
+			return;
+		if (changedParts.size() > count) {
+			// more changes than slots, next sync reads all slots
+			changedParts.clear();
+			readAll = true;
+			return;
+		}
+		changedParts.add(p);
+	}
+
+
+
+	/**
+	 * Stores a changed state in shadow copy, remembering its previous value
+	 * @return new count of changed slots
+	 */
+	private int markSlot(int slot, int flags, int changed) {
+
+		byte f = (byte) flags;
+		if (f == shadow[slot])
+			return changed;
+		if (changed == dirtySlots.length) {
+			dirtySlots = Arrays.copyOf(dirtySlots, changed*2);
+			dirtyOld = Arrays.copyOf(dirtyOld, changed*2);
+		}
+		dirtySlots[changed] = slot;
+		dirtyOld[changed] = shadow[slot];
+		shadow[slot] = f;
+		return changed+1;
+	}
+
+
+
+	/**
+	 * Render pass lists of a slot
+	 * @param f slot state
+	 * @param triangles true if part has triangles
+	 * @return bit mask of slot lists
+	 */
+	private static int getLists(int f, boolean triangles) {
+
+		if ((f & HIDDEN) != 0)
+			return 0;
+		int l = 0;
+		if (triangles)
+			l |= 1 << PICK_SLOTS;
+		if ((f & DIMMED) != 0) {
+			if (triangles)
+				l |= 1 << DIMMED_SLOTS;
+		}
+		else {
+			if (triangles)
+				l |= 1 << POLYGON_SLOTS;
+			l |= 1 << EDGE_SLOTS;
+		}
+		if ((f & (SELECTED|CONNECTED)) != 0)
+			l |= 1 << BOX_SLOTS;
+		return l;
+	}
+
+
+
+	/**
+	 * Sorts slots in render pass lists, from states in shadow copy.
+	 * Slots keep their order, so every list is sorted by VBO name as slots.
+	 */
+	private void buildSlotLists(LDRenderedPart[] slots) {
+
+		Arrays.fill(slotListCounts, 0);
+		for (int i=0;i<count;i++) {
+			int l = getLists(shadow[i], slots[i].getTriangleVertexCount() > 0);
+			for (int k=0;l != 0;k++,l >>>= 1) {
+				if ((l & 1) != 0)
+					addSlot(k, i);
+			}
+		}
+	}
+
+
+
+	private void addSlot(int list, int slot) {
+
+		int n = slotListCounts[list];
+		if (n == slotLists[list].length)
+			slotLists[list] = Arrays.copyOf(slotLists[list], n*2);
+		slotLists[list][n] = slot;
+		slotListCounts[list] = n+1;
+	}
+
+
+
+	/**
+	 * Inserts a slot in a list, keeping slot order
+	 */
+	private void insertSlot(int list, int slot) {
+
+		int n = slotListCounts[list];
+		int k = Arrays.binarySearch(slotLists[list], 0, n, slot);
+		if (k >= 0)
+			return;
+		k = -k - 1;
+		if (n == slotLists[list].length)
+			slotLists[list] = Arrays.copyOf(slotLists[list], n*2);
+		System.arraycopy(slotLists[list], k, slotLists[list], k+1, n-k);
+		slotLists[list][k] = slot;
+		slotListCounts[list] = n+1;
+	}
+
+
+
+	private void removeSlot(int list, int slot) {
+
+		int n = slotListCounts[list];
+		int k = Arrays.binarySearch(slotLists[list], 0, n, slot);
+		if (k < 0)
+			return;
+		System.arraycopy(slotLists[list], k+1, slotLists[list], k, n-k-1);
+		slotListCounts[list] = n-1;
+	}
+
+
+
+	/**
+	 * Changes every time slots are rebuilt or a state sent to GPU changes
+	 */
+	int getChangeSerial() {
+		return changeSerial;
+	}
+
+
+
+	/**
+	 * Slots drawn by a render pass, as last sent to GPU.
+	 * Only first {@link #getSlotCount(int)} elements are valid
+	 * @param list slot list constant
+	 */
+	int[] getSlotList(int list) {
+		return slotLists[list];
+	}
+
+
+
+	/**
+	 * Count of slots drawn by a render pass
+	 * @param list slot list constant
+	 */
+	int getSlotCount(int list) {
+		return slotListCounts[list];
+	}
+
+
+
+	private void upload(GL3 gl, int first, int n) {
+
+		gl.glBufferSubData(GL3.GL_TEXTURE_BUFFER, first, n, fill(first, n));
+	}
+
+
+
+	/**
+	 * Copies a range of shadow state in upload buffer
+	 * @return upload buffer, ready to be sent
+	 */
+	private ByteBuffer fill(int first, int n) {
+
+		if (data.capacity() < n)
+			data = Buffers.newDirectByteBuffer(Math.max(n, data.capacity()*2));
+		data.clear();
+		data.put(shadow, first, n);
+		data.flip();
+		return data;
+	}
+
+
+
+	/**
+	 * Binds state texture to a texture unit
+	 */
+	void bind(GL3 gl, int unit) {
+
+		gl.glActiveTexture(GL3.GL_TEXTURE0 + unit);
+		gl.glBindTexture(GL3.GL_TEXTURE_BUFFER, texture);
+		gl.glActiveTexture(GL3.GL_TEXTURE0);
+	}
+
+
+
+	/**
+	 * State of a slot, as last sent to GPU
+	 */
+	int getState(int slot) {
+		return shadow[slot];
+	}
+
+}
@@ -0,0 +1,114 @@
+/*
+	Copyright 2026 agent <agent@local>
+	This file is part of LDraw3D
+
+	LDraw3D is free software: you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	LDraw3D is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with LDraw3D.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+
+
+package bricksnspace.ldraw3d;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Visual state changes of parts displayed by a single display
+ * <p>
+ * A part added to a display reports its state changes (selected, hidden...)
+ * to log of that display only, so a display rebuilds its draw lists for 
+ * changes of its own parts and not for parts of other displays.
+ * A part belongs to at most one log, last display that added it.
+ * <p>
+ * Changed parts are queued once until taken by display, so snapshot and
+ * GPU state are updated only for parts that really changed.
+ *
+ * @author agent
+ *
+ */
+class PartStateLog {
+
+	private final AtomicInteger serial = new AtomicInteger();
+	private final MpscQueue<LDRenderedPart> changedParts = new MpscQueue<LDRenderedPart>();
+
+
+
+	/**
+	 * Called by a part of this log when its state changes, from any thread
+	 * @param p changed part
+	 */
+	void changed(LDRenderedPart p) {
+
+		if (p.setStateQueued())
+			changedParts.offer(p);
+		serial.incrementAndGet();
+	}
+
+
+
+	/**
+	 * Takes a changed part, by a single consumer thread
+	 * @return changed part, or null if there is no more queued parts
+	 */
+	LDRenderedPart pollChanged() {
+
+		LDRenderedPart p;
+		while ((p = changedParts.poll()) != null) {
+			p.clearStateQueued();
+			PartStateLog log = p.getStateLog();
+			if (log == this)
+				return p;
+			// part moved to another display while queued here
+			if (log != null)
+				log.changed(p);
+		}
+		return null;
+	}
+
+
+
+
+
+
+	/**
+	 * Serial of visual state, changes when a part of this log changes its state
+	 * or when global selection mode changes
+	 */
+	int getSerial() {
+		return serial.get() + LDRenderedPart.getModeSerial();
+	}
+
+
+
+	/**
+	 * Makes a part report its changes to this log
+	 */
+	void attach(LDRenderedPart p) {
+		p.setStateLog(this);
+	}
+
+
+
+	/**
+	 * Stops changes report of a part removed from display, 
+	 * if it isn't already attached to another log
+	 */
+	void detach(LDRenderedPart p) {
+		
+		if (p.getStateLog() == this)
+			p.setStateLog(null);
+	}
+
+}
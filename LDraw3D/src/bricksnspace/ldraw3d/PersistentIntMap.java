@@ -0,0 +1,271 @@
+/*
+	Copyright 2026 agent <agent@local>
+	This file is part of LDraw3D
+
+	LDraw3D is free software: you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	LDraw3D is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with LDraw3D.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+
+
+package bricksnspace.ldraw3d;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+
+/**
+ * Immutable map with int keys, every change returns a new map
+ * <p>
+ * Map is a 32-way trie on key bits: a change copies only nodes on path
+ * to its key, all other nodes are shared with previous map. So a map can 
+ * be published to other threads as it is, and next change doesn't copy 
+ * whole map. Null values aren't allowed.
+ *
+ * @author agent
+ *
+ * @param <V> type of values
+ */
+final class PersistentIntMap<V> {
+
+	private static final int BITS = 5;
+	private static final int WIDTH = 1 << BITS;
+	private static final int MASK = WIDTH - 1;
+	// top level uses 2 bits, other levels 5 bits each
+	private static final int TOP_SHIFT = 30;
+	private static final int LEVELS = 7;
+
+	private static final PersistentIntMap<Object> EMPTY = new PersistentIntMap<Object>(null, 0);
+
+	private final Object[] root;
+	private final int size;
+	private Collection<V> values = null;
+
+
+
+	private PersistentIntMap(Object[] root, int size) {
+
+		this.root = root;
+		this.size = size;
+	}
+
+
+
+	@SuppressWarnings("unchecked")
+	static <V> PersistentIntMap<V> empty() {
+		return (PersistentIntMap<V>) EMPTY;
+	}
+
+
+
+	@SuppressWarnings("unchecked")
+	V get(int key) {
+
+		Object[] n = root;
+		for (int shift=TOP_SHIFT;n != null;shift-=BITS) {
+			Object c = n[(key >>> shift) & MASK];
+			if (shift == 0)
+				return (V) c;
+			n = (Object[]) c;
+		}
+		return null;
+	}
+
+
+
+	boolean containsKey(int key) {
+		return get(key) != null;
+	}
+
+
+
+	int size() {
+		return size;
+	}
+
+
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+
+
+	/**
+	 * @return a map with value for key, this map if value is already there
+	 */
+	PersistentIntMap<V> put(int key, V value) {
+
+		if (value == null)
+			throw new NullPointerException("[PersistentIntMap] Null values aren't allowed");
+		V old = get(key);
+		if (old == value)
+			return this;
+		return new PersistentIntMap<V>(put(root, TOP_SHIFT, key, value), old == null ? size+1 : size);
+	}
+
+
+
+	private static Object[] put(Object[] node, int shift, int key, Object value) {
+
+		Object[] n = node == null ? new Object[WIDTH] : node.clone();
+		int i = (key >>> shift) & MASK;
+		if (shift == 0)
+			n[i] = value;
+		else
+			n[i] = put((Object[]) n[i], shift - BITS, key, value);
+		return n;
+	}
+
+
+
+	/**
+	 * @return a map without key, this map if key isn't there
+	 */
+	PersistentIntMap<V> remove(int key) {
+
+		if (get(key) == null)
+			return this;
+		if (size == 1)
+			return empty();
+		return new PersistentIntMap<V>(remove(root, TOP_SHIFT, key), size-1);
+	}
+
+
+
+	/**
+	 * Copies path to key without it, empty nodes are dropped
+	 * @return new node, null if it is empty
+	 */
+	private static Object[] remove(Object[] node, int shift, int key) {
+
+		int i = (key >>> shift) & MASK;
+		Object c = shift == 0 ? null : remove((Object[]) node[i], shift - BITS, key);
+		if (c == null) {
+			boolean empty = true;
+			for (int k=0;k<WIDTH && empty;k++) {
+				empty = k == i || node[k] == null;
+			}
+			if (empty)
+				return null;
+		}
+		Object[] n = node.clone();
+		n[i] = c;
+		return n;
+	}
+
+
+
+	/**
+	 * @return all values, read only, in key order (unsigned)
+	 */
+	Collection<V> values() {
+
+		// racy but harmless, views are all the same
+		Collection<V> v = values;
+		if (v == null) {
+			v = new AbstractCollection<V>() {
+				@Override
+				public Iterator<V> iterator() {
+					return new ValueIterator();
+				}
+
+				@Override
+				public int size() {
+					return size;
+				}
+			};
+			values = v;
+		}
+		return v;
+	}
+
+
+
+	/**
+	 * Walks trie depth first with an explicit stack
+	 */
+	private class ValueIterator implements Iterator<V> {
+
+		private final Object[][] nodes = new Object[LEVELS][];
+		private final int[] index = new int[LEVELS];
+		private int depth = -1;
+		private Object next = null;
+
+
+		ValueIterator() {
+
+			if (root != null) {
+				nodes[0] = root;
+				depth = 0;
+			}
+			advance();
+		}
+
+
+		private void advance() {
+
+			next = null;
+			while (depth >= 0) {
+				if (index[depth] == WIDTH) {
+					depth--;
+					if (depth >= 0)
+						index[depth]++;
+					continue;
+				}
+				Object c = nodes[depth][index[depth]];
+				if (c == null) {
+					index[depth]++;
+				}
+				else if (depth == LEVELS-1) {
+					next = c;
+					index[depth]++;
+					return;
+				}
+				else {
+					depth++;
+					nodes[depth] = (Object[]) c;
+					index[depth] = 0;
+				}
+			}
+		}
+
+
+		@Override
+		public boolean hasNext() {
+			return next != null;
+		}
+
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public V next() {
+
+			if (next == null)
+				throw new NoSuchElementException();
+			V v = (V) next;
+			advance();
+			return v;
+		}
+
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException("[PersistentIntMap] Map is immutable");
+		}
+	}
+
+}
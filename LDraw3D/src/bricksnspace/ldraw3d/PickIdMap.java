@@ -0,0 +1,177 @@
+/*
+	Copyright 2026 agent <agent@local>
+	This file is part of LDraw3D
+
+	LDraw3D is free software: you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	LDraw3D is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with LDraw3D.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+
+package bricksnspace.ldraw3d;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * Dense mapping from part ids to pick indexes
+ * <p>
+ * Every displayed part gets a small index, written in pick buffer instead
+ * of part id, so any id (negative, sparse or greater than 24 bit) can be
+ * picked and an index read from pick buffer is translated back with an
+ * array lookup. Index 0 is background. Indexes of removed parts are reused,
+ * but only when all asynchronous readbacks started before removal are done, 
+ * so a late readback never resolves to a part that wasn't under cursor.
+ * <p>
+ * Not thread safe: must be used only by display GL thread.
+ *
+ * @author agent
+ *
+ */
+class PickIdMap {
+
+	private Map<Integer,Integer> indexes = new HashMap<Integer,Integer>();
+	// part id by index, index 0 unused
+	private int[] ids = new int[64];
+	private int[] free = new int[16];
+	private int freeCount = 0;
+	private int next = 1;
+	// removed indexes waiting for readbacks, with frame of removal, in removal order
+	private int[] quarantine = new int[16];
+	private int[] quarantineFrame = new int[16];
+	private int quarantineStart = 0;
+	private int quarantineEnd = 0;
+
+
+
+	/**
+	 * Gets index for a part id, assigning a new one if needed
+	 * @param id part id
+	 * @return pick index, always greater than 0
+	 */
+	int add(int id) {
+
+		Integer i = indexes.get(id);
+		if (i != null)
+			return i;
+		int index;
+		if (freeCount > 0) {
+			index = free[--freeCount];
+		}
+		else {
+			index = next++;
+			if (index == ids.length)
+				ids = Arrays.copyOf(ids, ids.length*2);
+		}
+		ids[index] = id;
+		indexes.put(id, index);
+		return index;
+	}
+
+
+
+	/**
+	 * Frees index of a removed part. Index reads as background at once,
+	 * and is reused only after frame of removal is retired.
+	 * @param id part id
+	 * @param frame current frame
+	 * @see #retire(int)
+	 */
+	void remove(int id, int frame) {
+
+		Integer i = indexes.remove(id);
+		if (i == null)
+			return;
+		ids[i] = 0;
+		if (quarantineEnd == quarantine.length) {
+			int n = quarantineEnd - quarantineStart;
+			if (n == quarantine.length) {
+				quarantine = Arrays.copyOf(quarantine, n*2);
+				quarantineFrame = Arrays.copyOf(quarantineFrame, n*2);
+			}
+			else {
+				System.arraycopy(quarantine, quarantineStart, quarantine, 0, n);
+				System.arraycopy(quarantineFrame, quarantineStart, quarantineFrame, 0, n);
+			}
+			quarantineStart = 0;
+			quarantineEnd = n;
+		}
+		quarantine[quarantineEnd] = i;
+		quarantineFrame[quarantineEnd] = frame;
+		quarantineEnd++;
+	}
+
+
+
+	/**
+	 * Makes reusable indexes removed up to a frame
+	 * @param frame last frame whose readbacks are all done
+	 */
+	void retire(int frame) {
+
+		while (quarantineStart < quarantineEnd && quarantineFrame[quarantineStart] <= frame) {
+			if (freeCount == free.length)
+				free = Arrays.copyOf(free, free.length*2);
+			free[freeCount++] = quarantine[quarantineStart++];
+		}
+		if (quarantineStart == quarantineEnd) {
+			quarantineStart = 0;
+			quarantineEnd = 0;
+		}
+	}
+
+
+
+	/**
+	 * Forgets all indexes, only when there are no readbacks in flight
+	 */
+	void clear() {
+
+		indexes.clear();
+		Arrays.fill(ids, 0);
+		freeCount = 0;
+		quarantineStart = 0;
+		quarantineEnd = 0;
+		next = 1;
+	}
+
+
+
+	/**
+	 * Pick index of a part
+	 * @param id part id
+	 * @return index, 0 if part has none
+	 */
+	int getIndex(int id) {
+
+		Integer i = indexes.get(id);
+		return i == null ? 0 : i;
+	}
+
+
+
+	/**
+	 * Part id for an index read from pick buffer
+	 * @param index pick index
+	 * @return part id, 0 for background or unknown index
+	 */
+	int getId(int index) {
+
+		if (index <= 0 || index >= next)
+			return 0;
+		return ids[index];
+	}
+
+}
@@ -27,10 +27,11 @@ package bricksnspace.ldraw3d;
  * NONE: selected part replace current selection. If no part selected, clear current selection
  * ADD: add selected part to current selection
  * TOGGLE: if part is in current selection remove it, else add
+ * REMOVE: remove selected part from current selection (i.e. part leaving selection window)
  * 
  * @author Mario Pascucci
  *
  */
 public enum PickMode {
-	NONE, ADD, TOGGLE, CENTER_TO
+	NONE, ADD, TOGGLE, CENTER_TO, REMOVE
 }
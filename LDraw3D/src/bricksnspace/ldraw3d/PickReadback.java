@@ -0,0 +1,275 @@
+/*
+	Copyright 2026 agent <agent@local>
+	This file is part of LDraw3D
+
+	LDraw3D is free software: you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	LDraw3D is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with LDraw3D.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+
+package bricksnspace.ldraw3d;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import javax.media.opengl.GL;
+import javax.media.opengl.GL3ES3;
+
+
+/**
+ * Asynchronous readback of pick pixels with a ring of pixel buffer objects
+ * <p>
+ * A read copies a pixel from current read framebuffer in a PBO and puts a
+ * fence after it, so call returns immediately. Results are taken with
+ * {@link #poll(GL3ES3)} only when fence is signaled, usually in next frame,
+ * so CPU never waits for GPU. Every read carries a tag (i.e. cursor position
+ * and eye ray) returned with its result. A read can also copy depth of a
+ * 3x3 block of pixels, to compute surface point and normal.
+ * <p>
+ * Not thread safe: must be used only by thread owning GL context.
+ *
+ * @author agent
+ *
+ * @param <T> type of tag carried with every read
+ */
+class PickReadback<T> {
+
+	private static final int PIXEL_SIZE = 4;
+	// depth block side and offset of depths in buffer
+	static final int DEPTH_SIDE = 3;
+	private static final int DEPTH_OFFSET = PIXEL_SIZE;
+	private static final int BUFFER_SIZE = DEPTH_OFFSET + DEPTH_SIDE*DEPTH_SIDE*4;
+
+	// R32UI pick buffer, RGBA8 otherwise
+	private final boolean integer;
+
+	private int[] pbo;
+	private long[] fence;
+	private Object[] tag;
+	private boolean[] hasDepth;
+	// oldest read in flight and number of reads in flight
+	private int head = 0;
+	private int inFlight = 0;
+	// last result taken by poll
+	private int value = 0;
+	private T valueTag = null;
+	private float[] depth = new float[DEPTH_SIDE*DEPTH_SIDE];
+	private boolean valueDepth = false;
+
+
+
+	/**
+	 * @param size max number of reads in flight
+	 * @param integer true if pick buffer is R32UI, false if RGBA8
+	 */
+	PickReadback(int size, boolean integer) {
+
+		this.integer = integer;
+		pbo = new int[size];
+		fence = new long[size];
+		tag = new Object[size];
+		hasDepth = new boolean[size];
+	}
+
+
+
+	void init(GL3ES3 gl) {
+
+		gl.glGenBuffers(pbo.length, pbo, 0);
+		for (int i=0;i<pbo.length;i++) {
+			gl.glBindBuffer(GL3ES3.GL_PIXEL_PACK_BUFFER, pbo[i]);
+			gl.glBufferData(GL3ES3.GL_PIXEL_PACK_BUFFER, BUFFER_SIZE, null, GL3ES3.GL_STREAM_READ);
+		}
+		gl.glBindBuffer(GL3ES3.GL_PIXEL_PACK_BUFFER, 0);
+	}
+
+
+
+	void dispose(GL3ES3 gl) {
+
+		if (pbo[0] == 0)
+			return;
+		clear(gl);
+		gl.glDeleteBuffers(pbo.length, pbo, 0);
+		pbo = new int[pbo.length];
+	}
+
+
+
+	/**
+	 * Discards all reads in flight
+	 */
+	void clear(GL3ES3 gl) {
+
+		for (;inFlight > 0;inFlight--) {
+			gl.glDeleteSync(fence[head]);
+			fence[head] = 0;
+			tag[head] = null;
+			head = (head + 1) % pbo.length;
+		}
+	}
+
+
+
+	/**
+	 * Starts reading a pixel from current read framebuffer
+	 * @param gl GL context
+	 * @param x window x, from left
+	 * @param y window y, from bottom
+	 * @param t tag returned with result
+	 * @return false if ring is full, read is not started
+	 */
+	boolean read(GL3ES3 gl, int x, int y, T t) {
+
+		return read(gl, x, y, -1, -1, t);
+	}
+
+
+
+	/**
+	 * Starts reading a pixel and a block of depths from current read framebuffer
+	 * @param gl GL context
+	 * @param x window x, from left
+	 * @param y window y, from bottom
+	 * @param depthX left of depth block, -1 to skip depth
+	 * @param depthY bottom of depth block
+	 * @param t tag returned with result
+	 * @return false if ring is full, read is not started
+	 */
+	boolean read(GL3ES3 gl, int x, int y, int depthX, int depthY, T t) {
+
+		if (inFlight == pbo.length)
+			return false;
+		int i = (head + inFlight) % pbo.length;
+		gl.glBindBuffer(GL3ES3.GL_PIXEL_PACK_BUFFER, pbo[i]);
+		if (integer) {
+			gl.glReadPixels(x, y, 1, 1, GL3ES3.GL_RED_INTEGER, GL.GL_UNSIGNED_INT, 0);
+		}
+		else {
+			gl.glReadPixels(x, y, 1, 1, GL.GL_RGBA, GL.GL_UNSIGNED_BYTE, 0);
+		}
+		hasDepth[i] = depthX >= 0;
+		if (hasDepth[i]) {
+			gl.glReadPixels(depthX, depthY, DEPTH_SIDE, DEPTH_SIDE, GL3ES3.GL_DEPTH_COMPONENT, GL.GL_FLOAT, DEPTH_OFFSET);
+		}
+		gl.glBindBuffer(GL3ES3.GL_PIXEL_PACK_BUFFER, 0);
+		fence[i] = gl.glFenceSync(GL3ES3.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+		tag[i] = t;
+		inFlight++;
+		return true;
+	}
+
+
+
+	/**
+	 * Takes oldest result, if ready. Never waits for GPU.
+	 * @return true if a result is available with {@link #getValue()} and {@link #getTag()}
+	 */
+	@SuppressWarnings("unchecked")
+	boolean poll(GL3ES3 gl) {
+
+		if (inFlight == 0)
+			return false;
+		int i = head;
+		if (gl.glClientWaitSync(fence[i], 0, 0) == GL3ES3.GL_TIMEOUT_EXPIRED)
+			return false;
+		gl.glDeleteSync(fence[i]);
+		fence[i] = 0;
+		gl.glBindBuffer(GL3ES3.GL_PIXEL_PACK_BUFFER, pbo[i]);
+		ByteBuffer b = gl.glMapBufferRange(GL3ES3.GL_PIXEL_PACK_BUFFER, 0, BUFFER_SIZE, GL.GL_MAP_READ_BIT);
+		value = decode(b, integer);
+		valueDepth = hasDepth[i];
+		if (valueDepth) {
+			b.order(ByteOrder.nativeOrder());
+			for (int d=0;d<depth.length;d++)
+				depth[d] = b.getFloat(DEPTH_OFFSET + d*4);
+		}
+		gl.glUnmapBuffer(GL3ES3.GL_PIXEL_PACK_BUFFER);
+		gl.glBindBuffer(GL3ES3.GL_PIXEL_PACK_BUFFER, 0);
+		valueTag = (T) tag[i];
+		tag[i] = null;
+		head = (head + 1) % pbo.length;
+		inFlight--;
+		return true;
+	}
+
+
+
+	/**
+	 * Decodes a pick value read from pick buffer
+	 * @param b pixel data
+	 * @param integer true if read as unsigned int, false if as RGB bytes
+	 * @return pick value
+	 */
+	static int decode(ByteBuffer b, boolean integer) {
+
+		if (integer)
+			return b.order(ByteOrder.nativeOrder()).getInt(0);
+		return (b.get(0)&0xff)*65536+(b.get(1)&0xff)*256+(b.get(2)&0xff);
+	}
+
+
+
+	/**
+	 * Number of reads not yet taken
+	 */
+	int pending() {
+		return inFlight;
+	}
+
+
+
+	/**
+	 * Tag of oldest read in flight
+	 * @return tag, null if there are no reads in flight
+	 */
+	@SuppressWarnings("unchecked")
+	T getOldestTag() {
+		return inFlight == 0 ? null : (T) tag[head];
+	}
+
+
+
+	/**
+	 * Pick value read by last successful {@link #poll(GL3ES3)}
+	 */
+	int getValue() {
+		return value;
+	}
+
+
+
+	/**
+	 * Depth block read by last successful {@link #poll(GL3ES3)}, by rows from bottom
+	 * @param d array of DEPTH_SIDE*DEPTH_SIDE floats
+	 * @return false if read was without depth
+	 */
+	boolean getDepth(float[] d) {
+
+		if (!valueDepth)
+			return false;
+		System.arraycopy(depth, 0, d, 0, depth.length);
+		return true;
+	}
+
+
+
+	/**
+	 * Tag of last successful {@link #poll(GL3ES3)}
+	 */
+	T getTag() {
+		return valueTag;
+	}
+
+}
@@ -0,0 +1,210 @@
+/*
+	Copyright 2026 agent <agent@local>
+	This file is part of LDraw3D
+
+	LDraw3D is free software: you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	LDraw3D is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with LDraw3D.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+
+
+package bricksnspace.ldraw3d;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import javax.media.opengl.GL;
+import javax.media.opengl.GL3ES3;
+
+
+/**
+ * Asynchronous readback of a rectangle of pick buffer with a pixel buffer object
+ * <p>
+ * Whole rectangle is copied with a single read in a PBO, with a fence
+ * after it, and taken in a later frame when fence is signaled. Result is
+ * set of distinct pick values in rectangle, so its cost depends on
+ * rectangle size and not on model size. Only one read is in flight.
+ * <p>
+ * Not thread safe: must be used only by thread owning GL context.
+ *
+ * @author agent
+ *
+ */
+class PickRegionReadback {
+
+	private static final int PIXEL_SIZE = 4;
+
+	// R32UI pick buffer, RGBA8 otherwise
+	private final boolean integer;
+
+	private int[] pbo = new int[1];
+	private int capacity = 0;
+	private long fence = 0;
+	private int pixels = 0;
+	private int tag = 0;
+
+
+
+	/**
+	 * @param integer true if pick buffer is R32UI, false if RGBA8
+	 */
+	PickRegionReadback(boolean integer) {
+
+		this.integer = integer;
+	}
+
+
+
+	void init(GL3ES3 gl) {
+
+		gl.glGenBuffers(1, pbo, 0);
+	}
+
+
+
+	void dispose(GL3ES3 gl) {
+
+		if (pbo[0] == 0)
+			return;
+		clear(gl);
+		gl.glDeleteBuffers(1, pbo, 0);
+		pbo[0] = 0;
+		capacity = 0;
+	}
+
+
+
+	/**
+	 * Discards read in flight
+	 */
+	void clear(GL3ES3 gl) {
+
+		if (fence != 0) {
+			gl.glDeleteSync(fence);
+			fence = 0;
+		}
+	}
+
+
+
+	/**
+	 * @return true if a read is in flight
+	 */
+	boolean busy() {
+		return fence != 0;
+	}
+
+
+
+	/**
+	 * Starts reading a rectangle from current read framebuffer
+	 * @param gl GL context
+	 * @param x0 rectangle left
+	 * @param y0 rectangle bottom
+	 * @param x1 rectangle right, exclusive
+	 * @param y1 rectangle top, exclusive
+	 * @param t tag returned with result
+	 * @return false if a read is in flight, read is not started
+	 */
+	boolean read(GL3ES3 gl, int x0, int y0, int x1, int y1, int t) {
+
+		if (fence != 0)
+			return false;
+		pixels = Math.max(0, x1-x0) * Math.max(0, y1-y0);
+		gl.glBindBuffer(GL3ES3.GL_PIXEL_PACK_BUFFER, pbo[0]);
+		if (pixels * PIXEL_SIZE > capacity) {
+			capacity = pixels * PIXEL_SIZE;
+			gl.glBufferData(GL3ES3.GL_PIXEL_PACK_BUFFER, capacity, null, GL3ES3.GL_STREAM_READ);
+		}
+		if (pixels > 0) {
+			if (integer) {
+				gl.glReadPixels(x0, y0, x1-x0, y1-y0, GL3ES3.GL_RED_INTEGER, GL.GL_UNSIGNED_INT, 0);
+			}
+			else {
+				gl.glReadPixels(x0, y0, x1-x0, y1-y0, GL.GL_RGBA, GL.GL_UNSIGNED_BYTE, 0);
+			}
+		}
+		gl.glBindBuffer(GL3ES3.GL_PIXEL_PACK_BUFFER, 0);
+		fence = gl.glFenceSync(GL3ES3.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+		tag = t;
+		return true;
+	}
+
+
+
+	/**
+	 * Takes result of read in flight, if ready. Never waits for GPU.
+	 * @param gl GL context
+	 * @param values set filled with distinct pick values, background excluded
+	 * @return true if result is available, with its tag from {@link #getTag()}
+	 */
+	boolean poll(GL3ES3 gl, IntHashSet values) {
+
+		if (fence == 0)
+			return false;
+		if (gl.glClientWaitSync(fence, 0, 0) == GL3ES3.GL_TIMEOUT_EXPIRED)
+			return false;
+		gl.glDeleteSync(fence);
+		fence = 0;
+		values.clear();
+		if (pixels == 0)
+			return true;
+		gl.glBindBuffer(GL3ES3.GL_PIXEL_PACK_BUFFER, pbo[0]);
+		ByteBuffer b = gl.glMapBufferRange(GL3ES3.GL_PIXEL_PACK_BUFFER, 0, pixels * PIXEL_SIZE, GL.GL_MAP_READ_BIT);
+		collect(b, pixels, integer, values);
+		gl.glUnmapBuffer(GL3ES3.GL_PIXEL_PACK_BUFFER);
+		gl.glBindBuffer(GL3ES3.GL_PIXEL_PACK_BUFFER, 0);
+		return true;
+	}
+
+
+
+	/**
+	 * Adds distinct pick values of a block of pixels to a set
+	 * @param b pixel data, 4 bytes per pixel
+	 * @param pixels pixel count
+	 * @param integer true if read as unsigned int, false if as RGBA bytes
+	 * @param values set of values, background excluded
+	 */
+	static void collect(ByteBuffer b, int pixels, boolean integer, IntHashSet values) {
+
+		b.order(ByteOrder.nativeOrder());
+		int last = 0;
+		for (int i=0;i<pixels;i++) {
+			int v;
+			if (integer) {
+				v = b.getInt(i*PIXEL_SIZE);
+			}
+			else {
+				v = (b.get(i*PIXEL_SIZE)&0xff)*65536+(b.get(i*PIXEL_SIZE+1)&0xff)*256+(b.get(i*PIXEL_SIZE+2)&0xff);
+			}
+			// a part covers runs of pixels, hash only changes
+			if (v == last)
+				continue;
+			last = v;
+			if (v != 0)
+				values.add(v);
+		}
+	}
+
+
+
+	/**
+	 * Tag of last successful {@link #poll(GL3ES3, IntHashSet)}
+	 */
+	int getTag() {
+		return tag;
+	}
+
+}
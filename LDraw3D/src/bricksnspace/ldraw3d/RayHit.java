@@ -0,0 +1,86 @@
+/*
+	Copyright 2026 agent <agent@local>
+	This file is part of LDraw3D
+
+	LDraw3D is free software: you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	LDraw3D is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with LDraw3D.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+
+package bricksnspace.ldraw3d;
+
+import bricksnspace.j3dgeom.Point3D;
+
+
+/**
+ * Result of a ray pick: part hit, point and surface normal
+ * 
+ * @author agent
+ *
+ */
+public class RayHit {
+
+	private final int partId;
+	private final Point3D point;
+	private final Point3D normal;
+	private final float distance;
+	
+	
+	RayHit(int partId, Point3D point, Point3D normal, float distance) {
+		
+		this.partId = partId;
+		this.point = point;
+		this.normal = normal;
+		this.distance = distance;
+	}
+
+
+	/**
+	 * @return id of part hit
+	 */
+	public int getPartId() {
+		return partId;
+	}
+
+
+	/**
+	 * @return hit point, in model coordinates
+	 */
+	public Point3D getPoint() {
+		return point;
+	}
+
+
+	/**
+	 * @return unit normal of surface hit, facing viewer
+	 */
+	public Point3D getNormal() {
+		return normal;
+	}
+
+
+	/**
+	 * @return distance of hit point from ray origin
+	 */
+	public float getDistance() {
+		return distance;
+	}
+
+
+	@Override
+	public String toString() {
+		return "RayHit [partId=" + partId + ", point=" + point + ", normal=" + normal + "]";
+	}
+
+}
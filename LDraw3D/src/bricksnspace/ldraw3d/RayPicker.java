@@ -0,0 +1,185 @@
+/*
+	Copyright 2026 agent <agent@local>
+	This file is part of LDraw3D
+
+	LDraw3D is free software: you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	LDraw3D is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with LDraw3D.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+
+
+package bricksnspace.ldraw3d;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import bricksnspace.j3dgeom.Point3D;
+
+
+/**
+ * Pure CPU ray picking over displayed parts
+ * <p>
+ * A top level hierarchy over part bounding boxes finds parts along the ray,
+ * and a triangle hierarchy per part mesh finds exact hit point and normal.
+ * Part meshes are in model coordinates, so a mesh tree is shared by parts 
+ * with the same triangle VBO (i.e. a part replaced only for color change)
+ * and dropped when VBO is no longer referenced.
+ * <p>
+ * Thread safe: display drops changed meshes in GL thread while picks
+ * can come from any thread, so every method locks picker.
+ *
+ * @author agent
+ *
+ */
+class RayPicker {
+
+	private Map<float[],TriangleBVH> meshes = new WeakHashMap<float[],TriangleBVH>();
+	private PartTree scene = null;
+	private long modelSerial = -1;
+	private float[] normal = new float[3];
+	
+	
+	
+	/**
+	 * Top level hierarchy, primitives are parts
+	 */
+	private class PartTree extends BoundingVolumeHierarchy {
+		
+		private LDRenderedPart[] parts;
+		private LDRenderedPart hitPart;
+		private TriangleBVH hitMesh;
+		private int hitTriangle;
+		
+		
+		private PartTree(Collection<LDRenderedPart> model) {
+			
+			parts = model.toArray(new LDRenderedPart[model.size()]);
+			float[] bounds = new float[parts.length*6];
+			for (int i=0;i<parts.length;i++) {
+				float[] bb = parts[i].getBboxVBO();
+				for (int a=0;a<3;a++) {
+					bounds[i*6+a] = Float.MAX_VALUE;
+					bounds[i*6+3+a] = -Float.MAX_VALUE;
+				}
+				if (bb == null)
+					continue;
+				for (int v=0;v<bb.length;v+=3) {
+					for (int a=0;a<3;a++) {
+						bounds[i*6+a] = Math.min(bounds[i*6+a], bb[v+a]);
+						bounds[i*6+3+a] = Math.max(bounds[i*6+3+a], bb[v+a]);
+					}
+				}
+			}
+			build(bounds, parts.length);
+		}
+		
+		
+		@Override
+		protected float intersect(int prim, float[] o, float[] d, float tmax) {
+			
+			LDRenderedPart p = parts[prim];
+			if (p.isHidden() || p.getTriangleVertexCount() == 0) 
+				return tmax;
+			TriangleBVH mesh = getMesh(p);
+			float t = mesh.cast(o, d, tmax);
+			if (t < tmax) {
+				hitPart = p;
+				hitMesh = mesh;
+				hitTriangle = mesh.getHitTriangle();
+			}
+			return t;
+		}
+	}
+	
+	
+	
+	/**
+	 * Rebuilds top level hierarchy if model changed
+	 * @param model displayed parts
+	 * @param serial part epoch of scene, changes with parts only
+	 */
+	synchronized void update(Collection<LDRenderedPart> model, long serial) {
+		
+		if (scene != null && serial == modelSerial)
+			return;
+		scene = new PartTree(model);
+		modelSerial = serial;
+	}
+	
+	
+	
+	private TriangleBVH getMesh(LDRenderedPart p) {
+		
+		float[] vbo = p.getTrianglesVBO();
+		TriangleBVH mesh = meshes.get(vbo);
+		if (mesh == null) {
+			mesh = new TriangleBVH(vbo, p.getTriangleVertexCount());
+			meshes.put(vbo, mesh);
+		}
+		return mesh;
+	}
+	
+	
+	
+	/**
+	 * Casts a ray through model
+	 * @param near ray origin, near to viewer
+	 * @param far ray end, far from viewer
+	 * @return nearest hit between near and far, or null if no part is hit
+	 */
+	synchronized RayHit pick(float[] near, float[] far) {
+		
+		if (scene == null)
+			return null;
+		float[] d = {far[0]-near[0], far[1]-near[1], far[2]-near[2]};
+		scene.hitPart = null;
+		scene.hitMesh = null;
+		float t = scene.traverse(near, d, 1f);
+		LDRenderedPart p = scene.hitPart;
+		if (p == null)
+			return null;
+		scene.hitMesh.getNormal(scene.hitTriangle, d, normal);
+		float len = (float) Math.sqrt(d[0]*d[0]+d[1]*d[1]+d[2]*d[2]);
+		scene.hitPart = null;
+		scene.hitMesh = null;
+		return new RayHit(p.getId(), 
+				new Point3D(near[0]+d[0]*t, near[1]+d[1]*t, near[2]+d[2]*t),
+				new Point3D(normal[0], normal[1], normal[2]), t*len);
+	}
+	
+	
+	
+	/**
+	 * Drops triangle tree of a part whose vertices changed in place
+	 * @param p part
+	 */
+	synchronized void invalidateMesh(LDRenderedPart p) {
+		
+		meshes.remove(p.getTrianglesVBO());
+	}
+	
+	
+	
+	/**
+	 * Drops all trees, i.e. when model is cleared
+	 */
+	synchronized void clear() {
+		
+		scene = null;
+		meshes.clear();
+		modelSerial = -1;
+	}
+
+}
@@ -0,0 +1,259 @@
+/*
+	Copyright 2026 agent <agent@local>
+	This file is part of LDraw3D
+
+	LDraw3D is free software: you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	LDraw3D is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with LDraw3D.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+
+
+package bricksnspace.ldraw3d;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Immutable view of parts and gadgets displayed in a frame
+ * <p>
+ * Display publishes a new snapshot after a frame that changed parts, part
+ * states or gadgets, so any thread can read a consistent scene without locks 
+ * and without racing with GL thread. Epoch grows with every published snapshot,
+ * part epoch only with snapshots where parts changed.
+ * <p>
+ * Snapshots are versions of the same persistent maps: a new snapshot shares
+ * all unchanged parts with previous one, and gadgets too if they didn't 
+ * change. Visual state of every part is stored as flags at publish time,
+ * so it doesn't change with live part. Bounds are computed on first request, 
+ * or extended from previous snapshot if parts were only added.
+ * 
+ * @author agent
+ *
+ */
+public final class SceneSnapshot {
+
+	// part state flags
+	public static final int SELECTED = 1;
+	public static final int HIGHLIGHTED = 2;
+	public static final int CONNECTED = 4;
+	public static final int DIMMED = 8;
+	public static final int HIDDEN = 16;
+
+	static final SceneSnapshot EMPTY = new SceneSnapshot(0, 0, 
+			PersistentIntMap.<LDRenderedPart>empty(), PersistentIntMap.<Integer>empty(), 
+			Collections.<Integer,Gadget3D>emptyMap());
+	
+	// computed bounds when there are no parts
+	private static final float[] NO_BOUNDS = new float[0];
+	
+	private final long epoch;
+	private final long partEpoch;
+	private final PersistentIntMap<LDRenderedPart> parts;
+	private final PersistentIntMap<Integer> states;
+	private final Map<Integer,Gadget3D> gadgets;
+	// model bounds: xmin, ymin, zmin, xmax, ymax, zmax, null if not yet computed
+	private volatile float[] bounds = null;
+	
+	
+	/**
+	 * @param epoch snapshot number
+	 * @param partEpoch number of last snapshot where parts changed
+	 * @param parts displayed parts, by id
+	 * @param states state flags of displayed parts, by id
+	 * @param gadgets displayed gadgets, read only, never changed after this call
+	 */
+	private SceneSnapshot(long epoch, long partEpoch, PersistentIntMap<LDRenderedPart> parts,
+			PersistentIntMap<Integer> states, Map<Integer,Gadget3D> gadgets) {
+		
+		this.epoch = epoch;
+		this.partEpoch = partEpoch;
+		this.parts = parts;
+		this.states = states;
+		this.gadgets = gadgets;
+	}
+	
+	
+	
+	/**
+	 * Makes next snapshot from this one
+	 * @param partEpoch number of last snapshot where parts changed
+	 * @param model displayed parts
+	 * @param partStates state flags of displayed parts
+	 * @param gadgetMap displayed gadgets, copied only if not null
+	 * @param added parts added since this snapshot, if no part was removed or moved, 
+	 * otherwise null
+	 * @return new snapshot
+	 */
+	SceneSnapshot next(long partEpoch, PersistentIntMap<LDRenderedPart> model, 
+			PersistentIntMap<Integer> partStates, Map<Integer,Gadget3D> gadgetMap, 
+			List<LDRenderedPart> added) {
+		
+		SceneSnapshot s = new SceneSnapshot(epoch+1, partEpoch, model, partStates, 
+				gadgetMap == null ? gadgets : 
+					Collections.unmodifiableMap(new HashMap<Integer,Gadget3D>(gadgetMap)));
+		float[] b = bounds;
+		if (model == parts) {
+			s.bounds = b;
+		}
+		else if (b != null && added != null) {
+			// only additions, bounds can only grow
+			b = b == NO_BOUNDS ? null : b.clone();
+			for (LDRenderedPart p : added) {
+				b = addBounds(b, p);
+			}
+			s.bounds = b == null ? NO_BOUNDS : b;
+		}
+		return s;
+	}
+	
+	
+	
+	/**
+	 * Visual state of a part as snapshot flags
+	 */
+	static int getState(LDRenderedPart p) {
+		
+		int f = 0;
+		if (p.isSelected())
+			f |= SELECTED;
+		if (p.isHighLighted())
+			f |= HIGHLIGHTED;
+		if (p.isConnected())
+			f |= CONNECTED;
+		if (p.isDimmed())
+			f |= DIMMED;
+		if (p.isHidden())
+			f |= HIDDEN;
+		return f;
+	}
+	
+	
+	
+	private static float[] addBounds(float[] b, LDRenderedPart p) {
+		
+		float[] bb = p.getBboxVBO();
+		if (bb == null || bb.length < 3)
+			return b;
+		if (b == null) {
+			b = new float[] {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE,
+					-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+		}
+		// bounding box VBO has endpoints of 12 edges, 3 coordinates each, no color.
+		// Vertices are read instead of part limits, that a fast move doesn't update
+		for (int i=0;i+2<bb.length;i+=3) {
+			for (int a=0;a<3;a++) {
+				b[a] = Math.min(b[a], bb[i+a]);
+				b[a+3] = Math.max(b[a+3], bb[i+a]);
+			}
+		}
+		return b;
+	}
+
+
+	/**
+	 * @return snapshot number, greater for newer snapshots
+	 */
+	public long getEpoch() {
+		return epoch;
+	}
+
+
+	/**
+	 * @return parts change number, same for snapshots where only gadgets or 
+	 * part states changed
+	 */
+	public long getPartEpoch() {
+		return partEpoch;
+	}
+
+
+	/**
+	 * @param id part id
+	 * @return displayed part, null if none
+	 */
+	public LDRenderedPart getPart(int id) {
+		return parts.get(id);
+	}
+
+
+	/**
+	 * @return displayed parts, read only
+	 */
+	public Collection<LDRenderedPart> getParts() {
+		return parts.values();
+	}
+
+
+	/**
+	 * @return number of displayed parts
+	 */
+	public int getPartCount() {
+		return parts.size();
+	}
+
+
+	/**
+	 * Visual state of a part when snapshot was published, 
+	 * as a combination of state flags
+	 * @param id part id
+	 * @return state flags, 0 if part isn't displayed
+	 */
+	public int getPartState(int id) {
+		
+		Integer f = states.get(id);
+		return f == null ? 0 : f;
+	}
+
+
+	/**
+	 * @param id gadget id
+	 * @return displayed gadget, null if none
+	 */
+	public Gadget3D getGadget(int id) {
+		return gadgets.get(id);
+	}
+
+
+	/**
+	 * @return displayed gadgets, read only
+	 */
+	public Collection<Gadget3D> getGadgets() {
+		return gadgets.values();
+	}
+
+
+	/**
+	 * @return bounds of all displayed parts, hidden too, as xmin, ymin, zmin, 
+	 * xmax, ymax, zmax in model coordinates, or null if there are no parts
+	 */
+	public float[] getBounds() {
+		
+		float[] b = bounds;
+		if (b == null) {
+			// computed once, concurrent calls compute same bounds
+			for (LDRenderedPart p : parts.values()) {
+				b = addBounds(b, p);
+			}
+			if (b == null)
+				b = NO_BOUNDS;
+			bounds = b;
+		}
+		return b == NO_BOUNDS ? null : b.clone();
+	}
+
+}
@@ -0,0 +1,442 @@
+/*
+	Copyright 2026 agent <agent@local>
+	This file is part of LDraw3D
+
+	LDraw3D is free software: you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	LDraw3D is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with LDraw3D.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+
+package bricksnspace.ldraw3d;
+
+import java.nio.FloatBuffer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.media.opengl.GL3;
+
+import com.jogamp.common.nio.Buffers;
+
+
+/**
+ * Shader based renderer for display, uses only OpenGL 3.2 core profile functions
+ * <p>
+ * Vertex data are the same VBOs used by fixed function pipeline, read as generic
+ * vertex attributes through a vertex array object. Projection, view and light
+ * are in a uniform buffer updated once per frame. Part visual state (selected,
+ * highlighted, dimmed, hidden) is read by shader from part state buffer using
+ * part slot, so state changes don't need draw list changes.
+ * Fragment shader writes part pick index in a second, integer output, so when
+ * an integer color attachment is bound as second draw buffer main pass fills
+ * pick buffer too.
+ *
+ * @author agent
+ *
+ */
+class ShaderRenderer {
+
+	// vertex attribute locations
+	static final int POSITION = 0;
+	static final int NORMAL = 1;
+	static final int COLOR = 2;
+
+	// uniform block binding point for frame data
+	private static final int FRAME_BINDING = 0;
+	// texture unit for part state buffer
+	static final int STATE_UNIT = 0;
+	// projection, model-view, light direction
+	private static final int FRAME_FLOATS = 16+16+4;
+
+	// render passes
+	static final int PASS_OPAQUE = 0;		// non dimmed parts polygons
+	static final int PASS_DIMMED = 1;		// dimmed parts only
+	static final int PASS_EDGES = 2;		// non dimmed parts edges
+	static final int PASS_PICK = 3;			// pick index only, no state tint
+
+	// eye-space direction of display light, as LIGHT1 in fixed function pipeline
+	private static final float[] LIGHT = {5f,-9f,-10f};
+
+	private static final String VERTEX_SHADER =
+			"#version 150\n" +
+			"layout(std140) uniform Frame {\n" +
+			"	mat4 projection;\n" +
+			"	mat4 modelView;\n" +
+			"	vec4 lightDir;\n" +
+			"};\n" +
+			PartStateBuffer.GLSL_FLAGS +
+			"in vec3 position;\n" +
+			"in vec3 normal;\n" +
+			"in vec4 color;\n" +
+			"uniform usamplerBuffer partState;\n" +
+			"uniform int slot;\n" +
+			"uniform int pass;\n" +
+			"uniform vec4 flatColor;\n" +
+			"uniform bool useFlat;\n" +
+			"uniform bool lit;\n" +
+			"out vec4 vColor;\n" +
+			"flat out int vDiscard;\n" +
+			"void main() {\n" +
+			"	uint flags = slot >= 0 ? texelFetch(partState, slot).r : 0u;\n" +
+			"	bool dim = (flags & DIMMED) != 0u;\n" +
+			"	bool hide = (flags & HIDDEN) != 0u;\n" +
+			"	if (pass != " + PASS_PICK + ")\n" +
+			"		hide = hide || dim != (pass == " + PASS_DIMMED + ");\n" +
+			"	vDiscard = hide ? 1 : 0;\n" +
+			"	vec4 c = useFlat ? flatColor : color;\n" +
+			"	if (pass == " + PASS_DIMMED + ")\n" +
+			"		c = vec4(0.9, 0.9, 0.9, 0.2);\n" +
+			"	if (lit) {\n" +
+			"		vec3 n = normalize(mat3(modelView) * normal);\n" +
+			"		c.rgb *= min(0.4 + 0.8 * max(dot(n, lightDir.xyz), 0.0), 1.0);\n" +
+			"	}\n" +
+			"	float a = pass == " + PASS_EDGES + " ? 1.0 : 0.4;\n" +
+			"	vec4 tint = vec4(0.0);\n" +
+			"	if (pass == " + PASS_PICK + ")\n" +
+			"		tint = vec4(0.0);\n" +
+			"	else if ((flags & HIGHLIGHT) != 0u)\n" +
+			"		tint = vec4(0.95, 0.4, 0.4, a);\n" +
+			"	else if ((flags & CONNECTED) != 0u)\n" +
+			"		tint = vec4(1.0, 0.7, 0.6, a);\n" +
+			"	else if ((flags & SELECTED) != 0u)\n" +
+			"		tint = vec4(0.6, 1.0, 0.5, a);\n" +
+			"	vColor = vec4(mix(c.rgb, tint.rgb, tint.a), c.a);\n" +
+			"	gl_Position = projection * modelView * vec4(position, 1.0);\n" +
+			"}\n";
+
+	private static final String FRAGMENT_SHADER =
+			"#version 150\n" +
+			"in vec4 vColor;\n" +
+			"flat in int vDiscard;\n" +
+			"uniform uint pickId;\n" +
+			"out vec4 fragColor;\n" +
+			"out uint fragId;\n" +
+			"void main() {\n" +
+			"	if (vDiscard != 0)\n" +
+			"		discard;\n" +
+			"	fragColor = vColor;\n" +
+			"	fragId = pickId;\n" +
+			"}\n";
+
+	private int program = 0;
+	private int vao = 0;
+	private int frameUbo = 0;
+	private int flatColorLoc;
+	private int slotLoc;
+	private int passLoc;
+	private int useFlatLoc;
+	private int litLoc;
+	private int pickIdLoc;
+	private FloatBuffer frameData = Buffers.newDirectFloatBuffer(FRAME_FLOATS);
+	// current uniform values, to avoid redundant updates
+	private boolean useFlat;
+	private boolean lit;
+	private int pass;
+
+
+
+	/**
+	 * Compiles shaders and allocates GL objects
+	 * @param gl GL context, must be current
+	 * @return false if shaders can't be used in this context
+	 */
+	boolean init(GL3 gl) {
+
+		int vs = compile(gl, GL3.GL_VERTEX_SHADER, VERTEX_SHADER);
+		int fs = compile(gl, GL3.GL_FRAGMENT_SHADER, FRAGMENT_SHADER);
+		if (vs == 0 || fs == 0) {
+			gl.glDeleteShader(vs);
+			gl.glDeleteShader(fs);
+			return false;
+		}
+		program = gl.glCreateProgram();
+		gl.glAttachShader(program, vs);
+		gl.glAttachShader(program, fs);
+		gl.glBindAttribLocation(program, POSITION, "position");
+		gl.glBindAttribLocation(program, NORMAL, "normal");
+		gl.glBindAttribLocation(program, COLOR, "color");
+		gl.glBindFragDataLocation(program, 0, "fragColor");
+		gl.glBindFragDataLocation(program, 1, "fragId");
+		gl.glLinkProgram(program);
+		gl.glDeleteShader(vs);
+		gl.glDeleteShader(fs);
+		int[] status = new int[1];
+		gl.glGetProgramiv(program, GL3.GL_LINK_STATUS, status, 0);
+		if (status[0] == 0) {
+			Logger.getGlobal().log(Level.WARNING, "[ShaderRenderer] Unable to link program:\n"+getProgramLog(gl, program));
+			gl.glDeleteProgram(program);
+			program = 0;
+			return false;
+		}
+		flatColorLoc = gl.glGetUniformLocation(program, "flatColor");
+		slotLoc = gl.glGetUniformLocation(program, "slot");
+		passLoc = gl.glGetUniformLocation(program, "pass");
+		useFlatLoc = gl.glGetUniformLocation(program, "useFlat");
+		litLoc = gl.glGetUniformLocation(program, "lit");
+		pickIdLoc = gl.glGetUniformLocation(program, "pickId");
+		gl.glUniformBlockBinding(program, gl.glGetUniformBlockIndex(program, "Frame"), FRAME_BINDING);
+		gl.glUseProgram(program);
+		gl.glUniform1i(gl.glGetUniformLocation(program, "partState"), STATE_UNIT);
+		gl.glUseProgram(0);
+
+		int[] names = new int[1];
+		gl.glGenVertexArrays(1, names, 0);
+		vao = names[0];
+		gl.glGenBuffers(1, names, 0);
+		frameUbo = names[0];
+		gl.glBindBuffer(GL3.GL_UNIFORM_BUFFER, frameUbo);
+		gl.glBufferData(GL3.GL_UNIFORM_BUFFER, FRAME_FLOATS*Buffers.SIZEOF_FLOAT, null, GL3.GL_DYNAMIC_DRAW);
+		gl.glBindBuffer(GL3.GL_UNIFORM_BUFFER, 0);
+		return true;
+	}
+
+
+
+	boolean isReady() {
+		return program != 0;
+	}
+
+
+
+	/**
+	 * Frees GL objects
+	 * @param gl GL context, must be current
+	 */
+	void dispose(GL3 gl) {
+
+		if (program == 0)
+			return;
+		gl.glDeleteProgram(program);
+		gl.glDeleteVertexArrays(1, new int[] {vao}, 0);
+		gl.glDeleteBuffers(1, new int[] {frameUbo}, 0);
+		program = 0;
+		vao = 0;
+		frameUbo = 0;
+	}
+
+
+
+	private static int compile(GL3 gl, int type, String source) {
+
+		int shader = gl.glCreateShader(type);
+		gl.glShaderSource(shader, 1, new String[] {source}, new int[] {source.length()}, 0);
+		gl.glCompileShader(shader);
+		int[] status = new int[1];
+		gl.glGetShaderiv(shader, GL3.GL_COMPILE_STATUS, status, 0);
+		if (status[0] == 0) {
+			int[] len = new int[1];
+			gl.glGetShaderiv(shader, GL3.GL_INFO_LOG_LENGTH, len, 0);
+			byte[] log = new byte[Math.max(len[0], 1)];
+			gl.glGetShaderInfoLog(shader, log.length, len, 0, log, 0);
+			Logger.getGlobal().log(Level.WARNING, "[ShaderRenderer] Unable to compile shader:\n"+new String(log, 0, len[0]));
+			gl.glDeleteShader(shader);
+			return 0;
+		}
+		return shader;
+	}
+
+
+
+	private static String getProgramLog(GL3 gl, int program) {
+
+		int[] len = new int[1];
+		gl.glGetProgramiv(program, GL3.GL_INFO_LOG_LENGTH, len, 0);
+		byte[] log = new byte[Math.max(len[0], 1)];
+		gl.glGetProgramInfoLog(program, log.length, len, 0, log, 0);
+		return new String(log, 0, len[0]);
+	}
+
+
+
+	/**
+	 * Starts drawing with shaders, updates frame uniforms
+	 * @param projection projection matrix, OpenGL order
+	 * @param modelView model-view matrix, OpenGL order
+	 * @param state part state buffer
+	 */
+	void begin(GL3 gl, float[] projection, float[] modelView, PartStateBuffer state) {
+
+		float d = (float) Math.sqrt(LIGHT[0]*LIGHT[0]+LIGHT[1]*LIGHT[1]+LIGHT[2]*LIGHT[2]);
+		frameData.clear();
+		frameData.put(projection, 0, 16);
+		frameData.put(modelView, 0, 16);
+		frameData.put(LIGHT[0]/d).put(LIGHT[1]/d).put(LIGHT[2]/d).put(0f);
+		frameData.rewind();
+		gl.glBindBuffer(GL3.GL_UNIFORM_BUFFER, frameUbo);
+		gl.glBufferSubData(GL3.GL_UNIFORM_BUFFER, 0, FRAME_FLOATS*Buffers.SIZEOF_FLOAT, frameData);
+		gl.glBindBuffer(GL3.GL_UNIFORM_BUFFER, 0);
+		gl.glBindBufferBase(GL3.GL_UNIFORM_BUFFER, FRAME_BINDING, frameUbo);
+		state.bind(gl, STATE_UNIT);
+		gl.glUseProgram(program);
+		gl.glBindVertexArray(vao);
+		gl.glEnableVertexAttribArray(POSITION);
+		useFlat = false;
+		lit = false;
+		pass = PASS_OPAQUE;
+		gl.glUniform1i(useFlatLoc, 0);
+		gl.glUniform1i(litLoc, 0);
+		gl.glUniform1i(passLoc, PASS_OPAQUE);
+		gl.glUniform1i(slotLoc, -1);
+		gl.glUniform1ui(pickIdLoc, 0);
+	}
+
+
+
+	/**
+	 * Continues drawing after another program was used, uniforms are kept
+	 */
+	void resume(GL3 gl) {
+
+		gl.glUseProgram(program);
+		gl.glBindVertexArray(vao);
+	}
+
+
+
+	/**
+	 * Ends drawing with shaders, restores default program and vertex array
+	 */
+	void end(GL3 gl) {
+
+		gl.glDisableVertexAttribArray(POSITION);
+		gl.glDisableVertexAttribArray(NORMAL);
+		gl.glDisableVertexAttribArray(COLOR);
+		gl.glBindBuffer(GL3.GL_ARRAY_BUFFER, 0);
+		gl.glBindVertexArray(0);
+		gl.glUseProgram(0);
+	}
+
+
+
+	void setLighting(GL3 gl, boolean enable) {
+
+		if (lit != enable) {
+			lit = enable;
+			gl.glUniform1i(litLoc, enable ? 1 : 0);
+		}
+	}
+
+
+
+	/**
+	 * Uses a single color for next draws instead of per-vertex colors
+	 */
+	void setFlatColor(GL3 gl, float r, float g, float b, float a) {
+
+		if (!useFlat) {
+			useFlat = true;
+			gl.glUniform1i(useFlatLoc, 1);
+		}
+		gl.glUniform4f(flatColorLoc, r, g, b, a);
+	}
+
+
+
+	/**
+	 * Back to per-vertex colors
+	 */
+	void setVertexColor(GL3 gl) {
+
+		if (useFlat) {
+			useFlat = false;
+			gl.glUniform1i(useFlatLoc, 0);
+		}
+	}
+
+
+
+	/**
+	 * Sets render pass, parts not belonging to pass are discarded by shader
+	 * @param p pass constant
+	 */
+	void setPass(GL3 gl, int p) {
+
+		if (pass != p) {
+			pass = p;
+			gl.glUniform1i(passLoc, p);
+		}
+	}
+
+
+
+	/**
+	 * Sets part slot for next draws, to read part state
+	 * @param slot part slot, -1 for objects without state (gadgets...)
+	 */
+	void setSlot(GL3 gl, int slot) {
+
+		gl.glUniform1i(slotLoc, slot);
+	}
+
+
+
+	/**
+	 * Sets pick index written in second color output
+	 * @param index part pick index, 0 for background
+	 */
+	void setPickId(GL3 gl, int index) {
+
+		gl.glUniform1ui(pickIdLoc, index);
+	}
+
+
+
+	/**
+	 * Draws triangles of a part
+	 * @param normals if true uses normals, i.e. for lighting
+	 */
+	void drawTriangles(GL3 gl, LDRenderedPart p, boolean normals) {
+
+        gl.glBindBuffer(GL3.GL_ARRAY_BUFFER, p.getTriangleName());
+        gl.glVertexAttribPointer(POSITION, 3, GL3.GL_FLOAT, false, 6 * Buffers.SIZEOF_FLOAT, 0);
+        if (normals) {
+        	gl.glEnableVertexAttribArray(NORMAL);
+        	gl.glVertexAttribPointer(NORMAL, 3, GL3.GL_FLOAT, false, 6 * Buffers.SIZEOF_FLOAT, 3 * Buffers.SIZEOF_FLOAT);
+        }
+        else {
+        	gl.glDisableVertexAttribArray(NORMAL);
+        }
+        colorArray(gl, p.getTriangleColorName());
+        gl.glDrawArrays(GL3.GL_TRIANGLES, 0, p.getTriangleVertexCount());
+	}
+
+
+
+	/**
+	 * Draws lines from a vertex buffer, with per-vertex colors
+	 * from a color buffer or with flat color if color buffer is 0
+	 */
+	void drawLines(GL3 gl, int vertexName, int colorName, int count) {
+
+        gl.glBindBuffer(GL3.GL_ARRAY_BUFFER, vertexName);
+        gl.glVertexAttribPointer(POSITION, 3, GL3.GL_FLOAT, false, 3 * Buffers.SIZEOF_FLOAT, 0);
+        gl.glDisableVertexAttribArray(NORMAL);
+        colorArray(gl, colorName);
+        gl.glDrawArrays(GL3.GL_LINES, 0, count);
+	}
+
+
+
+	private void colorArray(GL3 gl, int colorName) {
+
+        if (!useFlat && colorName != 0) {
+        	gl.glEnableVertexAttribArray(COLOR);
+        	gl.glBindBuffer(GL3.GL_ARRAY_BUFFER, colorName);
+        	gl.glVertexAttribPointer(COLOR, 4, GL3.GL_UNSIGNED_BYTE, true, 4 * Buffers.SIZEOF_BYTE, 0);
+        }
+        else {
+        	gl.glDisableVertexAttribArray(COLOR);
+        }
+	}
+
+}
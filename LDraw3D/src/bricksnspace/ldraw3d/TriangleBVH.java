@@ -0,0 +1,144 @@
+/*
+	Copyright 2026 agent <agent@local>
+	This file is part of LDraw3D
+
+	LDraw3D is free software: you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	LDraw3D is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with LDraw3D.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+
+package bricksnspace.ldraw3d;
+
+
+/**
+ * Bounding volume hierarchy over triangles of a part mesh
+ * <p>
+ * Triangles are read from part triangle VBO (vertex and normal, 6 floats
+ * per vertex), ray-triangle test is Moller-Trumbore, double sided.
+ * Not thread safe: last hit triangle is kept in tree.
+ *
+ * @author agent
+ *
+ */
+class TriangleBVH extends BoundingVolumeHierarchy {
+
+	private static final float EPSILON = 1e-7f;
+
+	private final float[] vbo;
+	private int hitTriangle = -1;
+
+
+
+	/**
+	 * @param vbo triangle VBO of a part
+	 * @param vertexCount triangle vertex count
+	 */
+	TriangleBVH(float[] vbo, int vertexCount) {
+
+		this.vbo = vbo;
+		int n = vertexCount / 3;
+		float[] bounds = new float[n*6];
+		for (int t=0;t<n;t++) {
+			for (int a=0;a<3;a++) {
+				float v0 = vbo[t*18+a], v1 = vbo[t*18+6+a], v2 = vbo[t*18+12+a];
+				bounds[t*6+a] = Math.min(v0, Math.min(v1, v2));
+				bounds[t*6+3+a] = Math.max(v0, Math.max(v1, v2));
+			}
+		}
+		build(bounds, n);
+	}
+
+
+
+	/**
+	 * Finds nearest triangle hit by a ray
+	 * @param o ray origin
+	 * @param d ray direction
+	 * @param tmax max ray parameter
+	 * @return ray parameter of hit, tmax if none
+	 */
+	float cast(float[] o, float[] d, float tmax) {
+
+		hitTriangle = -1;
+		return traverse(o, d, tmax);
+	}
+
+
+
+	/**
+	 * Triangle hit by last {@link #cast(float[], float[], float)}, -1 if none
+	 */
+	int getHitTriangle() {
+		return hitTriangle;
+	}
+
+
+
+	/**
+	 * Unit geometric normal of a triangle, facing ray direction opposite
+	 * @param t triangle
+	 * @param d ray direction
+	 * @param n normal, 3 floats
+	 */
+	void getNormal(int t, float[] d, float[] n) {
+
+		int b = t*18;
+		float e1x = vbo[b+6]-vbo[b], e1y = vbo[b+7]-vbo[b+1], e1z = vbo[b+8]-vbo[b+2];
+		float e2x = vbo[b+12]-vbo[b], e2y = vbo[b+13]-vbo[b+1], e2z = vbo[b+14]-vbo[b+2];
+		float nx = e1y*e2z - e1z*e2y;
+		float ny = e1z*e2x - e1x*e2z;
+		float nz = e1x*e2y - e1y*e2x;
+		float l = (float) Math.sqrt(nx*nx+ny*ny+nz*nz);
+		if (l == 0)
+			l = 1;
+		if (nx*d[0]+ny*d[1]+nz*d[2] > 0)
+			l = -l;
+		n[0] = nx/l;
+		n[1] = ny/l;
+		n[2] = nz/l;
+	}
+
+
+
+	@Override
+	protected float intersect(int t, float[] o, float[] d, float tmax) {
+
+		int b = t*18;
+		float e1x = vbo[b+6]-vbo[b], e1y = vbo[b+7]-vbo[b+1], e1z = vbo[b+8]-vbo[b+2];
+		float e2x = vbo[b+12]-vbo[b], e2y = vbo[b+13]-vbo[b+1], e2z = vbo[b+14]-vbo[b+2];
+		float px = d[1]*e2z - d[2]*e2y;
+		float py = d[2]*e2x - d[0]*e2z;
+		float pz = d[0]*e2y - d[1]*e2x;
+		float det = e1x*px + e1y*py + e1z*pz;
+		if (det > -EPSILON && det < EPSILON)
+			return tmax;
+		float inv = 1/det;
+		float sx = o[0]-vbo[b], sy = o[1]-vbo[b+1], sz = o[2]-vbo[b+2];
+		float u = (sx*px + sy*py + sz*pz) * inv;
+		if (u < 0 || u > 1)
+			return tmax;
+		float qx = sy*e1z - sz*e1y;
+		float qy = sz*e1x - sx*e1z;
+		float qz = sx*e1y - sy*e1x;
+		float v = (d[0]*qx + d[1]*qy + d[2]*qz) * inv;
+		if (v < 0 || u + v > 1)
+			return tmax;
+		float t1 = (e2x*qx + e2y*qy + e2z*qz) * inv;
+		if (t1 < 0 || t1 >= tmax)
+			return tmax;
+		hitTriangle = t;
+		return t1;
+	}
+
+}
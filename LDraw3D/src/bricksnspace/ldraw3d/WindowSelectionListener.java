@@ -0,0 +1,44 @@
+/*
+	Copyright 2026 agent <agent@local>
+	This file is part of LDraw3D
+
+	LDraw3D is free software: you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	LDraw3D is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with LDraw3D.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+
+
+package bricksnspace.ldraw3d;
+
+/**
+ * Incremental selection by window
+ * <p>
+ * While user drags a selection window, listener gets parts entering
+ * and leaving window with a single call, instead of {@link PickMode#ADD} 
+ * and {@link PickMode#REMOVE} picks (that is what other listeners get).
+ * 
+ * @author agent
+ *
+ */
+public interface WindowSelectionListener extends HandlingListener {
+
+	
+	/**
+	 * Callback when parts inside selection window change
+	 * @param entered parts now inside window, can be empty
+	 * @param left parts no longer inside window, can be empty
+	 */
+	public void windowSelectionChanged(int[] entered, int[] left);
+	
+}
@@ -0,0 +1,234 @@
+/*
+	Copyright 2026 agent <agent@local>
+	This file is part of LDraw3D
+
+	LDraw3D is free software: you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	LDraw3D is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with LDraw3D.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+
+
+package bricksnspace.ldraw3d;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+
+/**
+ * Incremental part selection by window
+ * <p>
+ * Part bounding boxes are projected once for a view, with a premultiplied
+ * matrix, and indexed by their lower left corner in a grid of screen
+ * cells, so a window checks only parts in cells it covers. Parts inside
+ * window are kept between calls, so only parts entering or leaving window
+ * are returned. Parts visible in window can be given by caller instead,
+ * read from pick buffer.
+ * <p>
+ * Not thread safe: must be used only by GUI thread.
+ *
+ * @author agent
+ *
+ */
+class WindowSelector {
+
+	private static final int CELL = 64;
+
+	private BoxProjector projector = new BoxProjector();
+	// view and model of projected boxes
+	private float[] proj = new float[16];
+	private float[] mv = new float[16];
+	private int[] viewport = new int[4];
+	private long serial = -1;
+	private boolean valid = false;
+	// projected parts: id and window rectangle
+	private int count = 0;
+	private int[] ids = new int[64];
+	private float[] rects = new float[64*4];
+	// grid cells, parts of cell c are cellItems[cellStart[c]..cellStart[c+1]]
+	private int gridW, gridH;
+	private int[] cellStart = new int[1];
+	private int[] cellItems = new int[64];
+	// parts inside window after last call
+	private Set<Integer> inside = new HashSet<Integer>();
+	private Set<Integer> current = new HashSet<Integer>();
+
+
+
+	/**
+	 * Projects part boxes if view or model changed since last call
+	 * @param parts displayed parts
+	 * @param modelSerial part epoch of scene, changes with parts only
+	 * @param p projection matrix
+	 * @param m model view matrix
+	 * @param v viewport
+	 */
+	void update(Collection<LDRenderedPart> parts, long modelSerial, float[] p, float[] m, int[] v) {
+
+		if (valid && serial == modelSerial && Arrays.equals(proj, p) &&
+				Arrays.equals(mv, m) && Arrays.equals(viewport, v))
+			return;
+		System.arraycopy(p, 0, proj, 0, 16);
+		System.arraycopy(m, 0, mv, 0, 16);
+		System.arraycopy(v, 0, viewport, 0, 4);
+		serial = modelSerial;
+		valid = true;
+		projector.set(proj, mv, viewport);
+		count = 0;
+		float[] rect = new float[4];
+		for (LDRenderedPart part : parts) {
+			if (part.isHidden())
+				continue;
+			float[] bb = part.getBboxVBO();
+			// box crossing near plane is never inside window
+			if (bb == null || bb.length < 48 || !projector.project(bb, rect))
+				continue;
+			if (count == ids.length) {
+				ids = Arrays.copyOf(ids, count*2);
+				rects = Arrays.copyOf(rects, count*8);
+			}
+			ids[count] = part.getId();
+			System.arraycopy(rect, 0, rects, count*4, 4);
+			count++;
+		}
+		buildGrid();
+	}
+
+
+
+	/**
+	 * Counting sort of projected parts by cell of lower left corner
+	 */
+	private void buildGrid() {
+
+		gridW = Math.max(1, (viewport[2] + CELL - 1) / CELL);
+		gridH = Math.max(1, (viewport[3] + CELL - 1) / CELL);
+		int cells = gridW * gridH;
+		if (cellStart.length < cells + 1)
+			cellStart = new int[cells + 1];
+		else
+			Arrays.fill(cellStart, 0);
+		if (cellItems.length < count)
+			cellItems = new int[ids.length];
+		int[] cell = new int[count];
+		for (int i=0;i<count;i++) {
+			cell[i] = cellX(rects[i*4]) + cellY(rects[i*4+1]) * gridW;
+			cellStart[cell[i]+1]++;
+		}
+		for (int c=0;c<cells;c++)
+			cellStart[c+1] += cellStart[c];
+		int[] fill = Arrays.copyOf(cellStart, cells);
+		for (int i=0;i<count;i++)
+			cellItems[fill[cell[i]]++] = i;
+	}
+
+
+
+	private int cellX(float x) {
+		return Math.max(0, Math.min(gridW - 1, (int) Math.floor((x - viewport[0]) / CELL)));
+	}
+
+
+
+	private int cellY(float y) {
+		return Math.max(0, Math.min(gridH - 1, (int) Math.floor((y - viewport[1]) / CELL)));
+	}
+
+
+
+	/**
+	 * Selects parts with bounding box inside a window
+	 * @param xmin window left
+	 * @param ymin window bottom
+	 * @param xmax window right
+	 * @param ymax window top
+	 * @param entered parts inside window now and not in last call
+	 * @param left parts inside window in last call and not now
+	 */
+	void select(int xmin, int ymin, int xmax, int ymax, List<Integer> entered, List<Integer> left) {
+
+		current.clear();
+		if (valid) {
+			int cx1 = cellX(xmax), cy1 = cellY(ymax);
+			for (int cy=cellY(ymin);cy<=cy1;cy++) {
+				for (int cx=cellX(xmin);cx<=cx1;cx++) {
+					int c = cy*gridW + cx;
+					for (int k=cellStart[c];k<cellStart[c+1];k++) {
+						int i = cellItems[k]*4;
+						if (rects[i] >= xmin && rects[i+1] >= ymin &&
+								rects[i+2] <= xmax && rects[i+3] <= ymax) {
+							Integer id = ids[cellItems[k]];
+							current.add(id);
+							if (!inside.contains(id))
+								entered.add(id);
+						}
+					}
+				}
+			}
+		}
+		swap(left);
+	}
+
+
+
+	/**
+	 * Selects parts visible in window
+	 * @param visible ids of parts visible in window
+	 * @param entered parts inside window now and not in last call
+	 * @param left parts inside window in last call and not now
+	 */
+	void select(int[] visible, List<Integer> entered, List<Integer> left) {
+
+		current.clear();
+		for (int v : visible) {
+			Integer id = v;
+			current.add(id);
+			if (!inside.contains(id))
+				entered.add(id);
+		}
+		swap(left);
+	}
+
+
+
+	/**
+	 * Finds parts leaving window and makes current parts inside window
+	 */
+	private void swap(List<Integer> left) {
+
+		for (Integer id : inside) {
+			if (!current.contains(id))
+				left.add(id);
+		}
+		Set<Integer> s = inside;
+		inside = current;
+		current = s;
+	}
+
+
+
+	/**
+	 * Ends a window selection, parts inside window are forgotten
+	 */
+	void clear() {
+
+		inside.clear();
+		current.clear();
+		valid = false;
+		count = 0;
+	}
+
+}